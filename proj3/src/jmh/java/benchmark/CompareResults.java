@@ -0,0 +1,96 @@
+package benchmark;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written by the jmh profile, for instance of the commit
+ * before a change and of the change itself:
+ * <pre>
+ * mvn -P jmh exec:exec@compare -Djmh.before=before.json -Djmh.after=after.json
+ * </pre>
+ * Prints the score of every benchmark and parameter combination in both files and how much
+ * it changed, and marks changes larger than the error margins of the two scores with a *.
+ */
+public final class CompareResults {
+    /**
+     * One entry of a JMH JSON result file; Gson fills in the fields that are used here.
+     */
+    private static final class Result {
+        String benchmark;
+        Map<String, String> params;
+        Metric primaryMetric;
+    }
+
+    private static final class Metric {
+        double score;
+        double scoreError;
+        String scoreUnit;
+    }
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults before.json after.json");
+            System.exit(1);
+        }
+        Map<String, Result> before = read(args[0]);
+        Map<String, Result> after = read(args[1]);
+        System.out.printf("%-60s %14s %14s %9s%n", "Benchmark", "Before", "After", "Change");
+        for (Map.Entry<String, Result> entry : after.entrySet()) {
+            Metric now = entry.getValue().primaryMetric;
+            Result old = before.get(entry.getKey());
+            if (old == null) {
+                System.out.printf("%-60s %14s %14.3f %9s  %s%n", entry.getKey(), "-",
+                    now.score, "new", now.scoreUnit);
+                continue;
+            }
+            Metric then = old.primaryMetric;
+            double change = 100 * (now.score - then.score) / then.score;
+            /* NaN errors, from single measurements, count as no error margin. */
+            double margin = errorOf(then) + errorOf(now);
+            boolean significant = Math.abs(now.score - then.score) > margin;
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%%%s %s%n", entry.getKey(), then.score,
+                now.score, change, significant ? "*" : " ", now.scoreUnit);
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                System.out.printf("%-60s %14.3f %14s %9s%n", key,
+                    before.get(key).primaryMetric.score, "-", "removed");
+            }
+        }
+    }
+
+    private static double errorOf(Metric metric) {
+        return Double.isNaN(metric.scoreError) ? 0 : metric.scoreError;
+    }
+
+    /**
+     * Returns the results of a file keyed by the benchmark's short name and parameters.
+     */
+    private static Map<String, Result> read(String file) throws IOException {
+        Result[] results;
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            results = new Gson().fromJson(reader, Result[].class);
+        }
+        Map<String, Result> keyed = new LinkedHashMap<>();
+        for (Result result : results) {
+            String name = result.benchmark.substring(result.benchmark.indexOf('.') + 1);
+            if (result.params != null) {
+                name += new TreeMap<>(result.params);
+            }
+            keyed.put(name, result);
+        }
+        return keyed;
+    }
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Reaches the BearMaps classes, which live in the default package. JMH only accepts
+ * benchmarks in a named package, and Java code in a named package cannot refer to classes
+ * in the default package by name, so the benchmarks look up what they call here.
+ */
+final class DefaultPackage {
+    private DefaultPackage() {
+    }
+
+    /**
+     * Returns a handle to a static method of a default package class, which may be
+     * package-private.
+     *
+     * @param className  The name of the class.
+     * @param name       The name of the method.
+     * @param parameters The parameter types of the method.
+     * @return A handle that invokes the method.
+     */
+    static MethodHandle staticMethod(String className, String name, Class<?>... parameters) {
+        return method(className, name, parameters);
+    }
+
+    /**
+     * Returns a handle to an instance method of a default package class, which may be
+     * package-private or private. The handle takes the instance as its first argument.
+     *
+     * @param className  The name of the class.
+     * @param name       The name of the method.
+     * @param parameters The parameter types of the method.
+     * @return A handle that invokes the method.
+     */
+    static MethodHandle method(String className, String name, Class<?>... parameters) {
+        try {
+            Method method = type(className).getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot find " + className + "." + name, e);
+        }
+    }
+
+    /**
+     * Returns a handle to a constructor of a default package class.
+     *
+     * @param className  The name of the class.
+     * @param parameters The parameter types of the constructor.
+     * @return A handle that creates an instance.
+     */
+    static MethodHandle constructor(String className, Class<?>... parameters) {
+        try {
+            Constructor<?> constructor = type(className).getDeclaredConstructor(parameters);
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot find a constructor of " + className, e);
+        }
+    }
+
+    /**
+     * Returns a default package class, to name it as a parameter type.
+     *
+     * @param className The name of the class, with $ before the names of nested classes.
+     * @return The class.
+     */
+    static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Cannot find " + className, e);
+        }
+    }
+
+    /**
+     * Returns the value of a static field of a default package class.
+     *
+     * @param className The name of the class.
+     * @param name      The name of the field.
+     * @return The value of the field.
+     */
+    static Object staticField(String className, String name) {
+        try {
+            Field field = Class.forName(className).getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot find " + className + "." + name, e);
+        }
+    }
+}
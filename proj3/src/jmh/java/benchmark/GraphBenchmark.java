@@ -0,0 +1,76 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the Berkeley graph at startup: parsing the OSM XML file into a GraphDB,
+ * freezing it into its compact layout as MapServer does, and loading it from a binary
+ * snapshot instead. Every build is a single shot, since the JIT warms up during one.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GraphBenchmark {
+    static final String OSM_DB_PATH = (String) DefaultPackage.staticField("MapServer",
+        "OSM_DB_PATH");
+    private static final MethodHandle NEW_GRAPH = DefaultPackage.constructor("GraphDB",
+        String.class);
+    private static final MethodHandle FREEZE = DefaultPackage.method("GraphDB", "freeze");
+    private static final MethodHandle SAVE = DefaultPackage.staticMethod("GraphSnapshot",
+        "save", DefaultPackage.type("GraphDB"), File.class, File.class);
+    private static final MethodHandle LOAD = DefaultPackage.staticMethod("GraphSnapshot",
+        "load", File.class, File.class);
+
+    /**
+     * A snapshot of the graph in a temporary file.
+     */
+    @State(Scope.Benchmark)
+    public static class Snapshot {
+        File file;
+
+        @Setup
+        public void setUp() throws Throwable {
+            file = File.createTempFile("berkeley", ".graph");
+            Object graph = NEW_GRAPH.invoke(OSM_DB_PATH);
+            SAVE.invoke(graph, new File(OSM_DB_PATH), file);
+        }
+
+        @TearDown
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public Object parse() throws Throwable {
+        return NEW_GRAPH.invoke(OSM_DB_PATH);
+    }
+
+    @Benchmark
+    public Object parseAndFreeze() throws Throwable {
+        Object graph = NEW_GRAPH.invoke(OSM_DB_PATH);
+        FREEZE.invoke(graph);
+        return graph;
+    }
+
+    @Benchmark
+    public Object loadSnapshot(Snapshot snapshot) throws Throwable {
+        return LOAD.invoke(new File(OSM_DB_PATH), snapshot.file);
+    }
+}
@@ -0,0 +1,107 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a /raster request without the raster cache, on the real tiles and graph of an
+ * initialized MapServer: choosing the tiles of a 1024x768 view with Rasterer.getMapRaster,
+ * and that plus compositing and encoding them with MapServer.writeImagesToOutputStream, with
+ * and without a route to draw. Views are centered on the map, at each depth from 1 to 7.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapRasterBenchmark {
+    private static final int WIDTH = 1024, HEIGHT = 768;
+    private static final int TILE_SIZE = (int) DefaultPackage.staticField("MapServer",
+        "TILE_SIZE");
+    private static final MethodHandle INITIALIZE = DefaultPackage.staticMethod("MapServer",
+        "initialize");
+    private static final MethodHandle NEW_RASTERER = DefaultPackage.constructor("Rasterer");
+    private static final MethodHandle GET_MAP_RASTER = DefaultPackage.method("Rasterer",
+        "getMapRaster", Map.class);
+    private static final MethodHandle WRITE_IMAGES = DefaultPackage.staticMethod("MapServer",
+        "writeImagesToOutputStream", Map.class, List.class, ByteArrayOutputStream.class);
+    private static final MethodHandle SHORTEST_PATH = DefaultPackage.staticMethod("Router",
+        "shortestPath", DefaultPackage.type("GraphDB"), double.class, double.class,
+        double.class, double.class);
+
+    /**
+     * An initialized MapServer, a view of the map and a route across it.
+     */
+    @State(Scope.Benchmark)
+    public static class View {
+        @Param({"1", "3", "5", "7"})
+        int depth;
+
+        Object rasterer;
+        final Map<String, Double> params = new HashMap<>();
+        List<?> route;
+
+        @Setup
+        public void setUp() throws Throwable {
+            INITIALIZE.invoke();
+            rasterer = NEW_RASTERER.invoke();
+            double ullon = (double) DefaultPackage.staticField("MapServer", "ROOT_ULLON");
+            double ullat = (double) DefaultPackage.staticField("MapServer", "ROOT_ULLAT");
+            double lrlon = (double) DefaultPackage.staticField("MapServer", "ROOT_LRLON");
+            double lrlat = (double) DefaultPackage.staticField("MapServer", "ROOT_LRLAT");
+            /* Half again as many degrees per pixel as the tiles of the depth, which is more
+             * than the next depth up has, so Rasterer picks this depth. */
+            double lonWidth = 1.5 * WIDTH * (lrlon - ullon) / (TILE_SIZE << depth);
+            double latHeight = 1.5 * HEIGHT * (ullat - lrlat) / (TILE_SIZE << depth);
+            double lon = (ullon + lrlon) / 2;
+            double lat = (ullat + lrlat) / 2;
+            params.put("ullon", lon - lonWidth / 2);
+            params.put("ullat", lat + latHeight / 2);
+            params.put("lrlon", lon + lonWidth / 2);
+            params.put("lrlat", lat - latHeight / 2);
+            params.put("w", (double) WIDTH);
+            params.put("h", (double) HEIGHT);
+            route = (List<?>) SHORTEST_PATH.invoke(DefaultPackage.staticField("MapServer",
+                "graph"), lon - lonWidth / 4, lat + latHeight / 4, lon + lonWidth / 4,
+                lat - latHeight / 4);
+        }
+    }
+
+    @Benchmark
+    public Object getMapRaster(View view) throws Throwable {
+        return GET_MAP_RASTER.invoke(view.rasterer, view.params);
+    }
+
+    @Benchmark
+    public int rasterPng(View view) throws Throwable {
+        return writeRaster(view, null);
+    }
+
+    @Benchmark
+    public int rasterPngWithRoute(View view) throws Throwable {
+        return writeRaster(view, view.route);
+    }
+
+    private static int writeRaster(View view, List<?> route) throws Throwable {
+        Object raster = GET_MAP_RASTER.invoke(view.rasterer, view.params);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        WRITE_IMAGES.invoke(raster, route, os);
+        return os.size();
+    }
+}
@@ -0,0 +1,142 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measures the two halves of a /raster response for render grids of 2x2 up to 8x8 tiles:
+ * compositing the tiles, the old way with Graphics.drawImage one tile at a time and with
+ * RasterRenderer, and encoding the raster, with ImageIO and with PngEncoder at several
+ * deflate levels. The tiles are generated in memory, a background with lines and speckles
+ * that compresses roughly like the real tiles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterBenchmark {
+    private static final int TILE_SIZE = (int) DefaultPackage.staticField("MapServer",
+        "TILE_SIZE");
+    private static final MethodHandle COMPOSITE = DefaultPackage.staticMethod(
+        "RasterRenderer", "composite", String[][].class, Function.class);
+    private static final MethodHandle ENCODE = DefaultPackage.staticMethod(
+        "PngEncoder", "write", BufferedImage.class, int.class, OutputStream.class);
+
+    /**
+     * A render grid of distinct in-memory tiles, and its raster.
+     */
+    @State(Scope.Benchmark)
+    public static class Grid {
+        @Param({"2", "3", "4", "5", "6", "7", "8"})
+        int size;
+
+        String[][] renderGrid;
+        Map<String, BufferedImage> tiles;
+        BufferedImage raster;
+
+        @Setup
+        public void setUp() throws Throwable {
+            Random random = new Random(61);
+            renderGrid = new String[size][size];
+            tiles = new HashMap<>();
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    renderGrid[r][c] = "d3_x" + c + "_y" + r + ".png";
+                    tiles.put(renderGrid[r][c], tile(random));
+                }
+            }
+            raster = (BufferedImage) COMPOSITE.invoke(renderGrid,
+                (Function<String, BufferedImage>) tiles::get);
+        }
+
+        private static BufferedImage tile(Random random) {
+            BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = tile.createGraphics();
+            g.setColor(new Color(230, 225, 210));
+            g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            for (int i = 0; i < 60; i++) {
+                g.setColor(new Color(random.nextInt(0x1000000)));
+                g.setStroke(new BasicStroke(1 + random.nextInt(5)));
+                g.drawLine(random.nextInt(TILE_SIZE), random.nextInt(TILE_SIZE),
+                    random.nextInt(TILE_SIZE), random.nextInt(TILE_SIZE));
+            }
+            g.dispose();
+            for (int i = 0; i < 3000; i++) {
+                tile.setRGB(random.nextInt(TILE_SIZE), random.nextInt(TILE_SIZE),
+                    random.nextInt());
+            }
+            return tile;
+        }
+    }
+
+    /**
+     * The deflate level of PngEncoder.
+     */
+    @State(Scope.Benchmark)
+    public static class Encoding {
+        @Param({"0", "1", "6"})
+        int level;
+    }
+
+    @Benchmark
+    public BufferedImage compositeDrawImage(Grid grid) {
+        int size = grid.size;
+        BufferedImage img = new BufferedImage(size * TILE_SIZE, size * TILE_SIZE,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics graphic = img.getGraphics();
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                graphic.drawImage(grid.tiles.get(grid.renderGrid[r][c]), c * TILE_SIZE,
+                    r * TILE_SIZE, null);
+            }
+        }
+        return img;
+    }
+
+    @Benchmark
+    public BufferedImage compositeParallel(Grid grid) throws Throwable {
+        return (BufferedImage) COMPOSITE.invoke(grid.renderGrid,
+            (Function<String, BufferedImage>) grid.tiles::get);
+    }
+
+    @Benchmark
+    public int encodeImageIO(Grid grid) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageIO.write(grid.raster, "png", os);
+        return os.size();
+    }
+
+    @Benchmark
+    public int encodePngEncoder(Grid grid, Encoding encoding) throws Throwable {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ENCODE.invoke(grid.raster, encoding.level, (OutputStream) os);
+        return os.size();
+    }
+}
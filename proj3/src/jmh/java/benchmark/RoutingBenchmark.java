@@ -0,0 +1,178 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the work of a /route request on the frozen Berkeley graph, over a fixed set of
+ * random queries inside the map: snapping a point to its closest vertex, finding the
+ * shortest path between two points with Router's default strategy, and turning a route
+ * into navigation directions. Directions are also measured on long routes across the map,
+ * of hundreds of vertices, with and without writing them as the text of a /route response.
+ * Scores are per query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+    private static final int QUERIES = 100;
+    private static final int LONG_ROUTES = 20;
+    /**
+     * The fewest vertices of a long route.
+     */
+    private static final int LONG_ROUTE_VERTICES = 200;
+    private static final double ROOT_ULLON = (double) DefaultPackage.staticField("MapServer",
+        "ROOT_ULLON");
+    private static final double ROOT_ULLAT = (double) DefaultPackage.staticField("MapServer",
+        "ROOT_ULLAT");
+    private static final double ROOT_LRLON = (double) DefaultPackage.staticField("MapServer",
+        "ROOT_LRLON");
+    private static final double ROOT_LRLAT = (double) DefaultPackage.staticField("MapServer",
+        "ROOT_LRLAT");
+    private static final MethodHandle NEW_GRAPH = DefaultPackage.constructor("GraphDB",
+        String.class);
+    private static final MethodHandle FREEZE = DefaultPackage.method("GraphDB", "freeze");
+    private static final MethodHandle CLOSEST = DefaultPackage.method("GraphDB", "closest",
+        double.class, double.class);
+    private static final MethodHandle SHORTEST_PATH = DefaultPackage.staticMethod("Router",
+        "shortestPath", DefaultPackage.type("GraphDB"), double.class, double.class,
+        double.class, double.class);
+    private static final MethodHandle ROUTE_DIRECTIONS = DefaultPackage.staticMethod(
+        "Router", "routeDirections", DefaultPackage.type("GraphDB"), List.class);
+    private static final MethodHandle DIRECTIONS_TEXT = DefaultPackage.staticMethod(
+        "MapServer", "getDirectionsText", List.class);
+
+    /**
+     * The graph, and the start and end points of the queries with their routes.
+     */
+    @State(Scope.Benchmark)
+    public static class Queries {
+        Object graph;
+        final double[] startLons = new double[QUERIES], startLats = new double[QUERIES];
+        final double[] endLons = new double[QUERIES], endLats = new double[QUERIES];
+        final List<?>[] routes = new List<?>[QUERIES];
+
+        @Setup
+        public void setUp() throws Throwable {
+            graph = NEW_GRAPH.invoke(GraphBenchmark.OSM_DB_PATH);
+            FREEZE.invoke(graph);
+            Random random = new Random(61);
+            for (int i = 0; i < QUERIES; i++) {
+                startLons[i] = lon(random);
+                startLats[i] = lat(random);
+                endLons[i] = lon(random);
+                endLats[i] = lat(random);
+                routes[i] = (List<?>) SHORTEST_PATH.invoke(graph, startLons[i], startLats[i],
+                    endLons[i], endLats[i]);
+            }
+        }
+
+        private static double lon(Random random) {
+            return ROOT_ULLON + random.nextDouble() * (ROOT_LRLON - ROOT_ULLON);
+        }
+
+        private static double lat(Random random) {
+            return ROOT_LRLAT + random.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT);
+        }
+    }
+
+    /**
+     * The graph, and routes of at least LONG_ROUTE_VERTICES vertices between random points
+     * in opposite corners of the map.
+     */
+    @State(Scope.Benchmark)
+    public static class LongRoutes {
+        Object graph;
+        final List<?>[] routes = new List<?>[LONG_ROUTES];
+
+        @Setup
+        public void setUp() throws Throwable {
+            graph = NEW_GRAPH.invoke(GraphBenchmark.OSM_DB_PATH);
+            FREEZE.invoke(graph);
+            Random random = new Random(24);
+            double width = ROOT_LRLON - ROOT_ULLON;
+            double height = ROOT_ULLAT - ROOT_LRLAT;
+            for (int i = 0; i < LONG_ROUTES; ) {
+                boolean flip = random.nextBoolean();
+                double startLon = ROOT_ULLON + random.nextDouble() * width / 4;
+                double startLat = ROOT_ULLAT - random.nextDouble() * height / 4;
+                double endLon = ROOT_LRLON - random.nextDouble() * width / 4;
+                double endLat = ROOT_LRLAT + random.nextDouble() * height / 4;
+                List<?> route = (List<?>) SHORTEST_PATH.invoke(graph, startLon,
+                    flip ? endLat : startLat, endLon, flip ? startLat : endLat);
+                if (route.size() >= LONG_ROUTE_VERTICES) {
+                    routes[i++] = route;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long closest(Queries q) throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            sum += (long) CLOSEST.invoke(q.graph, q.startLons[i], q.startLats[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int shortestPath(Queries q) throws Throwable {
+        int vertices = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            vertices += ((List<?>) SHORTEST_PATH.invoke(q.graph, q.startLons[i], q.startLats[i],
+                q.endLons[i], q.endLats[i])).size();
+        }
+        return vertices;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int routeDirections(Queries q) throws Throwable {
+        int directions = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            List<?> steps = (List<?>) ROUTE_DIRECTIONS.invoke(q.graph, q.routes[i]);
+            directions += steps == null ? 0 : steps.size();
+        }
+        return directions;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LONG_ROUTES)
+    public int longRouteDirections(LongRoutes r) throws Throwable {
+        int directions = 0;
+        for (List<?> route : r.routes) {
+            directions += ((List<?>) ROUTE_DIRECTIONS.invoke(r.graph, route)).size();
+        }
+        return directions;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LONG_ROUTES)
+    public int longRouteDirectionsText(LongRoutes r) throws Throwable {
+        int length = 0;
+        for (List<?> route : r.routes) {
+            length += ((String) DIRECTIONS_TEXT.invoke(ROUTE_DIRECTIONS.invoke(r.graph,
+                route))).length();
+        }
+        return length;
+    }
+}
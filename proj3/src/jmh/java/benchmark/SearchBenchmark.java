@@ -0,0 +1,112 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures /search requests on the Berkeley locations, over a fixed set of prefixes of one
+ * to four characters of random location names: getLocationsByPrefix as served from its
+ * cache, the same lookup without the cache, the ten most frequent names of a prefix, and a
+ * fuzzy search that allows one edit. Scores are per prefix.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int PREFIXES = 100;
+    private static final MethodHandle NEW_GRAPH = DefaultPackage.constructor("GraphDB",
+        String.class);
+    private static final MethodHandle BY_PREFIX = DefaultPackage.method("GraphDB",
+        "getLocationsByPrefix", String.class);
+    private static final MethodHandle COLLECT_BY_PREFIX = DefaultPackage.method("GraphDB",
+        "collectLocationsByPrefix", String.class);
+    private static final MethodHandle CLEAN = DefaultPackage.staticMethod("GraphDB",
+        "cleanString", String.class);
+    private static final Class<?> RANKING = DefaultPackage.type("Autocomplete$Ranking");
+    private static final MethodHandle TOP_BY_PREFIX = DefaultPackage.method("GraphDB",
+        "getLocationsByPrefix", String.class, int.class, RANKING, double.class, double.class);
+    private static final MethodHandle BY_FUZZY_PREFIX = DefaultPackage.method("GraphDB",
+        "getLocationsByFuzzyPrefix", String.class, int.class);
+
+    /**
+     * The graph, and the prefixes with their cleaned versions.
+     */
+    @State(Scope.Benchmark)
+    public static class Prefixes {
+        Object graph;
+        Object frequency;
+        final String[] prefixes = new String[PREFIXES];
+        final String[] cleanPrefixes = new String[PREFIXES];
+
+        @Setup
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public void setUp() throws Throwable {
+            graph = NEW_GRAPH.invoke(GraphBenchmark.OSM_DB_PATH);
+            frequency = Enum.valueOf((Class) RANKING, "FREQUENCY");
+            List<?> names = (List<?>) BY_PREFIX.invoke(graph, "");
+            Random random = new Random(61);
+            for (int i = 0; i < PREFIXES; i++) {
+                String name = (String) names.get(random.nextInt(names.size()));
+                prefixes[i] = name.substring(0, Math.min(name.length(), 1 + random.nextInt(4)));
+                cleanPrefixes[i] = (String) CLEAN.invoke(prefixes[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PREFIXES)
+    public int byPrefixCached(Prefixes p) throws Throwable {
+        int names = 0;
+        for (String prefix : p.prefixes) {
+            names += ((List<?>) BY_PREFIX.invoke(p.graph, prefix)).size();
+        }
+        return names;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PREFIXES)
+    public int byPrefixUncached(Prefixes p) throws Throwable {
+        int names = 0;
+        for (String cleanPrefix : p.cleanPrefixes) {
+            names += ((List<?>) COLLECT_BY_PREFIX.invoke(p.graph, cleanPrefix)).size();
+        }
+        return names;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PREFIXES)
+    public int topTenByFrequency(Prefixes p) throws Throwable {
+        int names = 0;
+        for (String prefix : p.prefixes) {
+            names += ((List<?>) TOP_BY_PREFIX.invoke(p.graph, prefix, 10, p.frequency, 0.0,
+                0.0)).size();
+        }
+        return names;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PREFIXES)
+    public int fuzzyOneEdit(Prefixes p) throws Throwable {
+        int names = 0;
+        for (String prefix : p.prefixes) {
+            names += ((List<?>) BY_FUZZY_PREFIX.invoke(p.graph, prefix, 1)).size();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A* search from the start vertex, guided by a heuristic toward the destination. All
+ * bookkeeping lives in a per-thread SearchState, so a query only allocates its result.
+ */
+public class AStarRouting implements RoutingStrategy {
+    private static final ThreadLocal<SearchState> SEARCH_STATE =
+        ThreadLocal.withInitial(SearchState::new);
+
+    private final CompactGraph graph;
+    private final double[] weights;
+    private final Heuristic heuristic;
+
+    /**
+     * Create an A* strategy.
+     *
+     * @param graph     The graph to search.
+     * @param weights   The weight of every edge of graph, indexed like graph.targets.
+     * @param heuristic A consistent heuristic for these weights.
+     */
+    AStarRouting(CompactGraph graph, double[] weights, Heuristic heuristic) {
+        this.graph = graph;
+        this.weights = weights;
+        this.heuristic = heuristic;
+    }
+
+    CompactGraph graph() {
+        return graph;
+    }
+
+    @Override
+    public List<Long> shortestPath(int start, int end) {
+        if (start < 0 || end < 0) {
+            return new ArrayList<>();
+        }
+        SearchState state = SEARCH_STATE.get();
+        state.reset(graph.size());
+        IndexedMinHeap heap = state.heap;
+        state.reach(start, 0.0, start);
+        heap.insertOrDecrease(start, 0.0);
+        while (!heap.isEmpty()) {
+            int v = heap.removeMin();
+            state.settle(v);
+            if (v == end) {
+                return state.path(graph, end);
+            }
+            double startTov = state.dist(v);
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                int w = graph.targets[e];
+                if (state.settled(w)) {
+                    continue;
+                }
+                double startTovTow = startTov + weights[e];
+                if (startTovTow < state.dist(w)) {
+                    state.reach(w, startTovTow, v);
+                    heap.insertOrDecrease(w, startTovTow + heuristic.estimate(w, end));
+                }
+            }
+        }
+        return new ArrayList<>();  // path doesn't exist, return an empty list.
+    }
+
+    @Override
+    public int settledCount() {
+        return SEARCH_STATE.get().settledCount();
+    }
+}
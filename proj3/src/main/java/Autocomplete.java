@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Ranked autocompletion over the location names of a frozen location index.
+ * <p>
+ * The names are numbered in the order getLocationsByPrefix lists them: by cleaned name, then
+ * alphabetically. The names that complete a prefix are then one run of numbers, the names of
+ * the keys from prefixStart up to prefixEnd. Every distinct run that more than CACHED names
+ * fall into, the trie node of a prefix, keeps its best CACHED names for each ranking that
+ * does not depend on the query, so the best k names of a prefix take two binary searches and
+ * k steps. Rankings by distance to a point, and longer lists, select from the whole run with
+ * a heap of size k.
+ */
+public class Autocomplete {
+    /**
+     * The number of best names kept per prefix for each ranking.
+     */
+    static final int CACHED = 10;
+
+    /**
+     * How to rank names. Ties are always broken alphabetically, like getLocationsByPrefix.
+     */
+    enum Ranking {
+        /** The names shared by the most locations first. */
+        FREQUENCY,
+        /** The shortest names first, then the most frequent. */
+        LENGTH,
+        /** The names with a location closest to a given point first. */
+        PROXIMITY
+    }
+
+    private final PrefixIndex<GraphDB.TrieNode> index;
+    private final String[] names;
+    /* The names of key i are names[keyStarts[i]] up to names[keyStarts[i + 1]]. */
+    private final int[] keyStarts;
+    private final int[] frequencies;
+    /* The locations of name j are lons and lats from locationStarts[j] to [j + 1]. */
+    private final int[] locationStarts;
+    private final double[] lons, lats;
+    /* The best names of each run of keys, keyed by rangeKey, for each static ranking. */
+    private final Map<Ranking, Map<Long, int[]>> cached = new EnumMap<>(Ranking.class);
+
+    /**
+     * Build the ranked completions of a frozen location index.
+     *
+     * @param index The locations, keyed by their cleaned names, with sorted unique names.
+     */
+    Autocomplete(PrefixIndex<GraphDB.TrieNode> index) {
+        this.index = index;
+        int numKeys = index.size();
+        keyStarts = new int[numKeys + 1];
+        int numLocations = 0;
+        for (int i = 0; i < numKeys; i++) {
+            GraphDB.TrieNode node = index.value(i);
+            keyStarts[i + 1] = keyStarts[i] + node.names.size();
+            numLocations += node.locations.size();
+        }
+        names = new String[keyStarts[numKeys]];
+        frequencies = new int[names.length];
+        locationStarts = new int[names.length + 1];
+        lons = new double[numLocations];
+        lats = new double[numLocations];
+
+        /* Number the names, and find the name of every location. */
+        int[] locationNames = new int[numLocations];
+        Map<String, Integer> numbers = new HashMap<>();
+        int l = 0;
+        for (int i = 0; i < numKeys; i++) {
+            GraphDB.TrieNode node = index.value(i);
+            numbers.clear();
+            for (int j = 0; j < node.names.size(); j++) {
+                names[keyStarts[i] + j] = node.names.get(j);
+                numbers.put(node.names.get(j), keyStarts[i] + j);
+            }
+            for (Map<String, Object> location : node.locations) {
+                locationNames[l] = numbers.get((String) location.get("name"));
+                frequencies[locationNames[l]]++;
+                l++;
+            }
+        }
+        /* Group the locations by name. */
+        for (int j = 0; j < names.length; j++) {
+            locationStarts[j + 1] = locationStarts[j] + frequencies[j];
+        }
+        int[] next = Arrays.copyOf(locationStarts, names.length);
+        l = 0;
+        for (int i = 0; i < numKeys; i++) {
+            for (Map<String, Object> location : index.value(i).locations) {
+                int slot = next[locationNames[l++]]++;
+                lons[slot] = (Double) location.get("lon");
+                lats[slot] = (Double) location.get("lat");
+            }
+        }
+
+        cached.put(Ranking.FREQUENCY, new HashMap<>());
+        cached.put(Ranking.LENGTH, new HashMap<>());
+        for (int i = 0; i < numKeys; i++) {
+            String key = index.key(i);
+            for (int d = 0; d <= key.length(); d++) {
+                String prefix = key.substring(0, d);
+                int lo = index.prefixStart(prefix);
+                int hi = index.prefixEnd(prefix);
+                if (keyStarts[hi] - keyStarts[lo] <= CACHED) {
+                    break;
+                }
+                for (Map.Entry<Ranking, Map<Long, int[]>> entry : cached.entrySet()) {
+                    entry.getValue().computeIfAbsent(rangeKey(lo, hi), r -> select(
+                        keyStarts[lo], keyStarts[hi], CACHED, order(entry.getKey(), null)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the best names that complete a prefix.
+     *
+     * @param cleanPrefix The cleaned prefix.
+     * @param limit       The most names to return.
+     * @param ranking     How to rank the names.
+     * @param lon         The longitude to rank by proximity to, or any value for the other
+     *                    rankings.
+     * @param lat         The latitude to rank by proximity to.
+     * @return Up to limit names whose cleaned name starts with cleanPrefix, best first.
+     */
+    List<String> complete(String cleanPrefix, int limit, Ranking ranking, double lon,
+                          double lat) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        int lo = index.prefixStart(cleanPrefix);
+        int hi = index.prefixEnd(cleanPrefix);
+        int start = keyStarts[lo];
+        int end = keyStarts[hi];
+        int[] best = null;
+        if (limit <= CACHED && cached.containsKey(ranking)) {
+            best = cached.get(ranking).get(rangeKey(lo, hi));
+        }
+        if (best == null) {
+            double[] distances = null;
+            if (ranking == Ranking.PROXIMITY) {
+                distances = new double[end - start];
+                for (int j = start; j < end; j++) {
+                    distances[j - start] = distance(j, lon, lat);
+                }
+            }
+            final double[] d = distances;
+            best = select(start, end, limit, order(ranking,
+                d == null ? null : j -> d[j - start]));
+        }
+        List<String> result = new ArrayList<>(Math.min(limit, best.length));
+        for (int i = 0; i < best.length && i < limit; i++) {
+            result.add(names[best[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * The distance of a name from a point, a function of the number of a name.
+     */
+    private interface Distances {
+        double of(int name);
+    }
+
+    /**
+     * Returns how to order names for a ranking, best first.
+     *
+     * @param ranking   The ranking.
+     * @param distances The distance of each name from the query point, for PROXIMITY.
+     */
+    private IntComparator order(Ranking ranking, Distances distances) {
+        switch (ranking) {
+            case FREQUENCY:
+                return (a, b) -> {
+                    int c = Integer.compare(frequencies[b], frequencies[a]);
+                    return c != 0 ? c : Integer.compare(a, b);
+                };
+            case LENGTH:
+                return (a, b) -> {
+                    int c = Integer.compare(names[a].length(), names[b].length());
+                    if (c == 0) {
+                        c = Integer.compare(frequencies[b], frequencies[a]);
+                    }
+                    return c != 0 ? c : Integer.compare(a, b);
+                };
+            default:
+                return (a, b) -> {
+                    int c = Double.compare(distances.of(a), distances.of(b));
+                    return c != 0 ? c : Integer.compare(a, b);
+                };
+        }
+    }
+
+    /**
+     * Orders the numbers of names.
+     */
+    private interface IntComparator {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Returns the k best of the names from start up to end, best first.
+     */
+    private static int[] select(int start, int end, int k, IntComparator order) {
+        PriorityQueue<Integer> worstFirst = new PriorityQueue<>((a, b) -> order.compare(b, a));
+        for (int j = start; j < end; j++) {
+            if (worstFirst.size() < k) {
+                worstFirst.add(j);
+            } else if (order.compare(j, worstFirst.peek()) < 0) {
+                worstFirst.poll();
+                worstFirst.add(j);
+            }
+        }
+        int[] best = new int[worstFirst.size()];
+        for (int i = best.length - 1; i >= 0; i--) {
+            best[i] = worstFirst.poll();
+        }
+        return best;
+    }
+
+    /**
+     * Returns the distance in miles from a point to the closest location with a name.
+     */
+    private double distance(int name, double lon, double lat) {
+        double closest = Double.POSITIVE_INFINITY;
+        for (int l = locationStarts[name]; l < locationStarts[name + 1]; l++) {
+            closest = Math.min(closest, GraphDB.distance(lon, lat, lons[l], lats[l]));
+        }
+        return closest;
+    }
+
+    private static long rangeKey(int lo, int hi) {
+        return (long) lo << 32 | hi;
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bidirectional A*: one A* search forward from the start and one backward from the
+ * destination, alternating by smallest key, until no path through the unsettled vertices can
+ * beat the best meeting point found so far.
+ * <p>
+ * Both searches use the average potential p(v) = (h(v, end) - h(v, start)) / 2, forward with
+ * +p and backward with -p. Both then see the same consistent reduced edge weights, so the
+ * search may stop as soon as the two smallest keys add up to the best path length found.
+ * Every road is two-way, so the backward search runs on the same edges.
+ */
+public class BidirectionalAStarRouting implements RoutingStrategy {
+    private static final ThreadLocal<SearchState[]> SEARCH_STATES = ThreadLocal.withInitial(
+        () -> new SearchState[]{new SearchState(), new SearchState()});
+
+    private final CompactGraph graph;
+    private final double[] weights;
+    private final Heuristic heuristic;
+
+    /**
+     * Create a bidirectional A* strategy.
+     *
+     * @param graph     The graph to search.
+     * @param weights   The weight of every edge of graph, indexed like graph.targets.
+     * @param heuristic A consistent heuristic for these weights.
+     */
+    BidirectionalAStarRouting(CompactGraph graph, double[] weights, Heuristic heuristic) {
+        this.graph = graph;
+        this.weights = weights;
+        this.heuristic = heuristic;
+    }
+
+    @Override
+    public List<Long> shortestPath(int start, int end) {
+        if (start < 0 || end < 0) {
+            return new ArrayList<>();
+        }
+        SearchState[] states = SEARCH_STATES.get();
+        SearchState forward = states[0];
+        SearchState backward = states[1];
+        forward.reset(graph.size());
+        backward.reset(graph.size());
+        if (start == end) {
+            forward.reach(start, 0.0, start);
+            forward.settle(start);
+            return forward.path(graph, start);
+        }
+        forward.reach(start, 0.0, start);
+        forward.heap.insertOrDecrease(start, potential(start, start, end));
+        backward.reach(end, 0.0, end);
+        backward.heap.insertOrDecrease(end, -potential(end, start, end));
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            if (forward.heap.minKey() + backward.heap.minKey() >= best) {
+                break;
+            }
+            boolean goForward = forward.heap.minKey() <= backward.heap.minKey();
+            SearchState search = goForward ? forward : backward;
+            SearchState other = goForward ? backward : forward;
+            double sign = goForward ? 1 : -1;
+
+            int v = search.heap.removeMin();
+            search.settle(v);
+            double dv = search.dist(v);
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                int w = graph.targets[e];
+                if (search.settled(w)) {
+                    continue;
+                }
+                double d = dv + weights[e];
+                if (d < search.dist(w)) {
+                    search.reach(w, d, v);
+                    search.heap.insertOrDecrease(w, d + sign * potential(w, start, end));
+                    if (other.reached(w) && d + other.dist(w) < best) {
+                        best = d + other.dist(w);
+                        meet = w;
+                    }
+                }
+            }
+        }
+        if (meet < 0) {
+            return new ArrayList<>();
+        }
+        List<Long> path = forward.path(graph, meet);
+        for (int v = meet; v != end; ) {
+            v = backward.parent(v);
+            path.add(graph.ids[v]);
+        }
+        return path;
+    }
+
+    private double potential(int v, int start, int end) {
+        return (heuristic.estimate(v, end) - heuristic.estimate(v, start)) / 2;
+    }
+
+    @Override
+    public int settledCount() {
+        SearchState[] states = SEARCH_STATES.get();
+        return states[0].settledCount() + states[1].settledCount();
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A frozen, array-backed copy of the road graph in compressed sparse row (CSR) form.
+ * <p>
+ * Vertices are numbered 0..size()-1 in increasing order of their OSM id, so the id of a
+ * vertex is ids[v] and the index of an id is found by binary search; ids are only translated
+ * at the API boundary. The edges leaving vertex v are the entries offsets[v] up to
+ * offsets[v + 1] of targets (the neighbor's index), lengths (the great-circle length in miles),
+ * times (the travel time in hours at the way's speed) and edgeWays (an index into the shared
+ * ways table). Every road is two-way, so each edge is stored once in each direction.
+ */
+public class CompactGraph {
+    final long[] ids;
+    final double[] lons, lats;
+    final int[] offsets;
+    final int[] targets;
+    final int[] edgeWays;
+    final double[] lengths;
+    final double[] times;
+    final GraphDB.Way[] ways;
+    /**
+     * The largest speed of any way, in mph.
+     */
+    final double maxSpeed;
+
+    /**
+     * Build the compact layout from the nodes of a GraphDB. Neighbors keep the iteration order
+     * of each node's edge map.
+     *
+     * @param nodes The cleaned nodes of the graph, keyed by id.
+     */
+    CompactGraph(Map<Long, GraphDB.Node> nodes) {
+        int n = nodes.size();
+        ids = new long[n];
+        int i = 0;
+        int numEdges = 0;
+        for (GraphDB.Node node : nodes.values()) {
+            ids[i++] = node.id;
+            numEdges += node.edges.size();
+        }
+        Arrays.sort(ids);
+
+        lons = new double[n];
+        lats = new double[n];
+        offsets = new int[n + 1];
+        targets = new int[numEdges];
+        edgeWays = new int[numEdges];
+        lengths = new double[numEdges];
+        times = new double[numEdges];
+
+        Map<GraphDB.Way, Integer> wayIndices = new IdentityHashMap<>();
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            GraphDB.Node node = nodes.get(ids[v]);
+            lons[v] = node.lon;
+            lats[v] = node.lat;
+            offsets[v] = e;
+            for (Map.Entry<Long, GraphDB.Way> edge : node.edges.entrySet()) {
+                GraphDB.Node target = nodes.get(edge.getKey());
+                targets[e] = index(target.id);
+                Integer way = wayIndices.get(edge.getValue());
+                if (way == null) {
+                    way = wayIndices.size();
+                    wayIndices.put(edge.getValue(), way);
+                }
+                edgeWays[e] = way;
+                e++;
+            }
+        }
+        offsets[n] = e;
+
+        ways = new GraphDB.Way[wayIndices.size()];
+        for (Map.Entry<GraphDB.Way, Integer> entry : wayIndices.entrySet()) {
+            ways[entry.getValue()] = entry.getKey();
+        }
+        maxSpeed = weigh();
+    }
+
+    /**
+     * Create the compact layout from its arrays, as read back from a GraphSnapshot. Edge
+     * lengths and travel times are computed again from the coordinates and the ways.
+     */
+    CompactGraph(long[] ids, double[] lons, double[] lats, int[] offsets, int[] targets,
+                 int[] edgeWays, GraphDB.Way[] ways) {
+        this.ids = ids;
+        this.lons = lons;
+        this.lats = lats;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.edgeWays = edgeWays;
+        this.ways = ways;
+        lengths = new double[targets.length];
+        times = new double[targets.length];
+        maxSpeed = weigh();
+    }
+
+    /**
+     * Fill in the length and travel time of every edge.
+     *
+     * @return The largest speed of any way that has an edge.
+     */
+    private double weigh() {
+        double fastest = 0;
+        for (int v = 0; v < ids.length; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                lengths[e] = GraphDB.distance(lons[v], lats[v], lons[w], lats[w]);
+                int speed = ways[edgeWays[e]].speed();
+                times[e] = lengths[e] / speed;
+                fastest = Math.max(fastest, speed);
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * Returns the number of vertices.
+     */
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the dense index of the vertex with the given id, or -1 if there is none.
+     *
+     * @param id An OSM node id.
+     * @return The index of the vertex, or -1.
+     */
+    int index(long id) {
+        int v = Arrays.binarySearch(ids, id);
+        return v < 0 ? -1 : v;
+    }
+
+    /**
+     * Returns the index of the edge from v to w, or -1 if they are not adjacent.
+     */
+    int edge(int v, int w) {
+        for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+            if (targets[e] == w) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the ids of all vertices as a read-only list view.
+     */
+    List<Long> vertices() {
+        return idsOf(0, ids.length, null);
+    }
+
+    /**
+     * Returns the ids of the neighbors of v as a read-only list view.
+     */
+    List<Long> adjacent(int v) {
+        return idsOf(offsets[v], offsets[v + 1], targets);
+    }
+
+    /**
+     * A list view of the ids of positions [from, to) of indices, or of the vertices themselves
+     * when indices is null.
+     */
+    private List<Long> idsOf(int from, int to, int[] indices) {
+        return new AbstractList<Long>() {
+            @Override
+            public Long get(int i) {
+                if (i < 0 || i >= to - from) {
+                    throw new IndexOutOfBoundsException("Index: " + i);
+                }
+                return indices == null ? ids[from + i] : ids[indices[from + i]];
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+}
@@ -0,0 +1,644 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A contraction hierarchy over a CompactGraph, for answering shortest path queries by
+ * searching only a small part of the graph.
+ * <p>
+ * Preprocessing contracts the vertices one at a time, least important first. Contracting v
+ * removes it from the remaining graph and, for every pair of its remaining neighbors u and w
+ * whose shortest path runs through v, adds a shortcut edge u-w that remembers v as its middle
+ * vertex. The order of contraction is the rank of a vertex. Every edge, original or shortcut,
+ * is then stored once, at its lower-ranked endpoint, which gives the upward graph.
+ * <p>
+ * A query runs Dijkstra's algorithm upward from both endpoints and meets at the highest
+ * vertex of the shortest path. Shortcuts on the resulting path are unpacked through their
+ * middle vertices, so the result is the same list of node ids as a search on the original
+ * graph. Since every road is two-way, one upward graph serves both search directions.
+ * <p>
+ * The hierarchy can be saved to and loaded from a binary file; a file built for a different
+ * graph or with a different format version is rejected.
+ */
+public class ContractionHierarchy implements RoutingStrategy {
+    /**
+     * "CH61" in ASCII, the first four bytes of a saved hierarchy.
+     */
+    private static final int MAGIC = 0x43483631;
+    private static final int VERSION = 1;
+    /**
+     * The bytes of a saved hierarchy before its ranks: magic, version, fingerprint, and the
+     * numbers of vertices and edges.
+     */
+    private static final long HEADER_BYTES = 24;
+    /**
+     * The bytes of one saved edge: its target, middle and weight.
+     */
+    private static final long EDGE_BYTES = 16;
+    /**
+     * Witness searches give up after settling this many vertices, which can only add
+     * unnecessary shortcuts, never lose a shortest path. Estimating the priority of a vertex
+     * uses the smaller limit, actually contracting it the larger one.
+     */
+    private static final int SIMULATE_SETTLE_LIMIT = 50;
+    private static final int CONTRACT_SETTLE_LIMIT = 500;
+
+    private final CompactGraph graph;
+    private final long fingerprint;
+    final int[] rank;
+    final int[] upOffsets;
+    final int[] upTargets;
+    final int[] upMiddles;
+    final double[] upWeights;
+
+    /**
+     * The forward and backward search states of each thread.
+     */
+    private final ThreadLocal<SearchState[]> searchStates = ThreadLocal.withInitial(
+        () -> new SearchState[]{new SearchState(), new SearchState()});
+
+    private ContractionHierarchy(CompactGraph graph, long fingerprint, int[] rank,
+                                 int[] upOffsets, int[] upTargets, int[] upMiddles,
+                                 double[] upWeights) {
+        this.graph = graph;
+        this.fingerprint = fingerprint;
+        this.rank = rank;
+        this.upOffsets = upOffsets;
+        this.upTargets = upTargets;
+        this.upMiddles = upMiddles;
+        this.upWeights = upWeights;
+    }
+
+    /**
+     * Build the hierarchy of a graph with the given edge weights.
+     *
+     * @param graph   The graph to contract.
+     * @param weights The weight of every edge of graph, indexed like graph.targets.
+     * @return The contraction hierarchy.
+     */
+    static ContractionHierarchy build(CompactGraph graph, double[] weights) {
+        Contractor contractor = new Contractor(graph, weights);
+        contractor.contractAll();
+        return contractor.toHierarchy(fingerprint(graph, weights));
+    }
+
+    /**
+     * Returns the number of shortcut edges added by preprocessing.
+     */
+    int shortcutCount() {
+        int count = 0;
+        for (int middle : upMiddles) {
+            if (middle >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes held by the arrays of the hierarchy.
+     */
+    long sizeInBytes() {
+        return 4L * rank.length + 4L * upOffsets.length
+            + (4L + 4L + 8L) * upTargets.length;
+    }
+
+    @Override
+    public int settledCount() {
+        SearchState[] states = searchStates.get();
+        return states[0].settledCount() + states[1].settledCount();
+    }
+
+    @Override
+    public List<Long> shortestPath(int start, int end) {
+        if (start < 0 || end < 0) {
+            return new ArrayList<>();
+        }
+        SearchState[] states = searchStates.get();
+        SearchState forward = states[0];
+        SearchState backward = states[1];
+        forward.reset(rank.length);
+        backward.reset(rank.length);
+        forward.reach(start, 0.0, start);
+        forward.heap.insertOrDecrease(start, 0.0);
+        backward.reach(end, 0.0, end);
+        backward.heap.insertOrDecrease(end, 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (true) {
+            boolean forwardDone = forward.heap.isEmpty() || forward.heap.minKey() >= best;
+            boolean backwardDone = backward.heap.isEmpty() || backward.heap.minKey() >= best;
+            if (forwardDone && backwardDone) {
+                break;
+            }
+            boolean goForward = backwardDone
+                || (!forwardDone && forward.heap.minKey() <= backward.heap.minKey());
+            SearchState search = goForward ? forward : backward;
+            SearchState other = goForward ? backward : forward;
+
+            int v = search.heap.removeMin();
+            search.settle(v);
+            double dv = search.dist(v);
+            if (other.reached(v) && dv + other.dist(v) < best) {
+                best = dv + other.dist(v);
+                meet = v;
+            }
+            for (int e = upOffsets[v]; e < upOffsets[v + 1]; e++) {
+                int w = upTargets[e];
+                double d = dv + upWeights[e];
+                if (d < search.dist(w)) {
+                    search.reach(w, d, v);
+                    search.heap.insertOrDecrease(w, d);
+                }
+            }
+        }
+        if (meet < 0) {
+            return new ArrayList<>();
+        }
+
+        /* The upward path from start to meet, then the downward path from meet to end. */
+        IntList hierarchyPath = new IntList();
+        for (int v = meet; v != start; v = forward.parent(v)) {
+            hierarchyPath.add(v);
+        }
+        hierarchyPath.add(start);
+        hierarchyPath.reverse();
+        for (int v = meet; v != end; ) {
+            v = backward.parent(v);
+            hierarchyPath.add(v);
+        }
+
+        List<Long> path = new ArrayList<>();
+        path.add(graph.ids[start]);
+        for (int i = 0; i + 1 < hierarchyPath.size(); i++) {
+            unpack(hierarchyPath.get(i), hierarchyPath.get(i + 1), path);
+        }
+        return path;
+    }
+
+    /**
+     * Append the vertices of the original path behind the edge u-w, excluding u, to path.
+     */
+    private void unpack(int u, int w, List<Long> path) {
+        IntList stack = new IntList();
+        stack.add(w);
+        stack.add(u);
+        while (stack.size() > 0) {
+            int from = stack.pop();
+            int to = stack.pop();
+            int middle = upMiddles[upEdge(from, to)];
+            if (middle < 0) {
+                path.add(graph.ids[to]);
+            } else {
+                /* Unpack from-middle first, then middle-to. */
+                stack.add(to);
+                stack.add(middle);
+                stack.add(middle);
+                stack.add(from);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the upward edge between u and w, stored at the lower-ranked one.
+     */
+    private int upEdge(int u, int w) {
+        int low = rank[u] < rank[w] ? u : w;
+        int high = low == u ? w : u;
+        for (int e = upOffsets[low]; e < upOffsets[low + 1]; e++) {
+            if (upTargets[e] == high) {
+                return e;
+            }
+        }
+        throw new IllegalStateException("No edge between " + graph.ids[u] + " and "
+            + graph.ids[w] + " in the hierarchy.");
+    }
+
+    /**
+     * Save the hierarchy to a file. It is written to a temporary file first and then moved
+     * into place, so that a crash or another server saving at the same time never leaves a
+     * half-written hierarchy behind.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(rank.length);
+            out.writeInt(upTargets.length);
+            for (int r : rank) {
+                out.writeInt(r);
+            }
+            for (int offset : upOffsets) {
+                out.writeInt(offset);
+            }
+            for (int e = 0; e < upTargets.length; e++) {
+                out.writeInt(upTargets[e]);
+                out.writeInt(upMiddles[e]);
+                out.writeDouble(upWeights[e]);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a hierarchy saved by save().
+     *
+     * @param graph   The graph the hierarchy was built for.
+     * @param weights The edge weights the hierarchy was built with.
+     * @param file    The file to read.
+     * @return The loaded hierarchy.
+     * @throws IOException If the file cannot be read, is corrupted, or was not built for
+     *                     this graph with this version of the format.
+     */
+    static ContractionHierarchy load(CompactGraph graph, double[] weights, File file)
+        throws IOException {
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a contraction hierarchy of version "
+                    + VERSION + ".");
+            }
+            long fingerprint = in.readLong();
+            if (fingerprint != fingerprint(graph, weights) || in.readInt() != graph.size()) {
+                throw new IOException(file + " was built for a different graph.");
+            }
+            int numEdges = in.readInt();
+            int n = graph.size();
+            if (numEdges < 0 || file.length() != HEADER_BYTES + 8L * n + 4 + EDGE_BYTES
+                * numEdges) {
+                throw new IOException(file + " is corrupted.");
+            }
+            int[] rank = new int[n];
+            int[] upOffsets = new int[n + 1];
+            int[] upTargets = new int[numEdges];
+            int[] upMiddles = new int[numEdges];
+            double[] upWeights = new double[numEdges];
+            for (int v = 0; v < n; v++) {
+                rank[v] = in.readInt();
+            }
+            for (int v = 0; v <= n; v++) {
+                upOffsets[v] = in.readInt();
+            }
+            for (int e = 0; e < numEdges; e++) {
+                upTargets[e] = in.readInt();
+                upMiddles[e] = in.readInt();
+                upWeights[e] = in.readDouble();
+            }
+            if (!valid(n, rank, upOffsets, upTargets, upMiddles)) {
+                throw new IOException(file + " is corrupted.");
+            }
+            return new ContractionHierarchy(graph, fingerprint, rank, upOffsets, upTargets,
+                upMiddles, upWeights);
+        }
+    }
+
+    /**
+     * Returns whether loaded arrays form a hierarchy of n vertices: ranks and vertices in
+     * range, and offsets that start at 0, never decrease and end at the number of edges.
+     */
+    private static boolean valid(int n, int[] rank, int[] upOffsets, int[] upTargets,
+                                 int[] upMiddles) {
+        for (int r : rank) {
+            if (r < 0 || r >= n) {
+                return false;
+            }
+        }
+        if (upOffsets[0] != 0 || upOffsets[n] != upTargets.length) {
+            return false;
+        }
+        for (int v = 0; v < n; v++) {
+            if (upOffsets[v] > upOffsets[v + 1]) {
+                return false;
+            }
+        }
+        for (int e = 0; e < upTargets.length; e++) {
+            if (upTargets[e] < 0 || upTargets[e] >= n || upMiddles[e] < -1
+                || upMiddles[e] >= n) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Load the hierarchy from a file if it holds one for this graph, otherwise build it and
+     * try to save it to the file for next time.
+     *
+     * @param graph   The graph to contract.
+     * @param weights The weight of every edge of graph.
+     * @param file    The file the hierarchy is cached in.
+     * @return The contraction hierarchy.
+     */
+    static ContractionHierarchy loadOrBuild(CompactGraph graph, double[] weights, File file) {
+        if (file.exists()) {
+            try {
+                return load(graph, weights, file);
+            } catch (IOException e) {
+                System.out.println("Rebuilding contraction hierarchy: " + e.getMessage());
+            }
+        }
+        ContractionHierarchy ch = build(graph, weights);
+        try {
+            ch.save(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return ch;
+    }
+
+    /**
+     * A hash of the vertices, edges and weights of a graph, to recognise saved hierarchies.
+     */
+    private static long fingerprint(CompactGraph graph, double[] weights) {
+        long h = 1125899906842597L;
+        for (long id : graph.ids) {
+            h = 31 * h + id;
+        }
+        for (int offset : graph.offsets) {
+            h = 31 * h + offset;
+        }
+        for (int e = 0; e < graph.targets.length; e++) {
+            h = 31 * h + graph.targets[e];
+            h = 31 * h + Double.doubleToLongBits(weights[e]);
+        }
+        return h;
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+        private int[] items = new int[16];
+        private int size;
+
+        void add(int x) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = x;
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void reverse() {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                int t = items[i];
+                items[i] = items[j];
+                items[j] = t;
+            }
+        }
+    }
+
+    /**
+     * The mutable remaining graph during preprocessing. Each vertex keeps growable arrays of
+     * its remaining neighbors, the weights of the edges to them and their middle vertices (-1
+     * for original edges). Contracting a vertex removes it from its neighbors' arrays.
+     */
+    private static class Contractor {
+        private final CompactGraph graph;
+        private final int n;
+        private final int[][] to;
+        private final double[][] weight;
+        private final int[][] middle;
+        private final int[] degree;
+        private final int[] contractedNeighbors;
+        private final int[] level;
+        private final int[] rank;
+        /* The upward edges of every contracted vertex, in the same representation. */
+        private final int[][] upTo;
+        private final double[][] upWeight;
+        private final int[][] upMiddle;
+        private final SearchState witness = new SearchState();
+
+        Contractor(CompactGraph graph, double[] weights) {
+            this.graph = graph;
+            n = graph.size();
+            to = new int[n][];
+            weight = new double[n][];
+            middle = new int[n][];
+            degree = new int[n];
+            contractedNeighbors = new int[n];
+            level = new int[n];
+            rank = new int[n];
+            upTo = new int[n][];
+            upWeight = new double[n][];
+            upMiddle = new int[n][];
+            for (int v = 0; v < n; v++) {
+                int d = Math.max(1, graph.offsets[v + 1] - graph.offsets[v]);
+                to[v] = new int[d];
+                weight[v] = new double[d];
+                middle[v] = new int[d];
+            }
+            for (int v = 0; v < n; v++) {
+                for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                    if (graph.targets[e] != v) {
+                        addArc(v, graph.targets[e], weights[e], -1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Add the arc v-w, or lower the weight of the existing one if the new one is shorter.
+         */
+        private void addArc(int v, int w, double wt, int mid) {
+            for (int i = 0; i < degree[v]; i++) {
+                if (to[v][i] == w) {
+                    if (wt < weight[v][i]) {
+                        weight[v][i] = wt;
+                        middle[v][i] = mid;
+                    }
+                    return;
+                }
+            }
+            if (degree[v] == to[v].length) {
+                to[v] = Arrays.copyOf(to[v], 2 * degree[v]);
+                weight[v] = Arrays.copyOf(weight[v], 2 * degree[v]);
+                middle[v] = Arrays.copyOf(middle[v], 2 * degree[v]);
+            }
+            to[v][degree[v]] = w;
+            weight[v][degree[v]] = wt;
+            middle[v][degree[v]] = mid;
+            degree[v]++;
+        }
+
+        /**
+         * Remove the arc v-w.
+         */
+        private void removeArc(int v, int w) {
+            for (int i = 0; i < degree[v]; i++) {
+                if (to[v][i] == w) {
+                    degree[v]--;
+                    to[v][i] = to[v][degree[v]];
+                    weight[v][i] = weight[v][degree[v]];
+                    middle[v][i] = middle[v][degree[v]];
+                    return;
+                }
+            }
+        }
+
+        void contractAll() {
+            IndexedMinHeap queue = new IndexedMinHeap();
+            queue.reset(n);
+            for (int v = 0; v < n; v++) {
+                queue.insertOrDecrease(v, priority(v));
+            }
+            int next = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.removeMin();
+                /* Priorities only ever decrease in the queue, so re-check lazily. */
+                double p = priority(v);
+                if (!queue.isEmpty() && p > queue.minKey()) {
+                    queue.insertOrDecrease(v, p);
+                    continue;
+                }
+                contract(v);
+                rank[v] = next++;
+                for (int u : upTo[v]) {
+                    contractedNeighbors[u]++;
+                    level[u] = Math.max(level[u], level[v] + 1);
+                    queue.insertOrDecrease(u, priority(u));
+                }
+            }
+        }
+
+        /**
+         * Twice the edge difference of contracting v, plus the number of its contracted
+         * neighbors and its level in the hierarchy, so that contraction spreads evenly over
+         * the graph.
+         */
+        private double priority(int v) {
+            return 2 * (shortcuts(v, false) - degree[v]) + contractedNeighbors[v] + level[v];
+        }
+
+        private void contract(int v) {
+            shortcuts(v, true);
+            upTo[v] = Arrays.copyOf(to[v], degree[v]);
+            upWeight[v] = Arrays.copyOf(weight[v], degree[v]);
+            upMiddle[v] = Arrays.copyOf(middle[v], degree[v]);
+            for (int u : upTo[v]) {
+                removeArc(u, v);
+            }
+            to[v] = null;
+            weight[v] = null;
+            middle[v] = null;
+            degree[v] = 0;
+        }
+
+        /**
+         * Count, and if add is true also insert, the shortcuts needed to contract v.
+         */
+        private int shortcuts(int v, boolean add) {
+            int count = 0;
+            for (int i = 0; i + 1 < degree[v]; i++) {
+                int u = to[v][i];
+                double maxVia = 0;
+                for (int j = i + 1; j < degree[v]; j++) {
+                    maxVia = Math.max(maxVia, weight[v][i] + weight[v][j]);
+                }
+                witnessSearch(u, v, maxVia, i + 1,
+                    add ? CONTRACT_SETTLE_LIMIT : SIMULATE_SETTLE_LIMIT);
+                for (int j = i + 1; j < degree[v]; j++) {
+                    int w = to[v][j];
+                    double via = weight[v][i] + weight[v][j];
+                    if (witness.dist(w) > via) {
+                        count++;
+                        if (add) {
+                            addArc(u, w, via, v);
+                            addArc(w, u, via, v);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Dijkstra's algorithm from source in the remaining graph without v, until the
+         * neighbors of v from position firstTarget on are settled, the distance exceeds
+         * maxDist, or settleLimit vertices are settled.
+         */
+        private void witnessSearch(int source, int v, double maxDist, int firstTarget,
+                                   int settleLimit) {
+            witness.reset(n);
+            witness.reach(source, 0.0, source);
+            witness.heap.insertOrDecrease(source, 0.0);
+            int targetsLeft = degree[v] - firstTarget;
+            while (!witness.heap.isEmpty() && witness.heap.minKey() <= maxDist
+                && witness.settledCount() < settleLimit && targetsLeft > 0) {
+                int x = witness.heap.removeMin();
+                witness.settle(x);
+                if (isTarget(v, x, firstTarget)) {
+                    targetsLeft--;
+                }
+                double dx = witness.dist(x);
+                for (int i = 0; i < degree[x]; i++) {
+                    int y = to[x][i];
+                    if (y == v) {
+                        continue;
+                    }
+                    double d = dx + weight[x][i];
+                    if (d < witness.dist(y)) {
+                        witness.reach(y, d, x);
+                        witness.heap.insertOrDecrease(y, d);
+                    }
+                }
+            }
+        }
+
+        private boolean isTarget(int v, int x, int firstTarget) {
+            for (int j = firstTarget; j < degree[v]; j++) {
+                if (to[v][j] == x) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        ContractionHierarchy toHierarchy(long fingerprint) {
+            int[] upOffsets = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                upOffsets[v + 1] = upOffsets[v] + upTo[v].length;
+            }
+            int m = upOffsets[n];
+            int[] upTargets = new int[m];
+            int[] upMiddles = new int[m];
+            double[] upWeights = new double[m];
+            for (int v = 0; v < n; v++) {
+                System.arraycopy(upTo[v], 0, upTargets, upOffsets[v], upTo[v].length);
+                System.arraycopy(upMiddle[v], 0, upMiddles, upOffsets[v], upTo[v].length);
+                System.arraycopy(upWeight[v], 0, upWeights, upOffsets[v], upTo[v].length);
+            }
+            return new ContractionHierarchy(graph, fingerprint, rank, upOffsets, upTargets,
+                upMiddles, upWeights);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The road distances and travel times between every source and every destination vertex of
+ * a CompactGraph, for dispatching from depots to many stops.
+ * <p>
+ * Each distinct source costs one Dijkstra search that keeps going until it has settled every
+ * distinct destination, instead of one point to point search per pair. Every road is
+ * two-way with the same weight in both directions, so when there are fewer distinct
+ * destinations than sources the searches run from the destinations and the result is
+ * transposed. The searches are independent and run in parallel, each with the per-thread
+ * state of its worker.
+ */
+public class DistanceMatrix {
+    /**
+     * The search state of one worker: the shared bookkeeping, plus the other weight summed
+     * along the best path to every reached vertex.
+     */
+    private static final class RowState {
+        final SearchState search = new SearchState();
+        double[] other = new double[0];
+    }
+
+    private static final ThreadLocal<RowState> ROW_STATE = ThreadLocal.withInitial(RowState::new);
+
+    /**
+     * The length in miles and the travel time in hours of the best path from source i to
+     * destination j, at index i * columns + j, or infinity if there is none.
+     */
+    final double[] distances, durations;
+    final int rows, columns;
+
+    /**
+     * Compute the matrix.
+     *
+     * @param graph        The graph to route on.
+     * @param byTime       Whether the best path is the fastest one rather than the shortest.
+     * @param sources      The indexes of the source vertices.
+     * @param destinations The indexes of the destination vertices.
+     */
+    DistanceMatrix(CompactGraph graph, boolean byTime, int[] sources, int[] destinations) {
+        rows = sources.length;
+        columns = destinations.length;
+        distances = new double[rows * columns];
+        durations = new double[rows * columns];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        Arrays.fill(durations, Double.POSITIVE_INFINITY);
+        if (rows == 0 || columns == 0) {
+            return;
+        }
+        int[] from = distinct(sources);
+        int[] to = distinct(destinations);
+        boolean transposed = to.length < from.length;
+        if (transposed) {
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+
+        /* slot[v] is the position of v in to, or -1. */
+        int[] slot = new int[graph.size()];
+        Arrays.fill(slot, -1);
+        for (int j = 0; j < to.length; j++) {
+            slot[to[j]] = j;
+        }
+        double[] weights = byTime ? graph.times : graph.lengths;
+        double[] other = byTime ? graph.lengths : graph.times;
+        /* The weight and the other weight to to[j] from from[i], at i * to.length + j. */
+        double[] best = new double[from.length * to.length];
+        double[] bestOther = new double[from.length * to.length];
+        int[] starts = from;
+        int[] ends = to;
+        IntStream.range(0, from.length).parallel().forEach(i -> search(graph, weights, other,
+            starts[i], slot, ends.length, best, bestOther, i * ends.length));
+
+        double[] lengths = byTime ? bestOther : best;
+        double[] times = byTime ? best : bestOther;
+        int[] rowOf = positions(transposed ? destinations : sources, from);
+        int[] columnOf = positions(transposed ? sources : destinations, to);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                int k = transposed ? rowOf[j] * to.length + columnOf[i]
+                    : rowOf[i] * to.length + columnOf[j];
+                distances[i * columns + j] = lengths[k];
+                durations[i * columns + j] = times[k];
+            }
+        }
+    }
+
+    /**
+     * Run Dijkstra from a source until every vertex with a slot is settled, and write the
+     * weight and the other weight of the best path to each of them into one row.
+     */
+    private static void search(CompactGraph graph, double[] weights, double[] other,
+                               int source, int[] slot, int numSlots, double[] best,
+                               double[] bestOther, int row) {
+        Arrays.fill(best, row, row + numSlots, Double.POSITIVE_INFINITY);
+        Arrays.fill(bestOther, row, row + numSlots, Double.POSITIVE_INFINITY);
+        RowState rowState = ROW_STATE.get();
+        SearchState state = rowState.search;
+        int n = graph.size();
+        if (rowState.other.length < n) {
+            rowState.other = new double[n];
+        }
+        double[] otherTo = rowState.other;
+        state.reset(n);
+        state.reach(source, 0.0, source);
+        otherTo[source] = 0.0;
+        state.heap.insertOrDecrease(source, 0.0);
+        int remaining = numSlots;
+        while (remaining > 0 && !state.heap.isEmpty()) {
+            int v = state.heap.removeMin();
+            state.settle(v);
+            double dv = state.dist(v);
+            if (slot[v] >= 0) {
+                best[row + slot[v]] = dv;
+                bestOther[row + slot[v]] = otherTo[v];
+                remaining--;
+            }
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                int w = graph.targets[e];
+                double d = dv + weights[e];
+                if (!state.settled(w) && d < state.dist(w)) {
+                    state.reach(w, d, v);
+                    otherTo[w] = otherTo[v] + other[e];
+                    state.heap.insertOrDecrease(w, d);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the distinct values of an array, sorted.
+     */
+    private static int[] distinct(int[] vertices) {
+        return IntStream.of(vertices).sorted().distinct().toArray();
+    }
+
+    /**
+     * Returns the position of every vertex in the sorted distinct vertices.
+     */
+    private static int[] positions(int[] vertices, int[] distinct) {
+        int[] positions = new int[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            positions[i] = Arrays.binarySearch(distinct, vertices[i]);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typo-tolerant prefix search over the keys of a frozen PrefixIndex.
+ * <p>
+ * A key matches a query if some prefix of the key is within a number of edits (insertions,
+ * deletions and substitutions) of the query, so "telgraph" finds "telegraph cafe". The sorted
+ * keys are walked as the trie they form: one row of the edit distance table per character of
+ * the current key, where the rows of the prefix a key shares with the previous key are kept.
+ * This is the Levenshtein automaton of the query run over the trie. As soon as every entry of
+ * a row exceeds the allowed edits, longer prefixes cannot get any closer, so all keys with
+ * that prefix are decided at once and the walk jumps past them with one binary search. No
+ * index besides the PrefixIndex is needed.
+ */
+public class FuzzySearch {
+    /**
+     * A key that matched, and the fewest edits between the query and a prefix of it.
+     */
+    static class Match {
+        final int key;
+        final int edits;
+
+        Match(int key, int edits) {
+            this.key = key;
+            this.edits = edits;
+        }
+    }
+
+    /**
+     * Returns the keys of a frozen index that have a prefix within maxEdits of a query.
+     *
+     * @param index    The index to search.
+     * @param query    The query, cleaned like the keys.
+     * @param maxEdits The most edits allowed.
+     * @return The positions of the matching keys in sorted order, each with its distance.
+     */
+    static List<Match> search(PrefixIndex<?> index, String query, int maxEdits) {
+        int m = query.length();
+        List<Match> matches = new ArrayList<>();
+        /* rows[t] is the table row of the first t characters of the current key, and best[t]
+         * the fewest edits from the query to any of its first t + 1 prefixes. */
+        int[][] rows = new int[16][];
+        int[] best = new int[16];
+        rows[0] = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            rows[0][j] = j;
+        }
+        best[0] = m;
+        String previous = "";
+        /* Rows 0 up to computed belong to prefixes of previous. */
+        int computed = 0;
+
+        int n = index.size();
+        int i = 0;
+        while (i < n) {
+            String key = index.key(i);
+            int t = Math.min(commonPrefix(previous, key), computed);
+            if (key.length() >= rows.length) {
+                int length = Math.max(key.length() + 1, 2 * rows.length);
+                rows = Arrays.copyOf(rows, length);
+                best = Arrays.copyOf(best, length);
+            }
+            boolean pruned = false;
+            while (t < key.length()) {
+                t++;
+                int min = fillRow(rows, t, key.charAt(t - 1), query);
+                best[t] = Math.min(best[t - 1], rows[t][m]);
+                if (min > maxEdits) {
+                    pruned = true;
+                    break;
+                }
+            }
+            previous = key;
+            computed = t;
+            if (pruned) {
+                /* Longer prefixes only need more edits, so every key with this prefix is as
+                 * close as its shorter prefixes are. */
+                int end = Math.max(i + 1, index.prefixEnd(key.substring(0, t)));
+                for (; i < end; i++) {
+                    if (best[t] <= maxEdits) {
+                        matches.add(new Match(i, best[t]));
+                    }
+                }
+                continue;
+            }
+            if (best[t] <= maxEdits) {
+                matches.add(new Match(i, best[t]));
+            }
+            i++;
+        }
+        return matches;
+    }
+
+    /**
+     * Fill in row t of the edit distance table, for the character c of the key.
+     *
+     * @return The smallest entry of the row.
+     */
+    private static int fillRow(int[][] rows, int t, char c, String query) {
+        int m = query.length();
+        int[] above = rows[t - 1];
+        int[] row = rows[t];
+        if (row == null || row.length != m + 1) {
+            row = new int[m + 1];
+            rows[t] = row;
+        }
+        row[0] = t;
+        int min = t;
+        for (int j = 1; j <= m; j++) {
+            int substitute = above[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+            row[j] = Math.min(substitute, Math.min(above[j], row[j - 1]) + 1);
+            min = Math.min(min, row[j]);
+        }
+        return min;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -4,8 +4,10 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -38,19 +40,47 @@ public class GraphBuildingHandler extends DefaultHandler {
         ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
             "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
             "secondary_link", "tertiary_link"));
+    /**
+     * The speed in mph assumed on each allowed highway type when a way has no usable
+     * maxspeed tag, roughly the usual limits on such roads in California.
+     */
+    private static final Map<String, Integer> DEFAULT_SPEEDS = new HashMap<>();
+    private static final int FALLBACK_SPEED = 25;
+    private static final double KMH_PER_MPH = 1.609344;
+
+    static {
+        DEFAULT_SPEEDS.put("motorway", 65);
+        DEFAULT_SPEEDS.put("trunk", 55);
+        DEFAULT_SPEEDS.put("primary", 40);
+        DEFAULT_SPEEDS.put("secondary", 35);
+        DEFAULT_SPEEDS.put("tertiary", 30);
+        DEFAULT_SPEEDS.put("unclassified", 25);
+        DEFAULT_SPEEDS.put("residential", 25);
+        DEFAULT_SPEEDS.put("living_street", 10);
+        DEFAULT_SPEEDS.put("motorway_link", 45);
+        DEFAULT_SPEEDS.put("trunk_link", 35);
+        DEFAULT_SPEEDS.put("primary_link", 30);
+        DEFAULT_SPEEDS.put("secondary_link", 30);
+        DEFAULT_SPEEDS.put("tertiary_link", 25);
+    }
+
     private String activeState = "";
-    private final GraphDB g;
-    private GraphDB.Node lastNode;
-    private List<GraphDB.Node> nodesInWay;
+    private long[] nodesInWay = new long[16];
+    private int numNodesInWay;
     private GraphDB.Way way;
+    private final List<GraphDB.Way> ways = new ArrayList<>();
+    private final List<long[]> wayNodes = new ArrayList<>();
+    private final LongHashSet referenced = new LongHashSet();
+    private boolean seenWay;
+    private boolean nodesFirst = true;
 
     /**
-     * Create a new GraphBuildingHandler.
-     *
-     * @param g The graph to populate with the XML data.
+     * Create a new GraphBuildingHandler for the first pass over an OSM file. It only looks at
+     * ways: it keeps every valid way with the ids of its nodes, and collects the ids of all
+     * nodes that valid ways reference. The nodes themselves are read in a second pass, see
+     * OsmIngestion.
      */
-    public GraphBuildingHandler(GraphDB g) {
-        this.g = g;
+    public GraphBuildingHandler() {
     }
 
     /**
@@ -73,67 +103,38 @@ public class GraphBuildingHandler extends DefaultHandler {
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes)
         throws SAXException {
-        /* Some example code on how you might begin to parse XML files. */
-        if (qName.equals("node")) {
-            /* We encountered a new <node...> tag. */
-            activeState = "node";
-//            System.out.println("Node id: " + attributes.getValue("id"));
-//            System.out.println("Node lon: " + attributes.getValue("lon"));
-//            System.out.println("Node lat: " + attributes.getValue("lat"));
-
-            /* save a "node" */
-            long id = Long.parseLong(attributes.getValue("id"));
-            double lat = Double.parseDouble(attributes.getValue("lat"));
-            double lon = Double.parseDouble(attributes.getValue("lon"));
-            GraphDB.Node n = new GraphDB.Node(id, lat, lon);
-            g.addNode(n);
-            lastNode = n;
-        } else if (qName.equals("way")) {
+        if (qName.equals("way")) {
             /* We encountered a new <way...> tag. */
             activeState = "way";
-            nodesInWay = new ArrayList<>();
+            seenWay = true;
+            numNodesInWay = 0;
             way = new GraphDB.Way();
-//            System.out.println("Beginning a way...");
+        } else if (qName.equals("node")) {
+            /* Nodes are read in the second pass. */
+            activeState = "node";
+            nodesFirst &= !seenWay;
         } else if (activeState.equals("way") && qName.equals("nd")) {
-            /* While looking at a way, we found a <nd...> tag. */
-            //System.out.println("Id of a node in this way: " + attributes.getValue("ref"));
-
-            /* Hint1: It would be useful to remember what was the last node in this way. */
-            /* Hint2: Not all ways are valid. So, directly connecting the nodes here would be
-            cumbersome since you might have to remove the connections if you later see a tag that
-            makes this way invalid. Instead, think of keeping a list of possible connections and
-            remember whether this way is valid or not. */
-            long id = Long.parseLong(attributes.getValue("ref"));
-            nodesInWay.add(g.getNode(id));
+            /* While looking at a way, we found a <nd...> tag. Not all ways are valid, and the
+            highway tag that tells may come after the nodes, so only remember them for now. */
+            if (numNodesInWay == nodesInWay.length) {
+                nodesInWay = Arrays.copyOf(nodesInWay, 2 * numNodesInWay);
+            }
+            nodesInWay[numNodesInWay++] = Long.parseLong(attributes.getValue("ref"));
         } else if (activeState.equals("way") && qName.equals("tag")) {
             /* While looking at a way, we found a <tag...> tag. */
             String k = attributes.getValue("k");
             String v = attributes.getValue("v");
             if (k.equals("maxspeed")) {
-                //System.out.println("Max Speed: " + v);
-                way.maxSpeed = Integer.parseInt(v.split(" ")[0]);
+                way.maxSpeed = parseSpeed(v);
             } else if (k.equals("highway")) {
-                //System.out.println("Highway type: " + v);
                 /* Figure out whether this way and its connections are valid. */
-                /* Hint: Setting a "flag" is good enough! */
                 if (ALLOWED_HIGHWAY_TYPES.contains(v)) {
                     way.valid = true;
+                    way.highway = v;
                 }
             } else if (k.equals("name")) {
-                //System.out.println("Way Name: " + v);
                 way.name = v;
             }
-//            System.out.println("Tag with k=" + k + ", v=" + v + ".");
-        } else if (activeState.equals("node") && qName.equals("tag") && attributes.getValue("k")
-            .equals("name")) {
-            /* While looking at a node, we found a <tag...> with k="name". */
-            /* TODO Create a location. */
-            /* Hint: Since we found this <tag...> INSIDE a node, we should probably remember which
-            node this tag belongs to. Remember XML is parsed top-to-bottom, so probably it's the
-            last node that you looked at (check the first if-case). */
-//            System.out.println("Node's name: " + attributes.getValue("v"));
-            String name = attributes.getValue("v");
-            g.addLocation(lastNode.id, name, lastNode.lat, lastNode.lon);
         }
     }
 
@@ -153,19 +154,76 @@ public class GraphBuildingHandler extends DefaultHandler {
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
         if (qName.equals("way")) {
-            /* We are done looking at a way. (We finished looking at the nodes, speeds, etc...)*/
-            /* Hint1: If you have stored the possible connections for this way, here's your
-            chance to actually connect the nodes together if the way is valid. */
-//            System.out.println("Finishing a way...");
+            /* We are done looking at a way. Keep it and its nodes if it is valid. */
             if (way.valid) {
-                for (int i = 0; i < nodesInWay.size() - 1; i++) {
-                    GraphDB.Node curNode = nodesInWay.get(i);
-                    GraphDB.Node nextNode = nodesInWay.get(i + 1);
-                    curNode.edges.put(nextNode.id, way);
-                    nextNode.edges.put(curNode.id, way);
+                long[] nodes = Arrays.copyOf(nodesInWay, numNodesInWay);
+                for (long id : nodes) {
+                    referenced.add(id);
                 }
+                ways.add(way);
+                wayNodes.add(nodes);
             }
+            activeState = "";
         }
     }
 
+    /**
+     * Returns the valid ways, in the order of the file.
+     */
+    List<GraphDB.Way> ways() {
+        return ways;
+    }
+
+    /**
+     * Returns the node ids of each valid way, in the same order as ways().
+     */
+    List<long[]> wayNodes() {
+        return wayNodes;
+    }
+
+    /**
+     * Returns whether every node of the file comes before its first way, as in files sorted
+     * the way OSM exports them.
+     */
+    boolean nodesFirst() {
+        return nodesFirst;
+    }
+
+    /**
+     * Returns the ids of all nodes that valid ways reference.
+     */
+    LongHashSet referenced() {
+        return referenced;
+    }
+
+    /**
+     * Returns the default speed of a highway type.
+     *
+     * @param highway The value of a way's highway tag.
+     * @return The speed in mph to assume when the way has no maxspeed tag.
+     */
+    static int defaultSpeed(String highway) {
+        return DEFAULT_SPEEDS.getOrDefault(highway, FALLBACK_SPEED);
+    }
+
+    /**
+     * Parses the value of a maxspeed tag. Following the OSM convention, a number without a
+     * unit is in km/h.
+     *
+     * @param v The value of the tag, e.g. "25 mph" or "50".
+     * @return The speed in mph, or 0 if the value is not a plain speed, like "none" or
+     * "signals".
+     */
+    static int parseSpeed(String v) {
+        String[] parts = v.trim().split(" ");
+        try {
+            int speed = Integer.parseInt(parts[0]);
+            if (parts.length > 1 && parts[1].equals("mph")) {
+                return Math.max(speed, 0);
+            }
+            return (int) Math.max(Math.round(speed / KMH_PER_MPH), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
 }
@@ -1,10 +1,6 @@
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -17,7 +13,7 @@ import java.util.Set;
 
 /**
  * Graph for storing all of the intersection (vertex) and road (edge) information.
- * Uses your GraphBuildingHandler to convert the XML files into a graph. Your
+ * Uses your GraphBuildingHandler and OsmIngestion to convert the XML files into a graph. Your
  * code must include the vertices, adjacent, distance, closest, lat, and lon
  * methods. You'll also need to include instance variables and methods for
  * modifying the graph (e.g. addNode and addEdge).
@@ -25,13 +21,22 @@ import java.util.Set;
  * @author Alan Yao, Josh Hug
  */
 public class GraphDB {
+    /**
+     * The budget of the prefix cache: the number of cached prefixes plus the number of names
+     * in their results.
+     */
+    private static final long PREFIX_CACHE_WEIGHT = 1L << 20;
     /**
      * Your instance variables for storing the graph. You should consider
      * creating helper classes, e.g. Node, Edge, etc.
      */
-    private final Map<Long, Node> nodes = new HashMap<>();
-    private final TrieST<TrieNode> trieST = new TrieST<>();
-    private final Map<String, List<String>> prefixCache = new HashMap<>();
+    private Map<Long, Node> nodes = new HashMap<>();
+    private volatile CompactGraph compact;
+    private final PrefixIndex<TrieNode> locationIndex;
+    private final Autocomplete autocomplete;
+    private final PrefixCache prefixCache = new PrefixCache(PREFIX_CACHE_WEIGHT,
+        this::collectLocationsByPrefix);
+    private final KdTree kdTree;
 
 
     /**
@@ -56,18 +61,28 @@ public class GraphDB {
      */
     static class Way {
         String name;
-        int maxSpeed;  // mph
+        int maxSpeed;  // mph, 0 if untagged
+        String highway;
         boolean valid;
 
         Way() {
             name = "";
             maxSpeed = 0;
+            highway = "";
             valid = false;
         }
+
+        /**
+         * Returns the speed to route with in mph: the tagged maximum speed, or the default
+         * speed of the way's highway type if it has none.
+         */
+        int speed() {
+            return maxSpeed > 0 ? maxSpeed : GraphBuildingHandler.defaultSpeed(highway);
+        }
     }
 
     /**
-     * A node in the trie tree
+     * The locations that share a cleaned name, and their distinct names
      */
     static class TrieNode {
         final List<String> names = new ArrayList<>();
@@ -90,7 +105,35 @@ public class GraphDB {
      * @return a node in nodes or null
      */
     Node getNode(long id) {
-        return this.nodes.get(id);
+        return this.nodes == null ? null : this.nodes.get(id);
+    }
+
+    /**
+     * Freeze the graph into its compact array layout and drop the per-node maps. Afterwards
+     * the graph can no longer be modified and getNode returns null, but every query method
+     * keeps working against the compact layout.
+     */
+    void freeze() {
+        compact();
+        nodes = null;
+    }
+
+    /**
+     * Returns the compact layout of this graph. If the graph has not been frozen, the layout
+     * is built from the current nodes the first time it is asked for, and the per-node maps
+     * are kept alongside it.
+     */
+    CompactGraph compact() {
+        CompactGraph c = compact;
+        if (c == null) {
+            synchronized (this) {
+                if (compact == null) {
+                    compact = new CompactGraph(nodes);
+                }
+                c = compact;
+            }
+        }
+        return c;
     }
 
     /**
@@ -98,27 +141,35 @@ public class GraphDB {
      */
     void addLocation(long id, String name, double lat, double lon) {
         String cleanName = cleanString(name);
-        Map<String, Object> location = new HashMap<>();
-        location.put("lat", lat);
-        location.put("lon", lon);
-        location.put("id", id);
-        location.put("name", name);
+        Map<String, Object> location = location(id, name, lat, lon);
 
-        TrieNode trieNode = trieST.get(cleanName);
+        TrieNode trieNode = locationIndex.get(cleanName);
         if (trieNode == null) {
             trieNode = new TrieNode();
-            trieST.put(cleanName, trieNode);
+            locationIndex.put(cleanName, trieNode);
         }
         trieNode.names.add(name);
         trieNode.locations.add(location);
     }
 
     /**
-     * Remove redundant name in the TrieNode of TrieST and sorted them
+     * Returns a location as getLocations lists it.
+     */
+    static Map<String, Object> location(long id, String name, double lat, double lon) {
+        Map<String, Object> location = new HashMap<>();
+        location.put("lat", lat);
+        location.put("lon", lon);
+        location.put("id", id);
+        location.put("name", name);
+        return location;
+    }
+
+    /**
+     * Remove redundant name in the TrieNode of the location index and sorted them
      */
     private void removeRedundantNameAndSortIt() {
-        for (String key : trieST.keys()) {
-            List<String> name = trieST.get(key).names;
+        for (TrieNode trieNode : locationIndex.valuesWithPrefix("")) {
+            List<String> name = trieNode.names;
             Set<String> nameSet = new HashSet<>(name);
             name.clear();
             name.addAll(nameSet);
@@ -127,43 +178,141 @@ public class GraphDB {
     }
 
     List<String> getLocationsByPrefix(String prefix) {
-        String cleanPrefix = cleanString(prefix);
-        if (!prefixCache.containsKey(cleanPrefix)) {
-            List<String> result = new LinkedList<>();
-            for (String key : trieST.keysWithPrefix(cleanString(prefix))) {
-                result.addAll(trieST.get(key).names);
-            }
-            prefixCache.put(cleanPrefix, Collections.unmodifiableList(result));
+        return prefixCache.get(cleanString(prefix));
+    }
+
+    private List<String> collectLocationsByPrefix(String cleanPrefix) {
+        List<String> result = new ArrayList<>();
+        for (TrieNode trieNode : locationIndex.valuesWithPrefix(cleanPrefix)) {
+            result.addAll(trieNode.names);
         }
-        return prefixCache.get(cleanPrefix);
+        return result;
+    }
+
+    /**
+     * Returns the counters of the prefix cache, see PrefixCache.stats().
+     */
+    Map<String, Long> prefixCacheStats() {
+        return prefixCache.stats();
     }
 
+    /**
+     * Returns the best names of locations that complete a prefix.
+     *
+     * @param prefix  The prefix, in any case, with or without punctuation.
+     * @param limit   The most names to return.
+     * @param ranking How to rank the names.
+     * @param lon     The longitude to rank by proximity to, or any value for the other rankings.
+     * @param lat     The latitude to rank by proximity to.
+     * @return Up to limit names whose cleaned name starts with the cleaned prefix, best first.
+     */
+    List<String> getLocationsByPrefix(String prefix, int limit, Autocomplete.Ranking ranking,
+                                      double lon, double lat) {
+        return autocomplete.complete(cleanString(prefix), limit, ranking, lon, lat);
+    }
+
+    /**
+     * Returns the names of locations whose cleaned name has a prefix within a few edits of
+     * the cleaned query, so that misspelled prefixes still find them.
+     *
+     * @param prefix   The query, in any case, with or without punctuation.
+     * @param maxEdits The most insertions, deletions and substitutions allowed.
+     * @return The matching names, the fewest edits first, then in the order of
+     * getLocationsByPrefix.
+     */
+    List<String> getLocationsByFuzzyPrefix(String prefix, int maxEdits) {
+        List<FuzzySearch.Match> matches =
+            FuzzySearch.search(locationIndex, cleanString(prefix), maxEdits);
+        List<String> result = new ArrayList<>();
+        for (int edits = 0; edits <= maxEdits; edits++) {
+            for (FuzzySearch.Match match : matches) {
+                if (match.edits == edits) {
+                    result.addAll(locationIndex.value(match.key).names);
+                }
+            }
+        }
+        return result;
+    }
 
     List<Map<String, Object>> getLocations(String locationName) {
-        return trieST.get(cleanString(locationName)).locations;
+        return locationIndex.get(cleanString(locationName)).locations;
     }
 
     /**
      * Example constructor shows how to create and start an XML parser.
      * You do not need to modify this constructor, but you're welcome to do so.
      *
-     * @param dbPath Path to the XML file to be parsed.
+     * @param dbPath Path to the XML file to be parsed, which may be gzipped.
      */
     public GraphDB(String dbPath) {
+        locationIndex = new PrefixIndex<>();
         try {
-            File inputFile = new File(dbPath);
-            FileInputStream inputStream = new FileInputStream(inputFile);
-            // GZIPInputStream stream = new GZIPInputStream(inputStream);
-
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(this);
-            saxParser.parse(inputStream, gbh);
+            OsmIngestion.read(dbPath, this);
             clean();
             removeRedundantNameAndSortIt();
         } catch (ParserConfigurationException | SAXException | IOException e) {
             e.printStackTrace();
         }
+        locationIndex.freeze();
+        autocomplete = new Autocomplete(locationIndex);
+        kdTree = buildKdTree();
+    }
+
+    /**
+     * Create a frozen graph from the parts of a graph saved by GraphSnapshot.
+     *
+     * @param compact       The compact layout of the cleaned graph.
+     * @param locationIndex The locations, keyed by their cleaned names, with sorted unique
+     *                      names. It is frozen if it is not yet.
+     * @param kdIds         The vertex ids in the order the spatial index was built from.
+     */
+    GraphDB(CompactGraph compact, PrefixIndex<TrieNode> locationIndex, long[] kdIds) {
+        this.nodes = null;
+        this.compact = compact;
+        this.locationIndex = locationIndex;
+        locationIndex.freeze();
+        autocomplete = new Autocomplete(locationIndex);
+        double[] lons = new double[kdIds.length];
+        double[] lats = new double[kdIds.length];
+        for (int i = 0; i < kdIds.length; i++) {
+            int v = compact.index(kdIds[i]);
+            lons[i] = compact.lons[v];
+            lats[i] = compact.lats[v];
+        }
+        kdTree = new KdTree(kdIds, lons, lats);
+    }
+
+    /**
+     * Returns the location index, keyed by cleaned names, for GraphSnapshot.
+     */
+    PrefixIndex<TrieNode> locationIndex() {
+        return locationIndex;
+    }
+
+    /**
+     * Returns the vertex ids in the order the spatial index was built from, for GraphSnapshot.
+     */
+    long[] kdIds() {
+        return kdTree.inputIds();
+    }
+
+    /**
+     * Build the spatial index over the cleaned vertices. The vertices are handed to the tree in
+     * the iteration order of nodes, so ties are broken the same way a scan over nodes would.
+     */
+    private KdTree buildKdTree() {
+        int n = nodes.size();
+        long[] ids = new long[n];
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        int i = 0;
+        for (Node node : nodes.values()) {
+            ids[i] = node.id;
+            lons[i] = node.lon;
+            lats[i] = node.lat;
+            i++;
+        }
+        return new KdTree(ids, lons, lats);
     }
 
     /**
@@ -191,6 +340,9 @@ public class GraphDB {
      * @return An iterable of id's of all vertices in the graph.
      */
     Iterable<Long> vertices() {
+        if (nodes == null) {
+            return compact.vertices();
+        }
         return nodes.keySet();
     }
 
@@ -201,9 +353,27 @@ public class GraphDB {
      * @return An iterable of the ids of the neighbors of v.
      */
     Iterable<Long> adjacent(long v) {
+        if (nodes == null) {
+            return compact.adjacent(compact.index(v));
+        }
         return nodes.get(v).edges.keySet();
     }
 
+    /**
+     * Returns the way connecting two adjacent vertices.
+     *
+     * @param v The id of the first vertex.
+     * @param w The id of the second vertex.
+     * @return The way the edge between v and w belongs to, or null if they are not adjacent.
+     */
+    Way way(long v, long w) {
+        if (nodes == null) {
+            int e = compact.edge(compact.index(v), compact.index(w));
+            return e < 0 ? null : compact.ways[compact.edgeWays[e]];
+        }
+        return nodes.get(v).edges.get(w);
+    }
+
     /**
      * Returns the great-circle distance between vertices v and w in miles.
      * Assumes the lon/lat methods are implemented properly.
@@ -259,22 +429,38 @@ public class GraphDB {
 
     /**
      * Returns the vertex closest to the given longitude and latitude.
+     * Answered by the spatial index in logarithmic time on typical inputs.
      *
      * @param lon The target longitude.
      * @param lat The target latitude.
      * @return The id of the node in the graph closest to the target.
      */
     long closest(double lon, double lat) {
-        double dist = Double.MAX_VALUE;
-        long closestNodeId = 0;
-        for (Long nodeId : nodes.keySet()) {
-            double curDist = distance(lon, lat, lon(nodeId), lat(nodeId));
-            if (curDist < dist) {
-                closestNodeId = nodeId;
-                dist = curDist;
-            }
-        }
-        return closestNodeId;
+        return kdTree.nearest(lon, lat);
+    }
+
+    /**
+     * Returns the k vertices closest to the given longitude and latitude.
+     *
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param k   The maximum number of vertices to return.
+     * @return The ids of up to k vertices, nearest first.
+     */
+    List<Long> closest(double lon, double lat, int k) {
+        return kdTree.nearest(lon, lat, k);
+    }
+
+    /**
+     * Returns every vertex within the given great-circle distance of a longitude and latitude.
+     *
+     * @param lon    The target longitude.
+     * @param lat    The target latitude.
+     * @param radius The search radius in miles.
+     * @return The ids of the vertices within radius, nearest first.
+     */
+    List<Long> withinDistance(double lon, double lat, double radius) {
+        return kdTree.withinDistance(lon, lat, radius);
     }
 
     /**
@@ -284,6 +470,9 @@ public class GraphDB {
      * @return The longitude of the vertex.
      */
     double lon(long v) {
+        if (nodes == null) {
+            return compact.lons[compact.index(v)];
+        }
         return nodes.get(v).lon;
     }
 
@@ -294,6 +483,9 @@ public class GraphDB {
      * @return The latitude of the vertex.
      */
     double lat(long v) {
+        if (nodes == null) {
+            return compact.lats[compact.index(v)];
+        }
         return nodes.get(v).lat;
     }
 }
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class provides a main method for comparing the two GraphDB layouts: the per-node hash
+ * maps built while parsing, and the compact array layout produced by GraphDB.freeze(). It
+ * prints the heap held by the graph in each layout, and the latency of a fixed set of random
+ * routes. Routing always runs on the compact layout, so there is one set of latencies.
+ */
+public class GraphDBLayoutLauncher {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final int NUM_QUERIES = 500;
+    private static final long SEED = 61;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        long baseline = usedHeap();
+        GraphDB g = new GraphDB(dbPath);
+        long mapHeap = usedHeap() - baseline;
+
+        g.freeze();
+        long compactHeap = usedHeap() - baseline;
+        double[] times = route(g, randomQueries());
+
+        System.out.println("Heap held by the graph:");
+        System.out.printf("  map layout:     %8.2f MB%n", mapHeap / 1e6);
+        System.out.printf("  compact layout: %8.2f MB%n", compactHeap / 1e6);
+        System.out.println("Route latency over " + NUM_QUERIES + " queries (ms):");
+        printLatencies(" ", times);
+    }
+
+    private static double[][] randomQueries() {
+        Random random = new Random(SEED);
+        double[][] queries = new double[NUM_QUERIES][4];
+        for (double[] q : queries) {
+            q[0] = MapServer.ROOT_ULLON
+                + random.nextDouble() * (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON);
+            q[1] = MapServer.ROOT_LRLAT
+                + random.nextDouble() * (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT);
+            q[2] = MapServer.ROOT_ULLON
+                + random.nextDouble() * (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON);
+            q[3] = MapServer.ROOT_LRLAT
+                + random.nextDouble() * (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT);
+        }
+        return queries;
+    }
+
+    /**
+     * Routes every query twice, once to warm up, and returns the second round's latencies in
+     * milliseconds.
+     */
+    private static double[] route(GraphDB g, double[][] queries) {
+        for (double[] q : queries) {
+            Router.shortestPath(g, q[0], q[1], q[2], q[3]);
+        }
+        double[] times = new double[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            double[] q = queries[i];
+            long start = System.nanoTime();
+            Router.shortestPath(g, q[0], q[1], q[2], q[3]);
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+        return times;
+    }
+
+    private static void printLatencies(String label, double[] times) {
+        double[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double total = 0;
+        for (double t : sorted) {
+            total += t;
+        }
+        System.out.printf("%s mean %.3f, p50 %.3f, p90 %.3f, p99 %.3f%n", label,
+            total / sorted.length, percentile(sorted, 0.5), percentile(sorted, 0.9),
+            percentile(sorted, 0.99));
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
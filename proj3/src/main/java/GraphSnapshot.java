@@ -0,0 +1,263 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves a cleaned, frozen GraphDB to a binary file and loads it back, so that MapServer does
+ * not have to parse the OSM XML on every start.
+ * <p>
+ * A snapshot holds the arrays of the compact layout, the way table, the location index and the
+ * order the spatial index was built from, followed by a CRC32 of everything before it. It also
+ * records the length and modification time of the XML file it was built from. Loading maps
+ * the file into memory and reads each array with one bulk get. A snapshot of another format
+ * version, of a changed XML file, or that fails its checksum is rejected, and loadOrBuild
+ * falls back to the XML.
+ */
+public class GraphSnapshot {
+    /**
+     * "GS61" in ASCII, the first four bytes of a snapshot.
+     */
+    private static final int MAGIC = 0x47533631;
+    private static final int VERSION = 1;
+
+    /**
+     * Save a graph to a file. The snapshot is written to a temporary file next to it first
+     * and then moved into place, so a snapshot being written is never read half-finished.
+     *
+     * @param graph  The graph to save, frozen.
+     * @param source The XML file the graph was built from.
+     * @param file   The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    static void save(GraphDB graph, File source, File file) throws IOException {
+        CompactGraph c = graph.compact();
+        File tmp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new CheckedOutputStream(new FileOutputStream(tmp), crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+
+            out.writeInt(c.size());
+            out.writeInt(c.targets.length);
+            out.writeInt(c.ways.length);
+            for (long id : c.ids) {
+                out.writeLong(id);
+            }
+            for (double lon : c.lons) {
+                out.writeDouble(lon);
+            }
+            for (double lat : c.lats) {
+                out.writeDouble(lat);
+            }
+            for (int offset : c.offsets) {
+                out.writeInt(offset);
+            }
+            for (int target : c.targets) {
+                out.writeInt(target);
+            }
+            for (int way : c.edgeWays) {
+                out.writeInt(way);
+            }
+            for (GraphDB.Way way : c.ways) {
+                writeString(out, way.name);
+                out.writeInt(way.maxSpeed);
+                writeString(out, way.highway);
+            }
+
+            PrefixIndex<GraphDB.TrieNode> locations = graph.locationIndex();
+            out.writeInt(locations.size());
+            for (String key : locations.keys()) {
+                GraphDB.TrieNode node = locations.get(key);
+                writeString(out, key);
+                out.writeInt(node.names.size());
+                for (String name : node.names) {
+                    writeString(out, name);
+                }
+                out.writeInt(node.locations.size());
+                for (Map<String, Object> location : node.locations) {
+                    out.writeLong((Long) location.get("id"));
+                    out.writeDouble((Double) location.get("lat"));
+                    out.writeDouble((Double) location.get("lon"));
+                    writeString(out, (String) location.get("name"));
+                }
+            }
+
+            for (long id : graph.kdIds()) {
+                out.writeLong(id);
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a graph saved by save().
+     *
+     * @param source The XML file the graph should have been built from. If it does not exist,
+     *               the snapshot is trusted as it is.
+     * @param file   The file to read.
+     * @return The loaded graph, frozen.
+     * @throws IOException If the file cannot be read, is corrupted, was written with another
+     *                     version of the format, or was built from a different XML file.
+     */
+    static GraphDB load(File source, File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 32 || size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a graph snapshot.");
+            }
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException(file + " is not a graph snapshot of version "
+                    + VERSION + ".");
+            }
+            long sourceLength = in.getLong();
+            long sourceModified = in.getLong();
+            if (source.exists() && (sourceLength != source.length()
+                || sourceModified != source.lastModified())) {
+                throw new IOException(file + " is older than " + source + ".");
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer body = in.duplicate();
+            body.position(0);
+            body.limit((int) size - 8);
+            crc.update(body);
+            if (in.getLong((int) size - 8) != crc.getValue()) {
+                throw new IOException(file + " is corrupted.");
+            }
+            return read(in);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+            | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException(file + " is corrupted.", e);
+        }
+    }
+
+    /**
+     * Read the graph that follows the header of a snapshot.
+     */
+    private static GraphDB read(ByteBuffer in) {
+        int n = in.getInt();
+        int m = in.getInt();
+        int numWays = in.getInt();
+        long[] ids = readLongs(in, n);
+        double[] lons = readDoubles(in, n);
+        double[] lats = readDoubles(in, n);
+        int[] offsets = readInts(in, n + 1);
+        int[] targets = readInts(in, m);
+        int[] edgeWays = readInts(in, m);
+        GraphDB.Way[] ways = new GraphDB.Way[numWays];
+        for (int i = 0; i < numWays; i++) {
+            GraphDB.Way way = new GraphDB.Way();
+            way.name = readString(in);
+            way.maxSpeed = in.getInt();
+            way.highway = readString(in);
+            way.valid = true;
+            ways[i] = way;
+        }
+        CompactGraph compact = new CompactGraph(ids, lons, lats, offsets, targets, edgeWays,
+            ways);
+
+        PrefixIndex<GraphDB.TrieNode> locationIndex = new PrefixIndex<>();
+        int numKeys = in.getInt();
+        for (int k = 0; k < numKeys; k++) {
+            String key = readString(in);
+            GraphDB.TrieNode node = new GraphDB.TrieNode();
+            int numNames = in.getInt();
+            for (int i = 0; i < numNames; i++) {
+                node.names.add(readString(in));
+            }
+            int numLocations = in.getInt();
+            List<Map<String, Object>> locations = node.locations;
+            for (int i = 0; i < numLocations; i++) {
+                long id = in.getLong();
+                double lat = in.getDouble();
+                double lon = in.getDouble();
+                locations.add(GraphDB.location(id, readString(in), lat, lon));
+            }
+            locationIndex.put(key, node);
+        }
+
+        long[] kdIds = readLongs(in, n);
+        return new GraphDB(compact, locationIndex, kdIds);
+    }
+
+    /**
+     * Load the graph from a snapshot if it holds one of the XML file, otherwise parse the XML
+     * file, freeze the graph and try to save a snapshot of it for next time.
+     *
+     * @param dbPath The path of the OSM XML file.
+     * @param file   The file the snapshot is cached in.
+     * @return The frozen graph.
+     */
+    static GraphDB loadOrBuild(String dbPath, File file) {
+        File source = new File(dbPath);
+        if (file.exists()) {
+            try {
+                return load(source, file);
+            } catch (IOException e) {
+                System.out.println("Rebuilding graph snapshot: " + e.getMessage());
+            }
+        }
+        GraphDB graph = new GraphDB(dbPath);
+        graph.freeze();
+        if (source.exists()) {
+            try {
+                save(graph, source, file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return graph;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long[] readLongs(ByteBuffer in, int length) {
+        long[] result = new long[length];
+        in.asLongBuffer().get(result);
+        in.position(in.position() + 8 * length);
+        return result;
+    }
+
+    private static double[] readDoubles(ByteBuffer in, int length) {
+        double[] result = new double[length];
+        in.asDoubleBuffer().get(result);
+        in.position(in.position() + 8 * length);
+        return result;
+    }
+
+    private static int[] readInts(ByteBuffer in, int length) {
+        int[] result = new int[length];
+        in.asIntBuffer().get(result);
+        in.position(in.position() + 4 * length);
+        return result;
+    }
+}
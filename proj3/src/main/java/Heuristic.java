@@ -0,0 +1,41 @@
+/**
+ * A lower bound on the cost of the cheapest path between two vertices of a CompactGraph,
+ * used to direct A* searches. Implementations must be consistent: for every edge v-w and
+ * every target t, estimate(v, t) is at most the weight of v-w plus estimate(w, t).
+ */
+public interface Heuristic {
+    /**
+     * Returns a lower bound on the cost of the cheapest path from v to target.
+     *
+     * @param v      The index of a vertex.
+     * @param target The index of the destination vertex.
+     * @return A lower bound on the cost from v to target.
+     */
+    double estimate(int v, int target);
+
+    /**
+     * Returns the great-circle distance heuristic for distance-weighted routing.
+     *
+     * @param c The graph whose vertices are estimated.
+     * @return A heuristic giving the great-circle distance in miles between two vertices.
+     */
+    static Heuristic greatCircle(CompactGraph c) {
+        return (v, target) -> GraphDB.distance(c.lons[v], c.lats[v],
+            c.lons[target], c.lats[target]);
+    }
+
+    /**
+     * Returns the heuristic for travel-time routing: the time it would take to cover the
+     * great-circle distance at the largest speed of any way in the graph.
+     *
+     * @param c The graph whose vertices are estimated.
+     * @return A heuristic giving a lower bound on the travel time in hours between two
+     * vertices.
+     */
+    static Heuristic travelTime(CompactGraph c) {
+        /* A graph without edges has no speeds, and nothing to estimate either. */
+        double maxSpeed = Math.max(c.maxSpeed, 1);
+        return (v, target) -> GraphDB.distance(c.lons[v], c.lats[v],
+            c.lons[target], c.lats[target]) / maxSpeed;
+    }
+}
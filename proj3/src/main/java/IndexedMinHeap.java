@@ -0,0 +1,150 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of the integers 0..capacity-1 keyed by doubles, with decrease-key.
+ * Everything lives in primitive arrays that are reused between searches, so operations do
+ * not allocate.
+ * <p>
+ * This is the indexed priority queue of Section 2.4 of <i>Algorithms, 4th Edition</i>,
+ * specialised to int items and double keys.
+ */
+public class IndexedMinHeap {
+    private int[] heap = new int[0];
+    private int[] position = new int[0];
+    private double[] keys = new double[0];
+    private int size;
+
+    /**
+     * Returns the largest item this heap can hold plus one.
+     */
+    int capacity() {
+        return position.length;
+    }
+
+    /**
+     * Make room for the items 0..capacity-1 and remove every item.
+     *
+     * @param capacity The number of distinct items the heap has to hold.
+     */
+    void reset(int capacity) {
+        if (position.length < capacity) {
+            heap = new int[capacity];
+            position = new int[capacity];
+            keys = new double[capacity];
+            Arrays.fill(position, -1);
+            size = 0;
+        }
+        clear();
+    }
+
+    /**
+     * Remove every item. Takes time proportional to the number of items in the heap.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int v) {
+        return position[v] >= 0;
+    }
+
+    /**
+     * Returns the key of the smallest item. The heap must not be empty.
+     */
+    double minKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Returns the key of an item in the heap.
+     */
+    double key(int v) {
+        return keys[v];
+    }
+
+    /**
+     * Insert v with the given key, or lower its key if v is already in the heap with a larger
+     * one.
+     *
+     * @param v   The item.
+     * @param key The new key.
+     */
+    void insertOrDecrease(int v, double key) {
+        int i = position[v];
+        if (i < 0) {
+            i = size++;
+            heap[i] = v;
+            position[v] = i;
+        } else if (key >= keys[v]) {
+            return;
+        }
+        keys[v] = key;
+        swim(i);
+    }
+
+    /**
+     * Remove and return the item with the smallest key. The heap must not be empty.
+     */
+    int removeMin() {
+        int min = heap[0];
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            sink(0);
+        }
+        position[min] = -1;
+        return min;
+    }
+
+    private void swim(int i) {
+        int v = heap[i];
+        double key = keys[v];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key) {
+                break;
+            }
+            heap[i] = p;
+            position[p] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+
+    private void sink(int i) {
+        int v = heap[i];
+        double key = keys[v];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            int c = heap[child];
+            if (keys[c] >= key) {
+                break;
+            }
+            heap[i] = c;
+            position[c] = i;
+            i = child;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+}
@@ -0,0 +1,39 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * This class provides a main method for measuring how long building a GraphDB from an OSM
+ * file takes, and the peak heap it needs. Pass the path of a large extract, plain or
+ * gzipped; run with a fixed -Xmx to compare peak heaps, since the collector lets garbage
+ * pile up to whatever the heap allows.
+ */
+public class IngestionLauncher {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        GraphDB g = new GraphDB(dbPath);
+        double wallTime = (System.nanoTime() - start) / 1e6;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        int vertices = 0;
+        for (long v : g.vertices()) {
+            vertices++;
+        }
+        System.out.println("Ingested " + dbPath + ":");
+        System.out.printf("  vertices:  %10d%n", vertices);
+        System.out.printf("  wall time: %10.0f ms%n", wallTime);
+        System.out.printf("  peak heap: %10.1f MB%n", peakHeap / 1e6);
+    }
+}
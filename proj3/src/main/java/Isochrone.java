@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The vertices of a CompactGraph that can be reached from a source within a budget of
+ * distance or travel time, found by a Dijkstra search that stops as soon as the cheapest
+ * vertex left in its queue is over the budget. Like AStarRouting, the search keeps its
+ * bookkeeping in a per-thread SearchState, so a query only allocates its result.
+ */
+public class Isochrone {
+    private static final ThreadLocal<SearchState> SEARCH_STATE =
+        ThreadLocal.withInitial(SearchState::new);
+
+    private final CompactGraph graph;
+    /**
+     * The indexes of the reached vertices, cheapest first, and the cost of each.
+     */
+    final int[] vertices;
+    final double[] costs;
+
+    /**
+     * Find the vertices reachable from a source.
+     *
+     * @param graph   The graph to search.
+     * @param weights The weight of every edge of graph, indexed like graph.targets.
+     * @param source  The index of the source vertex.
+     * @param budget  The largest cost of a path to a reached vertex, in the units of weights.
+     */
+    Isochrone(CompactGraph graph, double[] weights, int source, double budget) {
+        this.graph = graph;
+        int[] reached = new int[16];
+        double[] reachedCosts = new double[16];
+        int count = 0;
+        SearchState state = SEARCH_STATE.get();
+        state.reset(graph.size());
+        state.reach(source, 0.0, source);
+        state.heap.insertOrDecrease(source, 0.0);
+        while (!state.heap.isEmpty()) {
+            int v = state.heap.removeMin();
+            double dv = state.dist(v);
+            if (dv > budget) {
+                break;
+            }
+            state.settle(v);
+            if (count == reached.length) {
+                reached = Arrays.copyOf(reached, 2 * count);
+                reachedCosts = Arrays.copyOf(reachedCosts, 2 * count);
+            }
+            reached[count] = v;
+            reachedCosts[count] = dv;
+            count++;
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                int w = graph.targets[e];
+                double d = dv + weights[e];
+                if (d <= budget && !state.settled(w) && d < state.dist(w)) {
+                    state.reach(w, d, v);
+                    state.heap.insertOrDecrease(w, d);
+                }
+            }
+        }
+        vertices = Arrays.copyOf(reached, count);
+        costs = Arrays.copyOf(reachedCosts, count);
+    }
+
+    /**
+     * Returns the convex hull of the reached vertices, as {lon, lat} points in
+     * counterclockwise order, by Andrew's monotone chain. Fewer than three reached vertices
+     * are returned as they are.
+     */
+    double[][] hull() {
+        Integer[] sorted = new Integer[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            sorted[i] = vertices[i];
+        }
+        Arrays.sort(sorted, (a, b) -> {
+            int c = Double.compare(graph.lons[a], graph.lons[b]);
+            return c != 0 ? c : Double.compare(graph.lats[a], graph.lats[b]);
+        });
+        int n = sorted.length;
+        if (n < 3) {
+            return points(sorted, n);
+        }
+        Integer[] hull = new Integer[2 * n];
+        int k = 0;
+        /* The lower hull from left to right, then the upper hull from right to left. */
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], sorted[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = sorted[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], sorted[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = sorted[i];
+        }
+        /* The last point is the first one again. */
+        return points(hull, k - 1);
+    }
+
+    /**
+     * Returns the map tiles of a depth that contain a reached vertex, as {x, y} tile
+     * coordinates in the order of the tile file names, sorted by row and then column.
+     * Vertices outside the map are left out.
+     *
+     * @param depth The depth of the tiles, 0 for the root tile.
+     */
+    int[][] cells(int depth) {
+        int tiles = 1 << depth;
+        double tileLon = (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON) / tiles;
+        double tileLat = (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT) / tiles;
+        long[] keys = new long[vertices.length];
+        int count = 0;
+        for (int v : vertices) {
+            int x = (int) Math.floor((graph.lons[v] - MapServer.ROOT_ULLON) / tileLon);
+            int y = (int) Math.floor((MapServer.ROOT_ULLAT - graph.lats[v]) / tileLat);
+            if (x >= 0 && x < tiles && y >= 0 && y < tiles) {
+                keys[count++] = (long) y << 32 | x;
+            }
+        }
+        long[] distinct = Arrays.stream(keys, 0, count).sorted().distinct().toArray();
+        int[][] cells = new int[distinct.length][];
+        for (int i = 0; i < distinct.length; i++) {
+            cells[i] = new int[]{(int) distinct[i], (int) (distinct[i] >>> 32)};
+        }
+        return cells;
+    }
+
+    /**
+     * Returns the ids of the reached vertices, cheapest first.
+     */
+    List<Long> ids() {
+        List<Long> ids = new ArrayList<>(vertices.length);
+        for (int v : vertices) {
+            ids.add(graph.ids[v]);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the cross product of the vectors o-a and o-b: positive if o, a, b turn
+     * counterclockwise.
+     */
+    private double cross(int o, int a, int b) {
+        return (graph.lons[a] - graph.lons[o]) * (graph.lats[b] - graph.lats[o])
+            - (graph.lats[a] - graph.lats[o]) * (graph.lons[b] - graph.lons[o]);
+    }
+
+    private double[][] points(Integer[] vertexList, int n) {
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            points[i] = new double[]{graph.lons[vertexList[i]], graph.lats[vertexList[i]]};
+        }
+        return points;
+    }
+}
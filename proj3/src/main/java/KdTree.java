@@ -0,0 +1,309 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A static 2-d tree over a fixed set of points, used by GraphDB to find the vertices nearest
+ * to a longitude and latitude without scanning every node.
+ * <p>
+ * The tree is stored implicitly in three parallel arrays: the root of every subrange
+ * [lo, hi) is its middle element, everything before it lies on the low side of the split
+ * and everything after it on the high side. Even levels split on longitude, odd levels on
+ * latitude. Distances are the same great-circle distances GraphDB.distance uses, and
+ * subtrees are only skipped when a lower bound on the great-circle distance to the other
+ * side of the split already exceeds the best candidate, so the answers are exact.
+ * <p>
+ * Ties between points at the same distance are broken in favor of the point that was passed
+ * to the constructor first, which is what a linear scan over the same points would return.
+ */
+public class KdTree {
+    /**
+     * Earth radius in miles, matching GraphDB.distance.
+     */
+    private static final double EARTH_RADIUS = 3963;
+    /**
+     * Relative slack on the pruning bound so rounding never hides a closer point.
+     */
+    private static final double PRUNE_SLACK = 1 + 1e-9;
+
+    private final long[] ids;
+    private final double[] lons, lats;
+    private final int[] order;
+
+    /**
+     * A point of the tree together with its distance to the current query.
+     */
+    private static class Candidate {
+        final int index;
+        final double dist;
+
+        Candidate(int index, double dist) {
+            this.index = index;
+            this.dist = dist;
+        }
+    }
+
+    /**
+     * Build a tree over the given points. The arrays are copied.
+     *
+     * @param ids  The ids of the points.
+     * @param lons The longitudes of the points.
+     * @param lats The latitudes of the points.
+     */
+    KdTree(long[] ids, double[] lons, double[] lats) {
+        int n = ids.length;
+        this.ids = ids.clone();
+        this.lons = lons.clone();
+        this.lats = lats.clone();
+        this.order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        build(0, n, 0);
+    }
+
+    /**
+     * Returns the ids of the points in the order they were given to the constructor, which
+     * decides how ties between equally distant points are broken.
+     */
+    long[] inputIds() {
+        long[] result = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            result[order[i]] = ids[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of points in the tree.
+     */
+    int size() {
+        return ids.length;
+    }
+
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, depth & 1);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    private double coordinate(int i, int axis) {
+        return axis == 0 ? lons[i] : lats[i];
+    }
+
+    /**
+     * Rearrange [lo, hi] so that position k holds the element that would be there if the range
+     * were sorted on the given axis, with smaller elements before it and larger ones after.
+     */
+    private void select(int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            double pivot = coordinate((lo + hi) >>> 1, axis);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (coordinate(i, axis) < pivot) {
+                    i++;
+                }
+                while (coordinate(j, axis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double lon = lons[i];
+        lons[i] = lons[j];
+        lons[j] = lon;
+        double lat = lats[i];
+        lats[i] = lats[j];
+        lats[j] = lat;
+        int o = order[i];
+        order[i] = order[j];
+        order[j] = o;
+    }
+
+    /**
+     * Returns true if point i at distance di should be preferred over point j at distance dj.
+     */
+    private boolean closer(int i, double di, int j, double dj) {
+        return di < dj || (di == dj && order[i] < order[j]);
+    }
+
+    /**
+     * A lower bound on the great-circle distance from (lon, lat) to any point on the other side
+     * of the split at index i. For a latitude split this is the meridional distance; for a
+     * longitude split it is the distance to the meridian through the split.
+     */
+    private double splitBound(double lon, double lat, int i, int axis) {
+        if (axis == 0) {
+            double dlambda = Math.toRadians(Math.abs(lon - lons[i]));
+            if (dlambda >= Math.PI / 2) {
+                return EARTH_RADIUS * Math.PI / 2;
+            }
+            double s = Math.sin(dlambda) * Math.cos(Math.toRadians(lat));
+            return EARTH_RADIUS * Math.asin(Math.min(1, Math.abs(s)));
+        }
+        return EARTH_RADIUS * Math.toRadians(Math.abs(lat - lats[i]));
+    }
+
+    /**
+     * Returns the id of the point closest to the given location, or 0 if the tree is empty.
+     *
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @return The id of the closest point.
+     */
+    long nearest(double lon, double lat) {
+        if (ids.length == 0) {
+            return 0;
+        }
+        Candidate best = nearest(lon, lat, 0, ids.length, 0, null);
+        return ids[best.index];
+    }
+
+    private Candidate nearest(double lon, double lat, int lo, int hi, int depth,
+                              Candidate best) {
+        if (lo >= hi) {
+            return best;
+        }
+        int mid = (lo + hi) >>> 1;
+        int axis = depth & 1;
+        double d = GraphDB.distance(lon, lat, lons[mid], lats[mid]);
+        if (best == null || closer(mid, d, best.index, best.dist)) {
+            best = new Candidate(mid, d);
+        }
+        boolean lowFirst = (axis == 0 ? lon : lat) < coordinate(mid, axis);
+        if (lowFirst) {
+            best = nearest(lon, lat, lo, mid, depth + 1, best);
+        } else {
+            best = nearest(lon, lat, mid + 1, hi, depth + 1, best);
+        }
+        if (splitBound(lon, lat, mid, axis) <= best.dist * PRUNE_SLACK) {
+            if (lowFirst) {
+                best = nearest(lon, lat, mid + 1, hi, depth + 1, best);
+            } else {
+                best = nearest(lon, lat, lo, mid, depth + 1, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the ids of the k points closest to the given location, nearest first.
+     *
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param k   The maximum number of points to return.
+     * @return Up to k ids ordered by increasing distance.
+     */
+    List<Long> nearest(double lon, double lat, int k) {
+        /* The head of the queue is the worst of the current k candidates. */
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(Math.max(1, k),
+            byDistance().reversed());
+        if (k > 0) {
+            nearest(lon, lat, 0, ids.length, 0, k, heap);
+        }
+        List<Candidate> found = new ArrayList<>(heap);
+        found.sort(byDistance());
+        return toIds(found);
+    }
+
+    private void nearest(double lon, double lat, int lo, int hi, int depth, int k,
+                         PriorityQueue<Candidate> heap) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int axis = depth & 1;
+        double d = GraphDB.distance(lon, lat, lons[mid], lats[mid]);
+        if (heap.size() < k) {
+            heap.add(new Candidate(mid, d));
+        } else if (closer(mid, d, heap.peek().index, heap.peek().dist)) {
+            heap.poll();
+            heap.add(new Candidate(mid, d));
+        }
+        boolean lowFirst = (axis == 0 ? lon : lat) < coordinate(mid, axis);
+        if (lowFirst) {
+            nearest(lon, lat, lo, mid, depth + 1, k, heap);
+        } else {
+            nearest(lon, lat, mid + 1, hi, depth + 1, k, heap);
+        }
+        if (heap.size() < k
+            || splitBound(lon, lat, mid, axis) <= heap.peek().dist * PRUNE_SLACK) {
+            if (lowFirst) {
+                nearest(lon, lat, mid + 1, hi, depth + 1, k, heap);
+            } else {
+                nearest(lon, lat, lo, mid, depth + 1, k, heap);
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of all points within the given great-circle distance of a location,
+     * nearest first.
+     *
+     * @param lon    The target longitude.
+     * @param lat    The target latitude.
+     * @param radius The distance in miles.
+     * @return The ids of all points no farther than radius, ordered by increasing distance.
+     */
+    List<Long> withinDistance(double lon, double lat, double radius) {
+        List<Candidate> found = new ArrayList<>();
+        withinDistance(lon, lat, radius, 0, ids.length, 0, found);
+        found.sort(byDistance());
+        return toIds(found);
+    }
+
+    private void withinDistance(double lon, double lat, double radius, int lo, int hi,
+                                int depth, List<Candidate> found) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int axis = depth & 1;
+        double d = GraphDB.distance(lon, lat, lons[mid], lats[mid]);
+        if (d <= radius) {
+            found.add(new Candidate(mid, d));
+        }
+        boolean lowFirst = (axis == 0 ? lon : lat) < coordinate(mid, axis);
+        boolean crosses = splitBound(lon, lat, mid, axis) <= radius * PRUNE_SLACK;
+        if (lowFirst || crosses) {
+            withinDistance(lon, lat, radius, lo, mid, depth + 1, found);
+        }
+        if (!lowFirst || crosses) {
+            withinDistance(lon, lat, radius, mid + 1, hi, depth + 1, found);
+        }
+    }
+
+    private Comparator<Candidate> byDistance() {
+        return (a, b) -> a == b ? 0 : closer(a.index, a.dist, b.index, b.dist) ? -1 : 1;
+    }
+
+    private List<Long> toIds(List<Candidate> candidates) {
+        List<Long> result = new ArrayList<>(candidates.size());
+        for (Candidate c : candidates) {
+            result.add(ids[c.index]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+
+/**
+ * The ALT heuristic (A*, landmarks and the triangle inequality). For a handful of landmark
+ * vertices the exact cost to every vertex is precomputed; then for any landmark L,
+ * |d(L, t) - d(L, v)| is a lower bound on the cost from v to t, and the heuristic takes the
+ * largest of these bounds. Every road is two-way, so one table per landmark suffices.
+ * <p>
+ * Landmarks are picked by farthest-point selection: each new landmark is the vertex whose
+ * cost to the nearest already chosen landmark is largest, which spreads them toward the
+ * edges of the map where they give the tightest bounds.
+ */
+public class Landmarks implements Heuristic {
+    final int[] landmarks;
+    private final double[][] costs;
+
+    /**
+     * Pick landmarks and precompute their cost tables.
+     *
+     * @param graph   The graph to estimate on.
+     * @param weights The weight of every edge of graph, indexed like graph.targets.
+     * @param count   The number of landmarks.
+     */
+    Landmarks(CompactGraph graph, double[] weights, int count) {
+        int n = graph.size();
+        count = Math.min(count, n);
+        landmarks = new int[count];
+        costs = new double[count][];
+        SearchState state = new SearchState();
+        if (count == 0) {
+            return;
+        }
+        /* Start from the vertex farthest from an arbitrary one. */
+        double[] nearest = costsFrom(graph, weights, 0, state);
+        for (int i = 0; i < count; i++) {
+            int landmark = 0;
+            for (int v = 1; v < n; v++) {
+                if (nearest[v] != Double.POSITIVE_INFINITY
+                    && nearest[v] > nearest[landmark]) {
+                    landmark = v;
+                }
+            }
+            landmarks[i] = landmark;
+            costs[i] = costsFrom(graph, weights, landmark, state);
+            if (i == 0) {
+                nearest = costs[0].clone();
+            } else {
+                for (int v = 0; v < n; v++) {
+                    nearest[v] = Math.min(nearest[v], costs[i][v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cost from source to every vertex, infinity for unreachable ones.
+     */
+    private static double[] costsFrom(CompactGraph graph, double[] weights, int source,
+                                      SearchState state) {
+        double[] result = new double[graph.size()];
+        Arrays.fill(result, Double.POSITIVE_INFINITY);
+        state.reset(graph.size());
+        state.reach(source, 0.0, source);
+        state.heap.insertOrDecrease(source, 0.0);
+        while (!state.heap.isEmpty()) {
+            int v = state.heap.removeMin();
+            state.settle(v);
+            double dv = state.dist(v);
+            result[v] = dv;
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                int w = graph.targets[e];
+                double d = dv + weights[e];
+                if (!state.settled(w) && d < state.dist(w)) {
+                    state.reach(w, d, v);
+                    state.heap.insertOrDecrease(w, d);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double estimate(int v, int target) {
+        double bound = 0;
+        for (double[] cost : costs) {
+            double diff = Math.abs(cost[target] - cost[v]);
+            /* Infinite costs mean v and target are not both reachable from this landmark. */
+            if (diff > bound && diff != Double.POSITIVE_INFINITY && !Double.isNaN(diff)) {
+                bound = diff;
+            }
+        }
+        return bound;
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds that many threads may record into at once,
+ * without locks.
+ * <p>
+ * Like an HDR histogram, the buckets are log-linear: every power of two is split into
+ * SUB_BUCKETS equal buckets, so a value is known to within one part in SUB_BUCKETS of itself
+ * whatever its size, from nanoseconds to minutes, in a few hundred counters. Recording a value
+ * is a few bit operations and one atomic increment.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * The largest value told apart from larger ones, about 18 minutes.
+     */
+    static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos The duration in nanoseconds. Negative ones count as 0, and ones over
+     *              MAX_VALUE as MAX_VALUE.
+     */
+    void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the bucket of a value: values below 2 * SUB_BUCKETS have one bucket each, and
+     * the values with their highest bit at position p share a bucket with the values that
+     * agree with them on bits p down to p - SUB_BUCKET_BITS.
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the smallest value of a bucket.
+     */
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     */
+    long count() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sum of the recorded durations in nanoseconds.
+     */
+    long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the largest recorded duration in nanoseconds, or 0 if there is none.
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the number of recorded durations below a bound, exactly if the bound is 0, a
+     * power of two or below 2 * SUB_BUCKETS, and otherwise rounded down to a bucket.
+     *
+     * @param nanos The bound in nanoseconds.
+     */
+    long countBelow(long nanos) {
+        long count = 0;
+        for (int i = 0; i < counts.length() && lowerBound(i + 1) <= nanos; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns a duration that a fraction of the recorded durations do not exceed: the upper
+     * bound of the bucket of the value at that rank, but no more than the largest value.
+     *
+     * @param quantile The fraction, from 0 to 1.
+     * @return The duration in nanoseconds, or 0 if nothing was recorded.
+     */
+    long quantile(double quantile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(lowerBound(i + 1) - 1, max());
+            }
+        }
+        return max();
+    }
+}
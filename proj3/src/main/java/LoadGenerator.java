@@ -0,0 +1,240 @@
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a MapServer with a TrafficTrace and reports the throughput and latency of every
+ * endpoint, for capacity planning.
+ * <pre>
+ * java LoadGenerator synthesize trace.txt [sessions] [minutes] [seed] [server]
+ * java LoadGenerator replay trace.txt [rate] [clients] [server]
+ * </pre>
+ * synthesize writes a trace of that many users arriving over that many minutes, who search
+ * for the location names of the server. replay sends the requests of a trace from clients
+ * concurrent connections, at rate requests per second, or at the times of the trace if rate
+ * is 0. Without a server URL, both start a MapServer in this JVM and use it. To record a
+ * trace of real traffic instead, start MapServer with -Dbearmaps.trace=trace.txt.
+ * <p>
+ * Replay is open loop, as users are: requests are sent at their scheduled time whether or
+ * not earlier ones have been answered, as far as the clients allow, and latencies are
+ * measured from the scheduled time, so a server that falls behind is charged for the
+ * waiting it causes rather than the load easing off.
+ */
+public class LoadGenerator {
+    private static final String EMBEDDED_SERVER = "http://localhost:4567";
+    private static final int DEFAULT_SESSIONS = 200;
+    private static final double DEFAULT_MINUTES = 5;
+    private static final long DEFAULT_SEED = 23;
+    private static final int DEFAULT_CLIENTS = 32;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final double NANOS_PER_MS = 1e6;
+
+    /**
+     * The outcome of replaying a trace.
+     */
+    static final class Report {
+        /**
+         * The latency of every endpoint, from scheduled send to the end of the response.
+         */
+        final Map<String, LatencyHistogram> latencies = new ConcurrentSkipListMap<>();
+        /**
+         * The requests of every endpoint that failed or were answered with an error status.
+         */
+        final Map<String, LongAdder> errors = new ConcurrentSkipListMap<>();
+        /**
+         * The time from the first scheduled request to the last response, in nanoseconds.
+         */
+        long elapsed;
+
+        LatencyHistogram latency(String endpoint) {
+            return latencies.computeIfAbsent(endpoint, e -> new LatencyHistogram());
+        }
+
+        LongAdder errors(String endpoint) {
+            return errors.computeIfAbsent(endpoint, e -> new LongAdder());
+        }
+
+        /**
+         * Returns the report as a table of requests, errors, throughput and latency
+         * percentiles in milliseconds per endpoint.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "%-12s %8s %7s %9s", "endpoint", "requests",
+                "errors", "req/s"));
+            for (double p : PERCENTILES) {
+                sb.append(String.format(Locale.ROOT, " %9s", "p" + trim(p) + " ms"));
+            }
+            sb.append(String.format(Locale.ROOT, " %9s%n", "max ms"));
+            for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+                row(sb, entry.getKey(), entry.getValue(), errors(entry.getKey()).sum());
+            }
+            long errorCount = 0;
+            for (LongAdder e : errors.values()) {
+                errorCount += e.sum();
+            }
+            long count = 0;
+            for (LatencyHistogram h : latencies.values()) {
+                count += h.count();
+            }
+            sb.append(String.format(Locale.ROOT, "%-12s %8d %7d %9.1f%n", "all", count,
+                errorCount, count / (elapsed / 1e9)));
+            return sb.toString();
+        }
+
+        private void row(StringBuilder sb, String endpoint, LatencyHistogram h, long errs) {
+            sb.append(String.format(Locale.ROOT, "%-12s %8d %7d %9.1f", endpoint, h.count(),
+                errs, h.count() / (elapsed / 1e9)));
+            for (double p : PERCENTILES) {
+                sb.append(String.format(Locale.ROOT, " %9.2f",
+                    h.quantile(p / 100) / NANOS_PER_MS));
+            }
+            sb.append(String.format(Locale.ROOT, " %9.2f%n", h.max() / NANOS_PER_MS));
+        }
+
+        private static String trim(double p) {
+            return p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !(args[0].equals("synthesize") || args[0].equals("replay"))) {
+            System.err.println("Usage: LoadGenerator synthesize trace.txt [sessions] [minutes]"
+                + " [seed] [server]\n       LoadGenerator replay trace.txt [rate] [clients]"
+                + " [server]");
+            System.exit(1);
+        }
+        boolean synthesize = args[0].equals("synthesize");
+        int serverArg = synthesize ? 5 : 4;
+        String server = args.length > serverArg ? args[serverArg] : startEmbeddedServer();
+        if (synthesize) {
+            int sessions = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SESSIONS;
+            double minutes = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_MINUTES;
+            long seed = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_SEED;
+            TrafficTrace trace = TrafficTrace.synthesize(locationNames(server), sessions,
+                (long) (minutes * 60 * 1000), seed);
+            trace.write(Paths.get(args[1]));
+            System.out.printf(Locale.ROOT, "Wrote %d requests over %.1f s to %s%n",
+                trace.requests.size(), trace.duration() / 1000.0, args[1]);
+        } else {
+            double rate = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+            int clients = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_CLIENTS;
+            TrafficTrace trace = TrafficTrace.read(Paths.get(args[1]));
+            System.out.printf(Locale.ROOT, "Replaying %d requests with %d clients%n",
+                trace.requests.size(), clients);
+            System.out.print(replay(server, trace, rate, clients));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Start a MapServer in this JVM, and returns its URL once it accepts requests.
+     */
+    private static String startEmbeddedServer() {
+        MapServer.main(new String[0]);
+        spark.Spark.awaitInitialization();
+        return EMBEDDED_SERVER;
+    }
+
+    /**
+     * Returns the names of all locations of a server, from a search for the empty prefix.
+     */
+    private static List<String> locationNames(String server) throws IOException {
+        HttpURLConnection connection =
+            (HttpURLConnection) new URL(server + "/search?term=").openConnection();
+        try (Reader reader = new InputStreamReader(connection.getInputStream(),
+            StandardCharsets.UTF_8)) {
+            return Arrays.asList(new Gson().fromJson(reader, String[].class));
+        }
+    }
+
+    /**
+     * Replay a trace against a server.
+     *
+     * @param server  The URL of the server, without a trailing slash.
+     * @param trace   The requests to send.
+     * @param rate    The requests to send per second, or 0 to send them at the times of the
+     *                trace.
+     * @param clients The most requests to have outstanding at once.
+     * @return The latencies and errors of the requests.
+     */
+    static Report replay(String server, TrafficTrace trace, double rate, int clients)
+        throws InterruptedException {
+        List<TrafficTrace.Request> requests = trace.requests;
+        long[] scheduled = new long[requests.size()];
+        long first = requests.isEmpty() ? 0 : requests.get(0).offset;
+        for (int i = 0; i < scheduled.length; i++) {
+            scheduled[i] = rate > 0 ? (long) (i * 1e9 / rate)
+                : (requests.get(i).offset - first) * 1_000_000L;
+        }
+        Report report = new Report();
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[clients];
+        for (int t = 0; t < clients; t++) {
+            threads[t] = new Thread(() -> {
+                byte[] buffer = new byte[1 << 16];
+                for (int i = next.getAndIncrement(); i < scheduled.length;
+                     i = next.getAndIncrement()) {
+                    long due = start + scheduled[i];
+                    for (long wait = due - System.nanoTime(); wait > 0;
+                         wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    String endpoint = requests.get(i).endpoint();
+                    if (!send(server + requests.get(i).target, buffer)) {
+                        report.errors(endpoint).increment();
+                    }
+                    report.latency(endpoint).record(System.nanoTime() - due);
+                }
+            }, "load-client-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report.elapsed = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Send a GET request and read its whole response, so that the connection is kept alive
+     * for the next request.
+     *
+     * @return Whether the server answered with a status below 400.
+     */
+    private static boolean send(String url, byte[] buffer) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+            if (in != null) {
+                try (InputStream body = in) {
+                    while (body.read(buffer) >= 0) {
+                        continue;
+                    }
+                }
+            }
+            return status < 400;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/**
+ * A set of longs in one open-addressing table, without a Long object per element. Used to
+ * remember the tens of millions of node ids a large OSM extract references.
+ */
+public class LongHashSet {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final double MAX_LOAD = 0.6;
+
+    private long[] table;
+    private int size;
+    /* EMPTY marks free slots, so it is stored on the side. */
+    private boolean containsEmpty;
+
+    LongHashSet() {
+        table = new long[16];
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * Add a value to the set.
+     *
+     * @param value The value to add.
+     * @return Whether the value was not in the set before.
+     */
+    boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsEmpty;
+            containsEmpty = true;
+            size += added ? 1 : 0;
+            return added;
+        }
+        if (size + 1 > MAX_LOAD * table.length) {
+            grow();
+        }
+        int mask = table.length - 1;
+        for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+            if (table[i] == value) {
+                return false;
+            }
+            if (table[i] == EMPTY) {
+                table[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a value is in the set.
+     */
+    boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = table.length - 1;
+        for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+            if (table[i] == value) {
+                return true;
+            }
+            if (table[i] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values in the set.
+     */
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        Arrays.fill(table, EMPTY);
+        int mask = table.length - 1;
+        for (long value : old) {
+            if (value != EMPTY) {
+                int i = hash(value) & mask;
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of OSM ids, which are often consecutive, over the whole table.
+     */
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,6 +1,5 @@
 import com.google.gson.Gson;
 
-import javax.imageio.ImageIO;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
@@ -9,9 +8,13 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -19,6 +22,7 @@ import java.util.Set;
 import static spark.Spark.before;
 import static spark.Spark.get;
 import static spark.Spark.halt;
+import static spark.Spark.post;
 import static spark.Spark.staticFileLocation;
 
 /* Maven is used to pull in these dependencies. */
@@ -44,6 +48,10 @@ public class MapServer {
      * Each tile is 256x256 pixels.
      */
     public static final int TILE_SIZE = 256;
+    /**
+     * Matrix and isochrone times are in seconds; the graph's travel times are in hours.
+     */
+    private static final double SECONDS_PER_HOUR = 3600;
     /**
      * HTTP failed response.
      */
@@ -60,11 +68,110 @@ public class MapServer {
      * The tile images are in the IMG_ROOT folder.
      */
     private static final String IMG_ROOT = "../library-sp18/data/proj3_imgs/";
+    /**
+     * The depth of the deepest tiles in IMG_ROOT.
+     */
+    private static final int IMG_MAX_DEPTH = 7;
+    /**
+     * The depth of the most detailed rasters. The tiles deeper than IMG_MAX_DEPTH are
+     * rendered from the roads of the graph when they are first asked for, and kept in the
+     * VECTOR_TILE_ROOT folder.
+     */
+    private static final int MAX_DEPTH = 10;
+    private static final String VECTOR_TILE_ROOT = "../library-sp18/data/proj3_vector_imgs/";
+    /**
+     * The most bytes the rendered tiles in VECTOR_TILE_ROOT may take.
+     */
+    private static final long VECTOR_TILE_DISK_BYTES = 256L << 20;
+    /**
+     * The most memory the decoded tiles of the tile cache may take. A decoded tile takes
+     * 256 KB, so the default holds about a thousand tiles.
+     */
+    private static final long TILE_CACHE_BYTES = 256L << 20;
+    /**
+     * The tiles of depth 0 up to this depth are loaded into the tile cache at startup.
+     */
+    private static final int TILE_WARM_UP_DEPTH = 3;
+    /**
+     * The deflate level of raster PNGs, from 0 to 9. Level 1 encodes about twice as fast as
+     * ImageIO's level 6 for files about 15% larger; level 0 sends uncompressed PNGs, which is
+     * fastest when the client runs on the same machine.
+     */
+    private static final int PNG_COMPRESSION_LEVEL = 1;
+    /**
+     * The most memory the encoded PNGs of the raster cache may take.
+     */
+    private static final long RASTER_CACHE_BYTES = 64L << 20;
+    /**
+     * The most route vertices the route store may hold for all users together, and how long
+     * a user's route is kept after its last route or raster request.
+     */
+    private static final long ROUTE_STORE_VERTICES = 1L << 22;
+    private static final long ROUTE_TIME_TO_LIVE_MS = 30L * 60 * 1000;
     /**
      * The OSM XML file path. Downloaded from <a href="http://download.bbbike.org/osm/">here</a>
      * using custom region selection.
      **/
     private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    /**
+     * Whether to freeze the graph into its compact array layout after parsing. The compact
+     * layout holds less heap and routes faster, see GraphDBLayoutLauncher.
+     */
+    private static final boolean COMPACT_GRAPH = true;
+    /**
+     * Whether to load the graph from a binary snapshot in SNAPSHOT_PATH instead of parsing
+     * OSM_DB_PATH. The snapshot is written on the first start and rewritten whenever the XML
+     * file changes or the snapshot cannot be read; see StartupLauncher for the time it saves.
+     * A graph loaded from a snapshot is always frozen.
+     */
+    private static final boolean GRAPH_SNAPSHOT = true;
+    private static final String SNAPSHOT_PATH = "../library-sp18/data/berkeley-2018.graph";
+    /**
+     * Whether to offer the "ch" routing strategy, a contraction hierarchy. The hierarchies for
+     * distance and travel time are built on the first start and cached in CH_PATH and
+     * CH_TIME_PATH.
+     */
+    private static final boolean CONTRACTION_HIERARCHY = false;
+    private static final String CH_PATH = "../library-sp18/data/berkeley-2018.ch";
+    private static final String CH_TIME_PATH = "../library-sp18/data/berkeley-2018.time.ch";
+    /**
+     * The number of landmarks of the "alt" and "bidirectional_alt" routing strategies. Each
+     * one costs a precomputed table of one double per vertex.
+     */
+    private static final int NUM_LANDMARKS = 16;
+    /**
+     * The routing strategy used when a route request does not name one.
+     */
+    private static final String DEFAULT_STRATEGY = "astar";
+    /**
+     * The edge weights used when a route request does not name any: "distance" finds the
+     * shortest route, "time" the fastest one at each way's maximum speed.
+     */
+    private static final String DEFAULT_WEIGHTING = "distance";
+    /**
+     * How a search request with a limit ranks the names when it does not name a ranking:
+     * "frequency" puts the names of the most locations first, "length" the shortest names,
+     * and "proximity" the names closest to the request's lon and lat parameters.
+     */
+    private static final String DEFAULT_RANKING = "frequency";
+    /**
+     * The most edits a search request may allow with its fuzzy parameter.
+     */
+    private static final int MAX_FUZZY_EDITS = 2;
+    /**
+     * The most cells, sources times destinations, of one distance matrix request.
+     */
+    private static final int MAX_MATRIX_CELLS = 250_000;
+    /**
+     * The depth of the tiles that an isochrone request lists when it does not name one, and
+     * the deepest it may name: the deepest tiles in IMG_ROOT.
+     */
+    private static final int ISOCHRONE_DEPTH = IMG_MAX_DEPTH;
+    /**
+     * Where to record the GET requests the server receives as a TrafficTrace, to replay with
+     * LoadGenerator; set with -Dbearmaps.trace=file. Nothing is recorded if it is not set.
+     */
+    private static final String TRACE_PATH = System.getProperty("bearmaps.trace");
     /**
      * Each raster request to the server will have the following parameters
      * as keys in the params map accessible by,
@@ -76,16 +183,59 @@ public class MapServer {
     private static final String[] REQUIRED_RASTER_REQUEST_PARAMS = {
         "ullat", "ullon", "lrlat", "lrlon", "w", "h"
     };
+    /**
+     * The binary raster endpoint takes the parameters of raster requests and answers with the
+     * PNG itself. These fields of the raster result are sent as headers named X- and the field
+     * with dashes, such as X-raster-ul-lon. Unchanged rasters keep their ETag, so a request
+     * with it in If-None-Match gets a 304 without the raster being drawn.
+     **/
+    private static final String[] RASTER_HEADER_PARAMS = {
+        "raster_ul_lon", "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth",
+        "raster_width", "raster_height", "query_success"
+    };
+    /**
+     * Tells ETags of this run of the server from those of earlier runs, whose route
+     * versions were numbered the same.
+     */
+    private static final String ETAG_RUN = Long.toHexString(System.currentTimeMillis());
     /**
      * Each route request to the server will have the following parameters
      * as keys in the params map.<br>
      * start_lat : start point latitude,<br> start_lon : start point longitude,<br>
-     * end_lat : end point latitude, <br>end_lon : end point longitude.
+     * end_lat : end point latitude, <br>end_lon : end point longitude.<br>
+     * A route request may also name one of the routing strategies with the strategy
+     * parameter: astar, bidirectional, alt, bidirectional_alt or, if enabled, ch; and the
+     * edge weights with the weighting parameter: distance or time.<br>
+     * The response carries a route_token. Raster requests with that route_token draw the
+     * route, and route requests with it replace the route, so every user has their own.
      **/
     private static final String[] REQUIRED_ROUTE_REQUEST_PARAMS = {
         "start_lat", "start_lon", "end_lat", "end_lon"
     };
 
+    /**
+     * Each distance matrix request to the server will have the following parameter.<br>
+     * sources : the points to measure from, as lon,lat pairs separated by semicolons.<br>
+     * It may also have destinations, in the same format, to measure to instead of the
+     * sources themselves, and the weighting parameter of route requests to pick the
+     * fastest rather than the shortest paths. Long requests may be sent as form POSTs.<br>
+     * The response has the points the sources and destinations snapped to as [lon, lat], and
+     * the distances in miles and durations in seconds by source, then destination, with null
+     * where there is no path.
+     **/
+    private static final String[] REQUIRED_MATRIX_REQUEST_PARAMS = {"sources"};
+
+    /**
+     * Each isochrone request to the server will have the following parameters.<br>
+     * lon : the longitude of the start point,<br> lat : the latitude of the start point,<br>
+     * and one budget: distance, the longest road distance in miles, or time, the longest
+     * travel time in seconds.<br>
+     * It may also have depth, the depth of the tiles to list. The response has the ids of the
+     * reachable vertices, their convex hull as [lon, lat] points, and the [x, y] of the tiles
+     * of that depth that contain them.
+     **/
+    private static final String[] REQUIRED_ISOCHRONE_REQUEST_PARAMS = {"lon", "lat"};
+
     /**
      * The result of rastering must be a map containing all of the
      * fields listed in the comments for getMapRaster in Rasterer.java.
@@ -96,8 +246,30 @@ public class MapServer {
     };
 
     private static Rasterer rasterer;
+    private static TileCache tileCache;
+    private static VectorTileRenderer vectorTiles;
+    private static RasterCache rasterCache;
     private static GraphDB graph;
-    private static List<Long> route = new LinkedList<>();
+    private static Map<String, Map<String, RoutingStrategy>> strategies;
+    private static RouteStore routes;
+    /**
+     * Request and stage latencies and counters, served on /metrics. The timers are defined
+     * here and the caches are added by initialize().
+     */
+    private static final Metrics metrics = new Metrics();
+    static {
+        metrics.defineTimer("request_duration", "Time to handle a request.", "endpoint");
+        metrics.defineTimer("raster_stage_duration", "Time spent in a stage of rendering a"
+            + " raster; composite includes tile_load, which is timed per tile.", "stage");
+        metrics.defineTimer("route_stage_duration", "Time spent in a stage of a route request.",
+            "stage");
+        metrics.defineCounter("rejected_requests", "Requests halted for bad parameters.",
+            "endpoint");
+        metrics.defineCounter("raster_query_failures", "Raster requests Rasterer could not"
+            + " answer.", "endpoint");
+        metrics.defineCounter("settled_nodes", "Vertices settled by route searches.",
+            "strategy");
+    }
     /* Define any static variables here. Do not define any instance variables of MapServer. */
 
 
@@ -107,8 +279,58 @@ public class MapServer {
      * This is for testing purposes, and you may fail tests otherwise.
      **/
     public static void initialize() {
-        graph = new GraphDB(OSM_DB_PATH);
-        rasterer = new Rasterer();
+        if (GRAPH_SNAPSHOT) {
+            graph = GraphSnapshot.loadOrBuild(OSM_DB_PATH, new File(SNAPSHOT_PATH));
+        } else {
+            graph = new GraphDB(OSM_DB_PATH);
+            if (COMPACT_GRAPH) {
+                graph.freeze();
+            }
+        }
+        CompactGraph compact = graph.compact();
+        strategies = new HashMap<>();
+        strategies.put("distance", routingStrategies(compact, compact.lengths,
+            Heuristic.greatCircle(compact), CH_PATH));
+        strategies.put("time", routingStrategies(compact, compact.times,
+            Heuristic.travelTime(compact), CH_TIME_PATH));
+        rasterer = new Rasterer(MAX_DEPTH);
+        /* Rendered tiles older than the map data are stale, and are deleted. */
+        vectorTiles = new VectorTileRenderer(compact, new File(VECTOR_TILE_ROOT),
+            VECTOR_TILE_DISK_BYTES, new File(OSM_DB_PATH).lastModified(),
+            Runtime.getRuntime().availableProcessors());
+        tileCache = new TileCache(IMG_ROOT, TILE_CACHE_BYTES, IMG_MAX_DEPTH, vectorTiles::get);
+        tileCache.warmUp(TILE_WARM_UP_DEPTH);
+        rasterCache = new RasterCache(RASTER_CACHE_BYTES);
+        routes = new RouteStore(ROUTE_STORE_VERTICES, ROUTE_TIME_TO_LIVE_MS,
+            System::currentTimeMillis, RasterCache.NO_ROUTE + 1, rasterCache::invalidateRoute);
+        metrics.addCache("tile", tileCache::stats);
+        metrics.addCache("vector_tile", vectorTiles::stats);
+        metrics.addCache("raster", rasterCache::stats);
+        metrics.addCache("prefix", graph::prefixCacheStats);
+        metrics.addCache("route", routes::stats);
+    }
+
+    /**
+     * Returns the routing strategies for one kind of edge weights, keyed by name.
+     *
+     * @param c         The graph to route on.
+     * @param weights   The weight of every edge of c.
+     * @param heuristic The heuristic for these weights that does not need preprocessing.
+     * @param chPath    Where to cache the contraction hierarchy for these weights.
+     * @return The strategies, keyed by their name in route requests.
+     */
+    private static Map<String, RoutingStrategy> routingStrategies(
+        CompactGraph c, double[] weights, Heuristic heuristic, String chPath) {
+        Landmarks landmarks = new Landmarks(c, weights, NUM_LANDMARKS);
+        Map<String, RoutingStrategy> result = new HashMap<>();
+        result.put("astar", new AStarRouting(c, weights, heuristic));
+        result.put("bidirectional", new BidirectionalAStarRouting(c, weights, heuristic));
+        result.put("alt", new AStarRouting(c, weights, landmarks));
+        result.put("bidirectional_alt", new BidirectionalAStarRouting(c, weights, landmarks));
+        if (CONTRACTION_HIERARCHY) {
+            result.put("ch", ContractionHierarchy.loadOrBuild(c, weights, new File(chPath)));
+        }
+        return result;
     }
 
     public static void main(String[] args) {
@@ -121,53 +343,213 @@ public class MapServer {
             response.header("Access-Control-Request-Method", "*");
             response.header("Access-Control-Allow-Headers", "*");
         });
+        if (TRACE_PATH != null) {
+            TrafficTrace.Recorder recorder;
+            try {
+                recorder = new TrafficTrace.Recorder(Paths.get(TRACE_PATH));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            before((request, response) -> {
+                if (request.requestMethod().equals("GET")
+                    && !request.pathInfo().equals("/metrics")) {
+                    recorder.record(request.pathInfo(), request.queryString());
+                }
+            });
+        }
 
         /* Define the raster endpoint for HTTP GET requests. I use anonymous functions to define
          * the request handlers. */
-        get("/raster", (req, res) -> {
+        get("/raster", timed("/raster", (req, res) -> {
             HashMap<String, Double> params =
                 getRequestParams(req, REQUIRED_RASTER_REQUEST_PARAMS);
-            /* The png image is written to the ByteArrayOutputStream */
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
             /* getMapRaster() does almost all the work for this API call */
             Map<String, Object> rasteredImgParams = rasterer.getMapRaster(params);
 
             boolean rasterSuccess = validateRasteredImgParams(rasteredImgParams);
+            if (!rasterSuccess) {
+                metrics.count("raster_query_failures", "/raster", 1);
+            }
 
             if (rasterSuccess) {
-                writeImagesToOutputStream(rasteredImgParams, os);
-                String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
+                RouteStore.Route route = routes.get(req.queryParams("route_token"));
+                RasterCache.Key key = getRasterKey(rasteredImgParams, route);
+                byte[] png = getRasterPng(rasteredImgParams, key, route);
+                long start = System.nanoTime();
+                String encodedImage = Base64.getEncoder().encodeToString(png);
+                metrics.timer("raster_stage_duration", "base64").record(System.nanoTime()
+                    - start);
                 rasteredImgParams.put("b64_encoded_image_data", encodedImage);
             }
 
             /* Encode response to Json */
             Gson gson = new Gson();
             return gson.toJson(rasteredImgParams);
-        });
+        }));
+
+        /* Define the binary raster endpoint, which sends the PNG without Base64 or JSON. */
+        get("/raster.png", timed("/raster.png", (req, res) -> {
+            HashMap<String, Double> params =
+                getRequestParams(req, REQUIRED_RASTER_REQUEST_PARAMS);
+            Map<String, Object> rasteredImgParams = rasterer.getMapRaster(params);
+            if (!validateRasteredImgParams(rasteredImgParams)) {
+                metrics.count("raster_query_failures", "/raster.png", 1);
+                res.status(204);
+                res.header("X-query-success", "false");
+                res.header("Access-Control-Expose-Headers", "X-query-success");
+                return "";
+            }
+            RouteStore.Route route = routes.get(req.queryParams("route_token"));
+            RasterCache.Key key = getRasterKey(rasteredImgParams, route);
+            List<String> exposed = new ArrayList<>();
+            for (String param : RASTER_HEADER_PARAMS) {
+                String header = "X-" + param.replace('_', '-');
+                res.header(header, String.valueOf(rasteredImgParams.get(param)));
+                exposed.add(header);
+            }
+            /* Deflated PNGs do not get any smaller, so only stored ones are gzipped. The
+             * gzipped body is other bytes than the identity one, so it gets its own ETag. */
+            String accepted = req.headers("Accept-Encoding");
+            boolean gzip = PNG_COMPRESSION_LEVEL == 0 && accepted != null
+                && accepted.contains("gzip");
+            String etag = "\"" + key.depth + "-" + key.xMin + "-" + key.yMin + "-" + key.xMax
+                + "-" + key.yMax + "-" + key.routeVersion + "-" + ETAG_RUN
+                + (gzip ? "-gz" : "") + "\"";
+            res.header("ETag", etag);
+            res.header("Cache-Control", "no-cache");
+            res.header("Vary", "Accept-Encoding");
+            res.type("image/png");
+            exposed.add("ETag");
+            res.header("Access-Control-Expose-Headers", String.join(", ", exposed));
+            if (matchesETag(req.headers("If-None-Match"), etag)) {
+                res.status(304);
+                return "";
+            }
+            byte[] png = getRasterPng(rasteredImgParams, key, route);
+            if (gzip) {
+                /* Spark gzips the body when this header is set. */
+                res.header("Content-Encoding", "gzip");
+            }
+            /* Spark writes a byte array straight to the response stream. */
+            return png;
+        }));
 
         /* Define the routing endpoint for HTTP GET requests. */
-        get("/route", (req, res) -> {
+        get("/route", timed("/route", (req, res) -> {
             HashMap<String, Double> params =
                 getRequestParams(req, REQUIRED_ROUTE_REQUEST_PARAMS);
-            route = Router.shortestPath(graph, params.get("start_lon"), params.get("start_lat"),
-                params.get("end_lon"), params.get("end_lat"));
-            String directions = getDirectionsText();
+            String weighting = req.queryParams("weighting");
+            Map<String, RoutingStrategy> weighted =
+                strategies.get(weighting == null ? DEFAULT_WEIGHTING : weighting);
+            if (weighted == null) {
+                halt(HALT_RESPONSE, "Unknown weighting.");
+            }
+            String name = req.queryParams("strategy");
+            RoutingStrategy strategy = weighted.get(name == null ? DEFAULT_STRATEGY : name);
+            if (strategy == null) {
+                halt(HALT_RESPONSE, "Unknown routing strategy.");
+            }
+            CompactGraph c = graph.compact();
+            long start = System.nanoTime();
+            int source = c.index(graph.closest(params.get("start_lon"), params.get("start_lat")));
+            int target = c.index(graph.closest(params.get("end_lon"), params.get("end_lat")));
+            long closest = System.nanoTime();
+            List<Long> route = strategy.shortestPath(source, target);
+            int settledNodes = strategy.settledCount();
+            long search = System.nanoTime();
+            String token = routes.put(req.queryParams("route_token"), route, bounds(route));
+            String directions = getDirectionsText(Router.routeDirections(graph, route));
+            long end = System.nanoTime();
+            metrics.timer("route_stage_duration", "closest").record(closest - start);
+            metrics.timer("route_stage_duration", "search").record(search - closest);
+            metrics.timer("route_stage_duration", "directions").record(end - search);
+            metrics.count("settled_nodes", name == null ? DEFAULT_STRATEGY : name, settledNodes);
             Map<String, Object> routeParams = new HashMap<>();
+            routeParams.put("route_token", token);
             routeParams.put("routing_success", !route.isEmpty());
+            routeParams.put("settled_nodes", settledNodes);
             routeParams.put("directions_success", directions.length() > 0);
             routeParams.put("directions", directions);
             Gson gson = new Gson();
             return gson.toJson(routeParams);
+        }));
+
+        /* Define the distance matrix endpoint for HTTP GET and, for many points, POST. */
+        spark.Route matrix = timed("/matrix", (req, res) -> {
+            for (String param : REQUIRED_MATRIX_REQUEST_PARAMS) {
+                if (req.queryParams(param) == null) {
+                    halt(HALT_RESPONSE, "Request failed - parameters missing.");
+                }
+            }
+            String weighting = req.queryParams("weighting");
+            weighting = weighting == null ? DEFAULT_WEIGHTING : weighting;
+            if (!strategies.containsKey(weighting)) {
+                halt(HALT_RESPONSE, "Unknown weighting.");
+            }
+            int[] sources = snapPoints(req.queryParams("sources"));
+            String destinationParam = req.queryParams("destinations");
+            int[] destinations = destinationParam == null ? sources
+                : snapPoints(destinationParam);
+            if ((long) sources.length * destinations.length > MAX_MATRIX_CELLS) {
+                halt(HALT_RESPONSE, "Too many points - at most " + MAX_MATRIX_CELLS
+                    + " sources times destinations.");
+            }
+            DistanceMatrix m = new DistanceMatrix(graph.compact(), weighting.equals("time"),
+                sources, destinations);
+            Map<String, Object> matrixParams = new LinkedHashMap<>();
+            matrixParams.put("sources", snappedPoints(sources));
+            matrixParams.put("destinations", snappedPoints(destinations));
+            matrixParams.put("distances", matrixRows(m, m.distances, 1));
+            matrixParams.put("durations", matrixRows(m, m.durations, SECONDS_PER_HOUR));
+            Gson gson = new Gson();
+            return gson.toJson(matrixParams);
         });
+        get("/matrix", matrix);
+        post("/matrix", matrix);
 
-        /* Define the API endpoint for clearing the current route. */
-        get("/clear_route", (req, res) -> {
-            clearRoute();
+        /* Define the isochrone endpoint for HTTP GET requests. */
+        get("/isochrone", timed("/isochrone", (req, res) -> {
+            HashMap<String, Double> params =
+                getRequestParams(req, REQUIRED_ISOCHRONE_REQUEST_PARAMS);
+            Set<String> reqParams = req.queryParams();
+            if (reqParams.contains("distance") == reqParams.contains("time")) {
+                halt(HALT_RESPONSE, "Provide either a distance or a time.");
+            }
+            boolean byTime = reqParams.contains("time");
+            double budget = 0;
+            int depth = ISOCHRONE_DEPTH;
+            try {
+                budget = Double.parseDouble(req.queryParams(byTime ? "time" : "distance"));
+                if (reqParams.contains("depth")) {
+                    depth = Integer.parseInt(req.queryParams("depth"));
+                }
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+            if (!(budget >= 0) || depth < 0 || depth > ISOCHRONE_DEPTH) {
+                halt(HALT_RESPONSE, "Incorrect parameters - budget or depth out of range.");
+            }
+            CompactGraph c = graph.compact();
+            int source = c.index(graph.closest(params.get("lon"), params.get("lat")));
+            Isochrone isochrone = new Isochrone(c, byTime ? c.times : c.lengths, source,
+                byTime ? budget / SECONDS_PER_HOUR : budget);
+            Map<String, Object> isochroneParams = new LinkedHashMap<>();
+            isochroneParams.put("vertices", isochrone.ids());
+            isochroneParams.put("polygon", isochrone.hull());
+            isochroneParams.put("depth", depth);
+            isochroneParams.put("cells", isochrone.cells(depth));
+            Gson gson = new Gson();
+            return gson.toJson(isochroneParams);
+        }));
+
+        /* Define the API endpoint for clearing the route of a route token. */
+        get("/clear_route", timed("/clear_route", (req, res) -> {
+            routes.remove(req.queryParams("route_token"));
             return true;
-        });
+        }));
 
         /* Define the API endpoint for search */
-        get("/search", (req, res) -> {
+        get("/search", timed("/search", (req, res) -> {
             Set<String> reqParams = req.queryParams();
             String term = req.queryParams("term");
             Gson gson = new Gson();
@@ -175,12 +557,77 @@ public class MapServer {
             if (reqParams.contains("full")) {
                 List<Map<String, Object>> data = getLocations(term);
                 return gson.toJson(data);
+            } else if (reqParams.contains("fuzzy")) {
+                /* Search for strings with a prefix close to the term. */
+                int maxEdits = 0;
+                int limit = Integer.MAX_VALUE;
+                try {
+                    maxEdits = Integer.parseInt(req.queryParams("fuzzy"));
+                    if (reqParams.contains("limit")) {
+                        limit = Integer.parseInt(req.queryParams("limit"));
+                    }
+                } catch (NumberFormatException e) {
+                    halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+                }
+                if (maxEdits < 0 || maxEdits > MAX_FUZZY_EDITS) {
+                    halt(HALT_RESPONSE, "Fuzzy searches allow 0 to " + MAX_FUZZY_EDITS
+                        + " edits.");
+                }
+                List<String> matches = graph.getLocationsByFuzzyPrefix(term, maxEdits);
+                return gson.toJson(matches.subList(0, Math.max(0,
+                    Math.min(limit, matches.size()))));
+            } else if (reqParams.contains("limit")) {
+                /* Search for the best prefix matching strings. */
+                Autocomplete.Ranking ranking = null;
+                String rank = req.queryParams("rank");
+                try {
+                    ranking = Autocomplete.Ranking.valueOf(
+                        (rank == null ? DEFAULT_RANKING : rank).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    halt(HALT_RESPONSE, "Unknown ranking.");
+                }
+                int limit = 0;
+                double lon = 0;
+                double lat = 0;
+                try {
+                    limit = Integer.parseInt(req.queryParams("limit"));
+                    if (ranking == Autocomplete.Ranking.PROXIMITY) {
+                        lon = Double.parseDouble(req.queryParams("lon"));
+                        lat = Double.parseDouble(req.queryParams("lat"));
+                    }
+                } catch (NullPointerException | NumberFormatException e) {
+                    halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+                }
+                List<String> matches = getLocationsByPrefix(term, limit, ranking, lon, lat);
+                return gson.toJson(matches);
             } else {
                 /* Search for prefix matching strings. */
                 List<String> matches = getLocationsByPrefix(term);
                 return gson.toJson(matches);
             }
-        });
+        }));
+
+        /* Define the API endpoint for the counters of the caches. */
+        get("/stats", timed("/stats", (req, res) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("tile_cache", withHitRate(tileCache.stats()));
+            stats.put("vector_tiles", withHitRate(vectorTiles.stats()));
+            stats.put("raster_cache", withHitRate(rasterCache.stats()));
+            stats.put("prefix_cache", withHitRate(graph.prefixCacheStats()));
+            stats.put("route_store", routes.stats());
+            Gson gson = new Gson();
+            return gson.toJson(stats);
+        }));
+
+        /* Define the endpoint for the metrics, in the Prometheus text format, for local
+         * scrapers only. */
+        get("/metrics", timed("/metrics", (req, res) -> {
+            if (!InetAddress.getByName(req.ip()).isLoopbackAddress()) {
+                halt(HALT_RESPONSE, "Metrics are only served locally.");
+            }
+            res.type("text/plain; version=0.0.4");
+            return metrics.prometheus();
+        }));
 
         /* Define map application redirect */
         get("/", (request, response) -> {
@@ -189,6 +636,40 @@ public class MapServer {
         });
     }
 
+    /**
+     * Returns a route that records how long each request to it takes, and counts the ones it
+     * halts.
+     *
+     * @param endpoint The path of the route, to label its metrics with.
+     * @param route    The route to time.
+     */
+    private static spark.Route timed(String endpoint, spark.Route route) {
+        LatencyHistogram latency = metrics.timer("request_duration", endpoint);
+        return (req, res) -> {
+            long start = System.nanoTime();
+            try {
+                return route.handle(req, res);
+            } catch (spark.HaltException e) {
+                metrics.count("rejected_requests", endpoint, 1);
+                throw e;
+            } finally {
+                latency.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Returns the counters of a cache with its hit rate added as "hit_rate": the fraction of
+     * requests that were hits, or 0 before the first request.
+     */
+    private static Map<String, Object> withHitRate(Map<String, Long> counters) {
+        Map<String, Object> stats = new LinkedHashMap<>(counters);
+        long requests = counters.get("hits") + counters.get("misses")
+            + counters.getOrDefault("collapsed", 0L);
+        stats.put("hit_rate", requests == 0 ? 0.0 : (double) counters.get("hits") / requests);
+        return stats;
+    }
+
     /**
      * Validate & return a parameter map of the required request parameters.
      * Requires that all input parameters are doubles.
@@ -216,32 +697,99 @@ public class MapServer {
         return params;
     }
 
+    /**
+     * Returns whether an If-None-Match header names an ETag.
+     */
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the raster cache key of the raster described by rasteredImgParams, and adds its
+     * raster_width and raster_height to rasteredImgParams.
+     * Rasters that the route does not cross are keyed independently of the route, so they
+     * are shared by all users, and changing a route only re-renders the rasters that draw it.
+     *
+     * @param route The route to draw, or null.
+     */
+    private static RasterCache.Key getRasterKey(Map<String, Object> rasteredImgParams,
+                                                RouteStore.Route route) {
+        String[][] renderGrid = (String[][]) rasteredImgParams.get("render_grid");
+        int depth = (int) rasteredImgParams.get("depth");
+        double ullon = (double) rasteredImgParams.get("raster_ul_lon");
+        double ullat = (double) rasteredImgParams.get("raster_ul_lat");
+        double lrlon = (double) rasteredImgParams.get("raster_lr_lon");
+        double lrlat = (double) rasteredImgParams.get("raster_lr_lat");
+        rasteredImgParams.put("raster_width", renderGrid[0].length * TILE_SIZE);
+        rasteredImgParams.put("raster_height", renderGrid.length * TILE_SIZE);
+
+        /* The stroke may reach into the raster from a route just outside it. */
+        double lonMargin = ROUTE_STROKE_WIDTH_PX * (lrlon - ullon) / (renderGrid[0].length
+            * TILE_SIZE);
+        double latMargin = ROUTE_STROKE_WIDTH_PX * (ullat - lrlat) / (renderGrid.length
+            * TILE_SIZE);
+        double[] b = route == null ? null : route.bounds;
+        boolean crossed = b != null
+            && b[0] <= lrlon + lonMargin && b[2] >= ullon - lonMargin
+            && b[1] <= ullat + latMargin && b[3] >= lrlat - latMargin;
+        long version = crossed ? route.version : RasterCache.NO_ROUTE;
+        double tileLon = (ROOT_LRLON - ROOT_ULLON) / (1 << depth);
+        double tileLat = (ROOT_ULLAT - ROOT_LRLAT) / (1 << depth);
+        int xMin = (int) Math.round((ullon - ROOT_ULLON) / tileLon);
+        int yMin = (int) Math.round((ROOT_ULLAT - ullat) / tileLat);
+        return new RasterCache.Key(depth, xMin, yMin,
+            xMin + renderGrid[0].length - 1, yMin + renderGrid.length - 1, version);
+    }
+
+    /**
+     * Returns the PNG of the raster described by rasteredImgParams, from the raster cache if
+     * possible.
+     *
+     * @param key   The key of the raster, from getRasterKey.
+     * @param route The route to draw if the key has a route version.
+     */
+    private static byte[] getRasterPng(Map<String, Object> rasteredImgParams,
+                                       RasterCache.Key key, RouteStore.Route route) {
+        byte[] png = rasterCache.get(key);
+        if (png == null) {
+            List<Long> drawnRoute = key.routeVersion == RasterCache.NO_ROUTE ? null
+                : route.vertices;
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            writeImagesToOutputStream(rasteredImgParams, drawnRoute, os);
+            png = os.toByteArray();
+            rasterCache.put(key, png);
+        }
+        return png;
+    }
+
     /**
      * Writes the images corresponding to rasteredImgParams to the output stream.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we have made this into provided code since it was just a bit too low level.
      */
     private static void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
+                                                  List<Long> drawnRoute,
                                                   ByteArrayOutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
-        int numVertTiles = renderGrid.length;
-        int numHorizTiles = renderGrid[0].length;
-
-        BufferedImage img = new BufferedImage(numHorizTiles * MapServer.TILE_SIZE,
-            numVertTiles * MapServer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        LatencyHistogram tileLoad = metrics.timer("raster_stage_duration", "tile_load");
+        long start = System.nanoTime();
+        BufferedImage img = RasterRenderer.composite(renderGrid, name -> {
+            long tileStart = System.nanoTime();
+            BufferedImage tile = tileCache.get(name);
+            tileLoad.record(System.nanoTime() - tileStart);
+            return tile;
+        });
+        metrics.timer("raster_stage_duration", "composite").record(System.nanoTime() - start);
         Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
-
-        for (int r = 0; r < numVertTiles; r += 1) {
-            for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += MapServer.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += MapServer.TILE_SIZE;
-                }
-            }
-        }
 
         /* If there is a route, draw it. */
         double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
@@ -251,49 +799,102 @@ public class MapServer {
 
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
-        if (route != null && !route.isEmpty()) {
+        if (drawnRoute != null && !drawnRoute.isEmpty()) {
+            start = System.nanoTime();
             Graphics2D g2d = (Graphics2D) graphic;
             g2d.setColor(MapServer.ROUTE_STROKE_COLOR);
             g2d.setStroke(new BasicStroke(MapServer.ROUTE_STROKE_WIDTH_PX,
                 BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
+            drawnRoute.stream().reduce((v, w) -> {
                 g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
                     (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
                     (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
                     (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
                 return w;
             });
+            metrics.timer("raster_stage_duration", "route").record(System.nanoTime() - start);
         }
 
-        rasteredImageParams.put("raster_width", img.getWidth());
-        rasteredImageParams.put("raster_height", img.getHeight());
-
+        start = System.nanoTime();
         try {
-            ImageIO.write(img, "png", os);
+            PngEncoder.write(img, PNG_COMPRESSION_LEVEL, os);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        metrics.timer("raster_stage_duration", "encode").record(System.nanoTime() - start);
 
     }
 
-    private static BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
-        if (tileImg == null) {
+    /**
+     * Returns the indexes of the vertices closest to a list of points.
+     *
+     * @param points Longitude,latitude pairs separated by semicolons.
+     * @return The index in the compact graph of the vertex closest to each point.
+     */
+    private static int[] snapPoints(String points) {
+        String[] pairs = points.split(";");
+        int[] vertices = new int[pairs.length];
+        CompactGraph c = graph.compact();
+        for (int i = 0; i < pairs.length; i++) {
+            String[] lonLat = pairs[i].split(",");
+            if (lonLat.length != 2) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lon,lat pairs.");
+            }
             try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
+                vertices[i] = c.index(graph.closest(Double.parseDouble(lonLat[0]),
+                    Double.parseDouble(lonLat[1])));
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
             }
         }
-        return tileImg;
+        return vertices;
     }
 
     /**
-     * Clear the current found route, if it exists.
+     * Returns the {lon, lat} of every vertex, to tell clients where their points snapped to.
      */
-    public static void clearRoute() {
-        route = new LinkedList<Long>();
+    private static double[][] snappedPoints(int[] vertices) {
+        CompactGraph c = graph.compact();
+        double[][] points = new double[vertices.length][];
+        for (int i = 0; i < vertices.length; i++) {
+            points[i] = new double[]{c.lons[vertices[i]], c.lats[vertices[i]]};
+        }
+        return points;
+    }
+
+    /**
+     * Returns the rows of a matrix of m's shape, scaled, with null where there is no path.
+     */
+    private static Double[][] matrixRows(DistanceMatrix m, double[] values, double scale) {
+        Double[][] rows = new Double[m.rows][m.columns];
+        for (int i = 0; i < m.rows; i++) {
+            for (int j = 0; j < m.columns; j++) {
+                double value = values[i * m.columns + j];
+                rows[i][j] = value == Double.POSITIVE_INFINITY ? null : value * scale;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the bounding box of the vertices of a route as {minLon, minLat, maxLon, maxLat},
+     * or null if the route is empty.
+     */
+    private static double[] bounds(List<Long> route) {
+        double[] bounds = null;
+        for (long v : route) {
+            double lon = graph.lon(v);
+            double lat = graph.lat(v);
+            if (bounds == null) {
+                bounds = new double[]{lon, lat, lon, lat};
+            } else {
+                bounds[0] = Math.min(bounds[0], lon);
+                bounds[1] = Math.min(bounds[1], lat);
+                bounds[2] = Math.max(bounds[2], lon);
+                bounds[3] = Math.max(bounds[3], lat);
+            }
+        }
+        return bounds;
     }
 
     /**
@@ -308,6 +909,24 @@ public class MapServer {
         return graph.getLocationsByPrefix(prefix);
     }
 
+    /**
+     * Collect the best names of OSM locations that prefix-match the query string.
+     *
+     * @param prefix  Prefix string to be searched for. Could be any case, with our without
+     *                punctuation.
+     * @param limit   The most names to return.
+     * @param ranking How to rank the names.
+     * @param lon     The longitude to rank by proximity to.
+     * @param lat     The latitude to rank by proximity to.
+     * @return Up to <code>limit</code> full names of locations whose cleaned name matches the
+     * cleaned <code>prefix</code>, best first.
+     */
+    static List<String> getLocationsByPrefix(String prefix, int limit,
+                                             Autocomplete.Ranking ranking, double lon,
+                                             double lat) {
+        return graph.getLocationsByPrefix(prefix, limit, ranking, lon, lat);
+    }
+
     /**
      * Collect all locations that match a cleaned <code>locationName</code>, and return
      * information about each node that matches.
@@ -348,18 +967,19 @@ public class MapServer {
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Takes the directions of a route and converts them into an HTML friendly
      * String to be passed to the frontend.
      */
-    private static String getDirectionsText() {
-        List<Router.NavigationDirection> directions = Router.routeDirections(graph, route);
+    private static String getDirectionsText(List<Router.NavigationDirection> directions) {
         if (directions == null || directions.isEmpty()) {
             return "";
         }
         StringBuilder sb = new StringBuilder();
         int step = 1;
         for (Router.NavigationDirection d : directions) {
-            sb.append(String.format("%d. %s <br>", step, d));
+            sb.append(step).append(". ");
+            d.appendTo(sb);
+            sb.append(" <br>");
             step += 1;
         }
         return sb.toString();
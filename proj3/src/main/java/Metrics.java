@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The server's request metrics, written out in the Prometheus text exposition format.
+ * <p>
+ * A metric is a family of series told apart by the value of one label, such as the endpoint
+ * of a request. Timers are LatencyHistograms and counters are LongAdders, so recording does
+ * not lock and costs a few tens of nanoseconds; a series is created the first time it is
+ * used. The counters of the caches are not copied in here but read from the caches' stats
+ * when the metrics are written.
+ */
+public class Metrics {
+    private static final String PREFIX = "bearmaps_";
+    /**
+     * Counters of the caches' stats; their other stats are gauges.
+     */
+    private static final String[] CACHE_COUNTERS = {
+        "hits", "misses", "collapsed", "evictions", "invalidations", "stored", "expired"
+    };
+    /**
+     * Histogram buckets are written at every power of two nanoseconds from 2^14, about 16
+     * microseconds, to 2^35, about 34 seconds.
+     */
+    private static final int MIN_BUCKET_POWER = 14, MAX_BUCKET_POWER = 35;
+
+    /**
+     * A metric, and its series keyed by label value.
+     */
+    private static final class Family<T> {
+        final String help;
+        final String label;
+        final Map<String, T> series = new ConcurrentSkipListMap<>();
+
+        Family(String help, String label) {
+            this.help = help;
+            this.label = label;
+        }
+    }
+
+    private final Map<String, Family<LatencyHistogram>> timers = new ConcurrentHashMap<>();
+    private final Map<String, Family<LongAdder>> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Map<String, Long>>> caches = new ConcurrentSkipListMap<>();
+
+    /**
+     * Declare a timer, written as the histogram PREFIX + name + "_seconds".
+     *
+     * @param name  The name of the timer.
+     * @param help  What it measures.
+     * @param label The name of the label that tells its series apart.
+     */
+    void defineTimer(String name, String help, String label) {
+        timers.put(name, new Family<>(help, label));
+    }
+
+    /**
+     * Declare a counter, written as PREFIX + name + "_total".
+     *
+     * @param name  The name of the counter.
+     * @param help  What it counts.
+     * @param label The name of the label that tells its series apart.
+     */
+    void defineCounter(String name, String help, String label) {
+        counters.put(name, new Family<>(help, label));
+    }
+
+    /**
+     * Returns the series of a declared timer with a label value.
+     */
+    LatencyHistogram timer(String name, String labelValue) {
+        return timers.get(name).series.computeIfAbsent(labelValue, v -> new LatencyHistogram());
+    }
+
+    /**
+     * Add to the series of a declared counter with a label value.
+     */
+    void count(String name, String labelValue, long amount) {
+        counters.get(name).series.computeIfAbsent(labelValue, v -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Write the stats of a cache with the metrics, labelled with its name.
+     *
+     * @param name  The name of the cache.
+     * @param stats Returns the current stats of the cache.
+     */
+    void addCache(String name, Supplier<Map<String, Long>> stats) {
+        caches.put(name, stats);
+    }
+
+    /**
+     * Returns all metrics in the Prometheus text exposition format, version 0.0.4.
+     */
+    String prometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Family<LatencyHistogram>> timer : sorted(timers)) {
+            String name = PREFIX + timer.getKey() + "_seconds";
+            Family<LatencyHistogram> family = timer.getValue();
+            header(sb, name, family.help, "histogram");
+            for (Map.Entry<String, LatencyHistogram> series : family.series.entrySet()) {
+                String labels = family.label + "=\"" + escape(series.getKey()) + "\"";
+                LatencyHistogram histogram = series.getValue();
+                for (int p = MIN_BUCKET_POWER; p <= MAX_BUCKET_POWER; p++) {
+                    sb.append(name).append("_bucket{").append(labels).append(",le=\"")
+                        .append(seconds(1L << p)).append("\"} ")
+                        .append(histogram.countBelow(1L << p)).append('\n');
+                }
+                long count = histogram.count();
+                sb.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ")
+                    .append(count).append('\n');
+                sb.append(name).append("_sum{").append(labels).append("} ")
+                    .append(seconds(histogram.sum())).append('\n');
+                sb.append(name).append("_count{").append(labels).append("} ")
+                    .append(count).append('\n');
+            }
+        }
+        for (Map.Entry<String, Family<LongAdder>> counter : sorted(counters)) {
+            String name = PREFIX + counter.getKey() + "_total";
+            Family<LongAdder> family = counter.getValue();
+            header(sb, name, family.help, "counter");
+            for (Map.Entry<String, LongAdder> series : family.series.entrySet()) {
+                sb.append(name).append('{').append(family.label).append("=\"")
+                    .append(escape(series.getKey())).append("\"} ")
+                    .append(series.getValue().sum()).append('\n');
+            }
+        }
+        writeCaches(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Write every stat of the caches as its own metric, with one series per cache.
+     */
+    private void writeCaches(StringBuilder sb) {
+        Map<String, Map<String, Long>> byStat = new ConcurrentSkipListMap<>();
+        for (Map.Entry<String, Supplier<Map<String, Long>>> cache : caches.entrySet()) {
+            for (Map.Entry<String, Long> stat : cache.getValue().get().entrySet()) {
+                byStat.computeIfAbsent(stat.getKey(), s -> new ConcurrentSkipListMap<>())
+                    .put(cache.getKey(), stat.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, Long>> stat : byStat.entrySet()) {
+            boolean counter = false;
+            for (String c : CACHE_COUNTERS) {
+                counter |= c.equals(stat.getKey());
+            }
+            String name = PREFIX + "cache_" + stat.getKey() + (counter ? "_total" : "");
+            header(sb, name, "The " + stat.getKey() + " of a cache.",
+                counter ? "counter" : "gauge");
+            for (Map.Entry<String, Long> cache : stat.getValue().entrySet()) {
+                sb.append(name).append("{cache=\"").append(escape(cache.getKey()))
+                    .append("\"} ").append(cache.getValue()).append('\n');
+            }
+        }
+    }
+
+    private static <T> List<Map.Entry<String, T>> sorted(Map<String, T> map) {
+        List<Map.Entry<String, T>> entries = new ArrayList<>(map.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        return entries;
+    }
+
+    private static void header(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
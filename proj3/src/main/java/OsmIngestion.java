@@ -0,0 +1,240 @@
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads an OSM XML file, plain or gzipped, into a GraphDB in two streaming passes.
+ * <p>
+ * The first pass, GraphBuildingHandler, keeps the valid ways and collects the ids of the
+ * nodes they reference. The second pass reads the nodes, and only creates a GraphDB.Node for
+ * the referenced ones; named nodes become locations whether or not they are on a road. In
+ * the second pass the XML is parsed on its own thread, which hands the nodes over in batches
+ * to the calling thread that adds them to the graph, so parsing and building the graph
+ * overlap. If the first pass found all nodes before the ways, as OSM exports are sorted, the
+ * second pass stops at the first way. Finally the calling thread connects the nodes of every
+ * valid way.
+ */
+public class OsmIngestion {
+    private static final int BATCH_SIZE = 4096;
+    private static final int QUEUE_BATCHES = 16;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Nodes parsed in the second pass, with the name of each named node.
+     */
+    private static class NodeBatch {
+        final long[] ids = new long[BATCH_SIZE];
+        final double[] lats = new double[BATCH_SIZE];
+        final double[] lons = new double[BATCH_SIZE];
+        final String[] names = new String[BATCH_SIZE];
+        int size;
+    }
+
+    /**
+     * Marks the end of the second pass.
+     */
+    private static final NodeBatch END = new NodeBatch();
+
+    /**
+     * Read an OSM file into a graph.
+     *
+     * @param dbPath The path of the OSM XML file. It may be gzipped.
+     * @param g      The graph to add the roads and locations to.
+     * @throws ParserConfigurationException If no SAX parser is available.
+     * @throws SAXException                 If the file is not well-formed XML.
+     * @throws IOException                  If the file cannot be read.
+     */
+    static void read(String dbPath, GraphDB g)
+        throws ParserConfigurationException, SAXException, IOException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        GraphBuildingHandler ways = new GraphBuildingHandler();
+        try (InputStream in = open(dbPath)) {
+            factory.newSAXParser().parse(in, ways);
+        }
+        readNodes(dbPath, factory.newSAXParser(), ways.referenced(), ways.nodesFirst(), g);
+
+        List<GraphDB.Way> validWays = ways.ways();
+        List<long[]> wayNodes = ways.wayNodes();
+        for (int w = 0; w < validWays.size(); w++) {
+            GraphDB.Way way = validWays.get(w);
+            long[] nodes = wayNodes.get(w);
+            for (int i = 0; i + 1 < nodes.length; i++) {
+                GraphDB.Node curNode = g.getNode(nodes[i]);
+                GraphDB.Node nextNode = g.getNode(nodes[i + 1]);
+                /* Skip references to nodes missing from the file, as in clipped extracts. */
+                if (curNode != null && nextNode != null) {
+                    curNode.edges.put(nextNode.id, way);
+                    nextNode.edges.put(curNode.id, way);
+                }
+            }
+        }
+    }
+
+    /**
+     * The second pass: parse the nodes on another thread and add them to the graph on this
+     * one.
+     */
+    private static void readNodes(String dbPath, SAXParser parser, LongHashSet referenced,
+                                  boolean nodesFirst, GraphDB g)
+        throws SAXException, IOException {
+        BlockingQueue<NodeBatch> batches = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        Exception[] failure = new Exception[1];
+        Thread reader = new Thread(() -> {
+            try (InputStream in = open(dbPath)) {
+                parser.parse(in, new NodeHandler(batches, nodesFirst));
+            } catch (NodesDone e) {
+                /* All nodes have been read. */
+            } catch (SAXException | IOException | RuntimeException e) {
+                failure[0] = e;
+            } finally {
+                putUninterruptibly(batches, END);
+            }
+        }, "osm-node-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            for (NodeBatch batch = batches.take(); batch != END; batch = batches.take()) {
+                for (int i = 0; i < batch.size; i++) {
+                    long id = batch.ids[i];
+                    if (referenced.contains(id)) {
+                        g.addNode(new GraphDB.Node(id, batch.lats[i], batch.lons[i]));
+                    }
+                    if (batch.names[i] != null) {
+                        g.addLocation(id, batch.names[i], batch.lats[i], batch.lons[i]);
+                    }
+                }
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            reader.interrupt();
+            /* Make room for the reader to put END and finish. */
+            batches.clear();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + dbPath + ".");
+        }
+        if (failure[0] instanceof SAXException) {
+            throw (SAXException) failure[0];
+        } else if (failure[0] != null) {
+            throw new IOException("Reading the nodes of " + dbPath + " failed.", failure[0]);
+        }
+    }
+
+    /**
+     * Opens a file for reading, decompressing it if it starts with the gzip magic number.
+     *
+     * @param path The path of the file.
+     * @return A buffered stream of the, possibly decompressed, contents of the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    static InputStream open(String path) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE);
+        in.mark(2);
+        int b0 = in.read();
+        int b1 = in.read();
+        in.reset();
+        if (b0 == 0x1f && b1 == 0x8b) {
+            return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    private static void putUninterruptibly(BlockingQueue<NodeBatch> queue, NodeBatch batch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(batch);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Thrown out of the parser when the reader thread is interrupted.
+     */
+    private static class InterruptedParse extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Thrown out of the parser at the first way of a file whose nodes all come first.
+     */
+    private static class NodesDone extends SAXException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * The handler of the second pass. It hands every node, with its name if it has one, to
+     * the queue in batches, and ignores ways and relations, or stops at the first of them.
+     */
+    private static class NodeHandler extends DefaultHandler {
+        private final BlockingQueue<NodeBatch> batches;
+        private final boolean nodesFirst;
+        private NodeBatch batch = new NodeBatch();
+        private boolean inNode;
+
+        NodeHandler(BlockingQueue<NodeBatch> batches, boolean nodesFirst) {
+            this.batches = batches;
+            this.nodesFirst = nodesFirst;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                                 Attributes attributes) throws SAXException {
+            if (nodesFirst && (qName.equals("way") || qName.equals("relation"))) {
+                flush();
+                throw new NodesDone();
+            } else if (qName.equals("node")) {
+                inNode = true;
+                int i = batch.size++;
+                batch.ids[i] = Long.parseLong(attributes.getValue("id"));
+                batch.lats[i] = Double.parseDouble(attributes.getValue("lat"));
+                batch.lons[i] = Double.parseDouble(attributes.getValue("lon"));
+            } else if (inNode && qName.equals("tag") && attributes.getValue("k").equals("name")) {
+                batch.names[batch.size - 1] = attributes.getValue("v");
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (qName.equals("node")) {
+                inNode = false;
+                if (batch.size == BATCH_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void endDocument() {
+            flush();
+        }
+
+        private void flush() {
+            try {
+                batches.put(batch);
+            } catch (InterruptedException e) {
+                throw new InterruptedParse();
+            }
+            batch = new NodeBatch();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A minimal PNG encoder for the opaque rasters MapServer sends, with a configurable deflate
+ * level.
+ * <p>
+ * ImageIO's PNG writer always deflates at about level 6, which makes encoding the most
+ * expensive step of a raster. This encoder writes 8-bit RGB rows straight from the int pixels
+ * of a TYPE_INT_RGB image, unfiltered like ImageIO writes them (row filters made the tiles
+ * compress worse, not better), at the given deflate level. Level 6 matches ImageIO, level 1
+ * is about twice as fast for files about 15% larger, and level 0 writes an uncompressed PNG,
+ * the fastest option for clients on the same machine.
+ */
+public class PngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int FILTER_NONE = 0;
+
+    /**
+     * Write an image as a PNG.
+     *
+     * @param image The image, of TYPE_INT_RGB.
+     * @param level The deflate level, from 0 (no compression) to 9 (best compression).
+     * @param out   The stream to write to.
+     * @throws IOException If writing to out fails.
+     */
+    static void write(BufferedImage image, int level, OutputStream out) throws IOException {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("Only TYPE_INT_RGB images are supported.");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8);  // bit depth
+        headerData.writeByte(2);  // color type: RGB
+        headerData.writeByte(0);  // compression method: deflate
+        headerData.writeByte(0);  // filter method: adaptive
+        headerData.writeByte(0);  // no interlace
+        writeChunk(data, "IHDR", header.toByteArray(), header.size());
+
+        Buffer compressed = new Buffer(
+            level == 0 ? height * (3 * width + 1) + 1024 : width * height);
+        Deflater deflater = new Deflater(level);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, deflater,
+            1 << 16)) {
+            byte[] row = new byte[3 * width + 1];
+            row[0] = FILTER_NONE;
+            int offset = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int rgb = pixels[offset + x];
+                    row[3 * x + 1] = (byte) (rgb >>> 16);
+                    row[3 * x + 2] = (byte) (rgb >>> 8);
+                    row[3 * x + 3] = (byte) rgb;
+                }
+                deflate.write(row);
+                offset += width;
+            }
+        } finally {
+            deflater.end();
+        }
+        writeChunk(data, "IDAT", compressed.array(), compressed.size());
+        writeChunk(data, "IEND", new byte[0], 0);
+        data.flush();
+    }
+
+    /**
+     * A ByteArrayOutputStream whose contents can be read without copying them.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] body, int length)
+        throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(body, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(body, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of autocomplete results, keyed by cleaned prefix, safe to use from all of
+ * the server's request threads.
+ * <p>
+ * Each entry weighs one plus the number of names in its list. When the entries would weigh
+ * more than the budget, the least recently used ones are evicted, so a client that searches
+ * for every possible prefix cannot grow the cache without limit. Results are computed outside
+ * the lock; when several threads miss the same prefix at once, the first one computes it and
+ * the others wait for its result instead of computing it again.
+ */
+public class PrefixCache {
+    private final long maxWeight;
+    private final Function<String, List<String>> loader;
+    private final LinkedHashMap<String, List<String>> results =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<List<String>>> loading = new HashMap<>();
+    private long weight;
+    private long hits, misses, collapsed, evictions;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param maxWeight The largest total weight of the entries.
+     * @param loader    Computes the result of a prefix on a miss. Called from several threads
+     *                  at once, but never twice at once for the same prefix.
+     */
+    PrefixCache(long maxWeight, Function<String, List<String>> loader) {
+        this.maxWeight = maxWeight;
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the result of a prefix, computing it on a miss.
+     *
+     * @param prefix The cleaned prefix.
+     * @return The unmodifiable result of the prefix.
+     */
+    List<String> get(String prefix) {
+        CompletableFuture<List<String>> pending;
+        synchronized (this) {
+            List<String> result = results.get(prefix);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+            pending = loading.get(prefix);
+            if (pending != null) {
+                collapsed++;
+            } else {
+                misses++;
+                loading.put(prefix, new CompletableFuture<>());
+            }
+        }
+        if (pending != null) {
+            return await(pending);
+        }
+
+        CompletableFuture<List<String>> future;
+        List<String> result;
+        try {
+            result = Collections.unmodifiableList(loader.apply(prefix));
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                future = loading.remove(prefix);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            future = loading.remove(prefix);
+            put(prefix, result);
+        }
+        future.complete(result);
+        return result;
+    }
+
+    private static List<String> await(CompletableFuture<List<String>> pending) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return pending.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void put(String prefix, List<String> result) {
+        List<String> old = results.put(prefix, result);
+        if (old != null) {
+            weight -= weightOf(old);
+        }
+        weight += weightOf(result);
+        Iterator<List<String>> lru = results.values().iterator();
+        while (weight > maxWeight && lru.hasNext()) {
+            List<String> evicted = lru.next();
+            lru.remove();
+            weight -= weightOf(evicted);
+            evictions++;
+        }
+    }
+
+    private static long weightOf(List<String> result) {
+        return 1 + result.size();
+    }
+
+    /**
+     * Returns the counters of this cache: "entries", "weight", "hits", "misses", "collapsed"
+     * (misses that waited for another thread computing the same prefix) and "evictions".
+     */
+    synchronized Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("entries", (long) results.size());
+        stats.put("weight", weight);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("collapsed", collapsed);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+}
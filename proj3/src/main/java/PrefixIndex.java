@@ -0,0 +1,306 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A string symbol table for prefix queries, replacing TrieST for the location names.
+ * <p>
+ * While it is being built, the index is a hash map. freeze() turns it into one sorted array:
+ * the UTF-8 bytes of all keys back to back, the offset of each key in them, and the values in
+ * the same order. A lookup is a binary search, and the keys with a prefix are the run of keys
+ * that starts at the prefix's insertion point. Sorted by unsigned bytes, UTF-8 keys are in the
+ * same order TrieST returns them in. Where TrieST allocates an array of 256 references for
+ * every character of every key, the frozen index takes the key's bytes and two references.
+ * <p>
+ * A frozen index cannot be modified and is safe to query from any number of threads without
+ * locking. An index that is not frozen must not be shared between threads.
+ *
+ * @param <V> The type of the values.
+ */
+public class PrefixIndex<V> {
+    private Map<String, V> building = new HashMap<>();
+    private volatile Frozen frozen;
+
+    /**
+     * The frozen index. All of its arrays are final and never written after construction.
+     */
+    private static final class Frozen {
+        final byte[] bytes;
+        /* Key i is bytes[offsets[i]] up to bytes[offsets[i + 1]]. */
+        final int[] offsets;
+        final Object[] values;
+
+        Frozen(Map<String, ?> map) {
+            int n = map.size();
+            byte[][] keys = new byte[n][];
+            Object[] unsorted = new Object[n];
+            Integer[] order = new Integer[n];
+            int total = 0;
+            int k = 0;
+            for (Map.Entry<String, ?> entry : map.entrySet()) {
+                keys[k] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                unsorted[k] = entry.getValue();
+                order[k] = k;
+                total += keys[k].length;
+                k++;
+            }
+            Arrays.sort(order, (a, b) -> compareUnsigned(keys[a], keys[b]));
+            bytes = new byte[total];
+            offsets = new int[n + 1];
+            values = new Object[n];
+            for (int i = 0; i < n; i++) {
+                byte[] key = keys[order[i]];
+                System.arraycopy(key, 0, bytes, offsets[i], key.length);
+                offsets[i + 1] = offsets[i] + key.length;
+                values[i] = unsorted[order[i]];
+            }
+        }
+
+        int size() {
+            return values.length;
+        }
+
+        String key(int i) {
+            return new String(bytes, offsets[i], offsets[i + 1] - offsets[i],
+                StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns the index of the first key not smaller than a key, which is the first key
+         * with the given prefix if there is one.
+         */
+        int lowerBound(byte[] key) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(mid, key, key.length) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Compares the first length bytes of key i with the first length bytes of a key, or
+         * all of key i if it is shorter.
+         */
+        int compare(int i, byte[] key, int length) {
+            int start = offsets[i];
+            int keyLength = offsets[i + 1] - start;
+            int n = Math.min(keyLength, length);
+            for (int j = 0; j < n; j++) {
+                int c = (bytes[start + j] & 0xFF) - (key[j] & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return n - length;
+        }
+
+        /**
+         * Returns the index of the first key after all keys with a prefix.
+         */
+        int upperBound(byte[] prefix) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(mid, prefix, prefix.length) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        boolean hasPrefix(int i, byte[] prefix) {
+            return i < size() && offsets[i + 1] - offsets[i] >= prefix.length
+                && compare(i, prefix, prefix.length) == 0;
+        }
+    }
+
+    /**
+     * Associate a value with a key, replacing any value it had.
+     *
+     * @param key   The key.
+     * @param value The value, not null.
+     * @throws IllegalStateException If the index is frozen.
+     */
+    void put(String key, V value) {
+        if (frozen != null) {
+            throw new IllegalStateException("The index is frozen.");
+        }
+        building.put(key, value);
+    }
+
+    /**
+     * Returns the value of a key, or null if the key is not in the index.
+     */
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        Frozen f = frozen;
+        if (f == null) {
+            return building.get(key);
+        }
+        byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+        int i = f.lowerBound(encoded);
+        if (i < f.size() && f.offsets[i + 1] - f.offsets[i] == encoded.length
+            && f.compare(i, encoded, encoded.length) == 0) {
+            return (V) f.values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of keys in the index.
+     */
+    int size() {
+        Frozen f = frozen;
+        return f == null ? building.size() : f.size();
+    }
+
+    /**
+     * Returns all keys in sorted order.
+     */
+    List<String> keys() {
+        return keysWithPrefix("");
+    }
+
+    /**
+     * Returns the keys that start with a prefix, in sorted order.
+     *
+     * @param prefix The prefix.
+     * @return The keys with the prefix, sorted like TrieST sorts them.
+     */
+    List<String> keysWithPrefix(String prefix) {
+        Frozen f = frozenOrSnapshot();
+        byte[] encoded = prefix.getBytes(StandardCharsets.UTF_8);
+        List<String> result = new ArrayList<>();
+        for (int i = f.lowerBound(encoded); f.hasPrefix(i, encoded); i++) {
+            result.add(f.key(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of the keys that start with a prefix, in the sorted order of their
+     * keys.
+     *
+     * @param prefix The prefix.
+     * @return The values of the keys with the prefix.
+     */
+    @SuppressWarnings("unchecked")
+    List<V> valuesWithPrefix(String prefix) {
+        Frozen f = frozenOrSnapshot();
+        byte[] encoded = prefix.getBytes(StandardCharsets.UTF_8);
+        List<V> result = new ArrayList<>();
+        for (int i = f.lowerBound(encoded); f.hasPrefix(i, encoded); i++) {
+            result.add((V) f.values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position of the first key with a prefix in the sorted keys of a frozen
+     * index. The keys with the prefix are those from prefixStart up to prefixEnd.
+     *
+     * @throws IllegalStateException If the index is not frozen.
+     */
+    int prefixStart(String prefix) {
+        return frozenOrThrow().lowerBound(prefix.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the position after the last key with a prefix in the sorted keys of a frozen
+     * index.
+     *
+     * @throws IllegalStateException If the index is not frozen.
+     */
+    int prefixEnd(String prefix) {
+        return frozenOrThrow().upperBound(prefix.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the key at a position in the sorted keys of a frozen index.
+     *
+     * @throws IllegalStateException If the index is not frozen.
+     */
+    String key(int i) {
+        return frozenOrThrow().key(i);
+    }
+
+    /**
+     * Returns the value of the key at a position in the sorted keys of a frozen index.
+     *
+     * @throws IllegalStateException If the index is not frozen.
+     */
+    @SuppressWarnings("unchecked")
+    V value(int i) {
+        return (V) frozenOrThrow().values[i];
+    }
+
+    /**
+     * Freeze the index into its sorted array layout. Afterwards it can no longer be modified,
+     * and can be shared between threads. Freezing a frozen index does nothing.
+     */
+    void freeze() {
+        if (frozen == null) {
+            frozen = new Frozen(building);
+            building = null;
+        }
+    }
+
+    /**
+     * Returns whether the index is frozen.
+     */
+    boolean isFrozen() {
+        return frozen != null;
+    }
+
+    /**
+     * Returns the number of bytes the frozen layout takes beyond its values: the key bytes,
+     * the offsets and the value references, counting 4 bytes per reference and 16 bytes per
+     * array header.
+     *
+     * @throws IllegalStateException If the index is not frozen.
+     */
+    long frozenBytes() {
+        Frozen f = frozenOrThrow();
+        return 3 * 16 + f.bytes.length + 4L * f.offsets.length + 4L * f.values.length;
+    }
+
+    private Frozen frozenOrThrow() {
+        Frozen f = frozen;
+        if (f == null) {
+            throw new IllegalStateException("The index is not frozen.");
+        }
+        return f;
+    }
+
+    /**
+     * Returns the frozen layout, or one built from the keys so far if the index is not
+     * frozen yet.
+     */
+    private Frozen frozenOrSnapshot() {
+        Frozen f = frozen;
+        return f != null ? f : new Frozen(building);
+    }
+
+    private static int compareUnsigned(byte[] x, byte[] y) {
+        int n = Math.min(x.length, y.length);
+        for (int i = 0; i < n; i++) {
+            int c = (x[i] & 0xFF) - (y[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return x.length - y.length;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class provides a main method for comparing the location index with the TrieST it
+ * replaced. Both are filled with the cleaned location names of the graph, all mapped to one
+ * shared value, so the heap each holds is the cost of the index itself. It prints that heap
+ * per key, and the latency of listing the keys with every one- and two-letter prefix.
+ */
+public class PrefixIndexLauncher {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        GraphDB g = new GraphDB(dbPath);
+        List<String> keys = g.locationIndex().keys();
+        Object value = new Object();
+
+        long baseline = usedHeap();
+        TrieST<Object> trie = new TrieST<>();
+        for (String key : keys) {
+            trie.put(key, value);
+        }
+        long trieHeap = usedHeap() - baseline;
+
+        baseline = usedHeap();
+        PrefixIndex<Object> index = new PrefixIndex<>();
+        for (String key : keys) {
+            index.put(key, value);
+        }
+        index.freeze();
+        long indexHeap = usedHeap() - baseline;
+
+        List<String> prefixes = new ArrayList<>();
+        for (char a = 'a'; a <= 'z'; a++) {
+            prefixes.add(String.valueOf(a));
+            for (char b = 'a'; b <= 'z'; b++) {
+                prefixes.add("" + a + b);
+            }
+        }
+        for (String prefix : prefixes) {
+            List<String> expected = new ArrayList<>();
+            trie.keysWithPrefix(prefix).forEach(expected::add);
+            if (!expected.equals(index.keysWithPrefix(prefix))) {
+                throw new AssertionError("Different keys with prefix " + prefix);
+            }
+        }
+
+        System.out.println(g.locationIndex().size() + " keys:");
+        System.out.printf("  TrieST:      %10.1f bytes per key%n", (double) trieHeap / keys.size());
+        System.out.printf("  PrefixIndex: %10.1f bytes per key (%.1f by frozenBytes)%n",
+            (double) indexHeap / keys.size(), (double) index.frozenBytes() / keys.size());
+        System.out.println("Keys with each of " + prefixes.size() + " prefixes (ms per round):");
+        System.out.printf("  TrieST:      %10.3f%n", time(() -> {
+            for (String prefix : prefixes) {
+                trie.keysWithPrefix(prefix);
+            }
+        }));
+        System.out.printf("  PrefixIndex: %10.3f%n", time(() -> {
+            for (String prefix : prefixes) {
+                index.keysWithPrefix(prefix);
+            }
+        }));
+    }
+
+    /**
+     * Runs a task ROUNDS times to warm up, then returns its mean time over ROUNDS more.
+     */
+    private static double time(Runnable task) {
+        for (int i = 0; i < ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / ROUNDS;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
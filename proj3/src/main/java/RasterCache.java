@@ -0,0 +1,140 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded in-memory cache of rendered rasters: the encoded PNG of a grid of tiles, with the
+ * route drawn on it if it crosses the grid. When the PNGs would take more than the byte
+ * budget, the least recently used ones are evicted. All methods are synchronized, so the
+ * cache may be shared between threads.
+ */
+public class RasterCache {
+    /**
+     * The route version of rasters that do not draw any route.
+     */
+    static final long NO_ROUTE = 0;
+
+    /**
+     * Identifies a raster: the depth and the range of tile columns and rows of its grid, and
+     * the version of the route drawn on it, or NO_ROUTE.
+     */
+    static final class Key {
+        final int depth, xMin, yMin, xMax, yMax;
+        final long routeVersion;
+
+        Key(int depth, int xMin, int yMin, int xMax, int yMax, long routeVersion) {
+            this.depth = depth;
+            this.xMin = xMin;
+            this.yMin = yMin;
+            this.xMax = xMax;
+            this.yMax = yMax;
+            this.routeVersion = routeVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return depth == k.depth && xMin == k.xMin && yMin == k.yMin && xMax == k.xMax
+                && yMax == k.yMax && routeVersion == k.routeVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(depth, xMin, yMin, xMax, yMax, routeVersion);
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> rasters = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits, misses, evictions, invalidations;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param maxBytes The largest number of bytes the cached PNGs may take.
+     */
+    RasterCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the PNG of a raster, or null if it is not cached.
+     *
+     * @param key The raster.
+     * @return The encoded PNG, which must not be modified, or null.
+     */
+    synchronized byte[] get(Key key) {
+        byte[] png = rasters.get(key);
+        if (png == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return png;
+    }
+
+    /**
+     * Cache the PNG of a raster, evicting the least recently used ones if needed. PNGs larger
+     * than the whole budget are not cached.
+     *
+     * @param key The raster.
+     * @param png The encoded PNG, which must not be modified afterwards.
+     */
+    synchronized void put(Key key, byte[] png) {
+        if (png.length > maxBytes) {
+            return;
+        }
+        byte[] old = rasters.put(key, png);
+        if (old != null) {
+            bytes -= old.length;
+        }
+        bytes += png.length;
+        Iterator<byte[]> lru = rasters.values().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            bytes -= lru.next().length;
+            lru.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Remove every raster that draws the given version of the route. Rasters without a route
+     * stay cached.
+     *
+     * @param routeVersion The version of a route that is no longer current.
+     */
+    synchronized void invalidateRoute(long routeVersion) {
+        Iterator<Map.Entry<Key, byte[]>> it = rasters.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, byte[]> entry = it.next();
+            if (entry.getKey().routeVersion == routeVersion) {
+                bytes -= entry.getValue().length;
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Returns the counters of this cache: "rasters", "bytes", "hits", "misses", "evictions"
+     * and "invalidations".
+     */
+    synchronized Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("rasters", (long) rasters.size());
+        stats.put("bytes", bytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations);
+        return stats;
+    }
+}
@@ -0,0 +1,49 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Composites the tiles of a render grid into one raster image.
+ * <p>
+ * Every tile covers its own rectangle of the raster, so the tiles are fetched and copied in
+ * parallel, one task per tile. Tiles are copied row by row from their int pixels straight
+ * into the int pixels of the raster, instead of through Graphics.drawImage, so this only
+ * works for TYPE_INT_RGB tiles, which is what TileCache returns.
+ */
+public class RasterRenderer {
+    /**
+     * Returns the raster of a render grid, a TYPE_INT_RGB image of TILE_SIZE by TILE_SIZE
+     * pixels per tile. Tiles that cannot be found are left black.
+     *
+     * @param renderGrid The file names of the tiles, by row and column.
+     * @param tiles      Returns the TYPE_INT_RGB tile with a file name, or null. Called from
+     *                   several threads at once.
+     * @return The raster.
+     */
+    static BufferedImage composite(String[][] renderGrid, Function<String, BufferedImage> tiles) {
+        int rows = renderGrid.length;
+        int columns = renderGrid[0].length;
+        int width = columns * MapServer.TILE_SIZE;
+        BufferedImage img = new BufferedImage(width, rows * MapServer.TILE_SIZE,
+            BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        IntStream.range(0, rows * columns).parallel().forEach(i -> {
+            int r = i / columns;
+            int c = i % columns;
+            BufferedImage tile = tiles.apply(renderGrid[r][c]);
+            if (tile == null) {
+                return;
+            }
+            int[] tilePixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+            int tileWidth = Math.min(tile.getWidth(), MapServer.TILE_SIZE);
+            int tileHeight = Math.min(tile.getHeight(), MapServer.TILE_SIZE);
+            int offset = r * MapServer.TILE_SIZE * width + c * MapServer.TILE_SIZE;
+            for (int y = 0; y < tileHeight; y++) {
+                System.arraycopy(tilePixels, y * tile.getWidth(), pixels, offset + y * width,
+                    tileWidth);
+            }
+        });
+        return img;
+    }
+}
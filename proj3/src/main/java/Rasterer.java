@@ -6,19 +6,42 @@ import java.util.Map;
  * a query result. The getMapRaster method must return a Map containing all
  * seven of the required fields, otherwise the front end code will probably
  * not draw the output correctly.
+ * <p>
+ * A Rasterer holds no per-query state: everything a query computes lives in a request-scoped
+ * Query and in the fresh result map, so one instance can serve concurrent requests.
  */
 public class Rasterer {
     private final int maxDepth;
     private final double baseLonDPP;
     private final double[] pictureLonDPP, pictureLons, pictureLats;
-    private double ullon, ullat, lrlon, lrlat, w, h;
-    private String[][] renderGrid;
-    private double rasterUlLon, rasterUlLat, rasterLrLon, rasterLrLat;
-    private int depth, maxPic;
-    private boolean querySuccess;
+
+    /**
+     * A validated query box, bounded to the map, and the depth of the tiles that cover it.
+     */
+    private static final class Query {
+        final double ullon, ullat, lrlon, lrlat;
+        final int depth;
+
+        Query(double ullon, double ullat, double lrlon, double lrlat, int depth) {
+            this.ullon = ullon;
+            this.ullat = ullat;
+            this.lrlon = lrlon;
+            this.lrlat = lrlat;
+            this.depth = depth;
+        }
+    }
 
     public Rasterer() {
-        maxDepth = 7;
+        this(7);
+    }
+
+    /**
+     * Create a Rasterer that uses tiles of depth 0 up to maxDepth.
+     *
+     * @param maxDepth The depth of the deepest tiles, and so of the most detailed rasters.
+     */
+    public Rasterer(int maxDepth) {
+        this.maxDepth = maxDepth;
         double baseLon = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
         double baseLat = MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT;
         baseLonDPP = baseLon / MapServer.TILE_SIZE;
@@ -35,71 +58,74 @@ public class Rasterer {
         }
     }
 
-    private void handleParams(Map<String, Double> params) {
-        ullon = params.get("ullon");
-        ullat = params.get("ullat");
-        lrlon = params.get("lrlon");
-        lrlat = params.get("lrlat");
-        w = params.get("w");
-        h = params.get("h");
+    /**
+     * Returns the query described by params, or null if it is invalid or outside the map.
+     */
+    private Query handleParams(Map<String, Double> params) {
+        double ullon = params.get("ullon");
+        double ullat = params.get("ullat");
+        double lrlon = params.get("lrlon");
+        double lrlat = params.get("lrlat");
+        double w = params.get("w");
+        double h = params.get("h");
 
         // check the params
         if (!(((ullon < lrlon) && (ullat > lrlat)) && w > 0 && h > 0)) {
-            querySuccess = false;
-            return;
+            return null;
         }
 
         // check if query is out of scope
         if (!((ullon < MapServer.ROOT_LRLON && lrlon > MapServer.ROOT_ULLON)
                 && (ullat > MapServer.ROOT_LRLAT && lrlat < MapServer.ROOT_ULLAT))) {
-            querySuccess = false;
-            return;
+            return null;
         }
 
         // confirm the depth
         double lonDPP = (lrlon - ullon) / w;
-        maxPic = 1;
+        int depth;
         for (depth = 0; depth < maxDepth; depth++) {
             if (pictureLonDPP[depth] < lonDPP) {
                 break;
             }
-            maxPic *= 2;
         }
 
         // bound the query size to the scope
-        ullon = Math.max(ullon, MapServer.ROOT_ULLON);
-        ullat = Math.min(ullat, MapServer.ROOT_ULLAT);
-        lrlon = Math.min(lrlon, MapServer.ROOT_LRLON);
-        lrlat = Math.max(lrlat, MapServer.ROOT_LRLAT);
-
-        querySuccess = true;
+        return new Query(Math.max(ullon, MapServer.ROOT_ULLON),
+            Math.min(ullat, MapServer.ROOT_ULLAT), Math.min(lrlon, MapServer.ROOT_LRLON),
+            Math.max(lrlat, MapServer.ROOT_LRLAT), depth);
     }
 
-    private void getRenderGrid() {
+    /**
+     * Put the render grid of a query and the bounds of its raster into results.
+     */
+    private void getRenderGrid(Query q, Map<String, Object> results) {
+        int depth = q.depth;
+        int maxPic = 1 << depth;
         int xPics, yPics;
         int xMin, yMin, xMax, yMax;
-        xMin = (int) Math.floor((ullon - MapServer.ROOT_ULLON) / pictureLons[depth]);
-        xMax = (int) Math.floor((lrlon - MapServer.ROOT_ULLON) / pictureLons[depth]);
-        yMin = (int) Math.floor((MapServer.ROOT_ULLAT - ullat) / pictureLats[depth]);
-        yMax = (int) Math.floor((MapServer.ROOT_ULLAT - lrlat) / pictureLats[depth]);
+        xMin = (int) Math.floor((q.ullon - MapServer.ROOT_ULLON) / pictureLons[depth]);
+        xMax = (int) Math.floor((q.lrlon - MapServer.ROOT_ULLON) / pictureLons[depth]);
+        yMin = (int) Math.floor((MapServer.ROOT_ULLAT - q.ullat) / pictureLats[depth]);
+        yMax = (int) Math.floor((MapServer.ROOT_ULLAT - q.lrlat) / pictureLats[depth]);
         xMax = Math.min(xMax, maxPic - 1);
         yMax = Math.min(yMax, maxPic - 1);
         xPics = xMax - xMin + 1;
         yPics = yMax - yMin + 1;
 
-        rasterUlLon = MapServer.ROOT_ULLON + xMin * pictureLons[depth];
-        rasterLrLon = MapServer.ROOT_ULLON + (xMax + 1) * pictureLons[depth];
-        rasterUlLat = MapServer.ROOT_ULLAT - yMin * pictureLats[depth];
-        rasterLrLat = MapServer.ROOT_ULLAT - (yMax + 1) * pictureLats[depth];
+        results.put("raster_ul_lon", MapServer.ROOT_ULLON + xMin * pictureLons[depth]);
+        results.put("raster_lr_lon", MapServer.ROOT_ULLON + (xMax + 1) * pictureLons[depth]);
+        results.put("raster_ul_lat", MapServer.ROOT_ULLAT - yMin * pictureLats[depth]);
+        results.put("raster_lr_lat", MapServer.ROOT_ULLAT - (yMax + 1) * pictureLats[depth]);
 
         String picPrefix = "d" + depth + "_";
-        renderGrid = new String[yPics][xPics];
+        String[][] renderGrid = new String[yPics][xPics];
 
         for (int y = 0; y < yPics; y++) {
             for (int x = 0; x < xPics; x++) {
                 renderGrid[y][x] = picPrefix + "x" + (xMin + x) + "_y" + (yMin + y) + ".png";
             }
         }
+        results.put("render_grid", renderGrid);
     }
 
     /**
@@ -131,20 +157,23 @@ public class Rasterer {
      */
     public Map<String, Object> getMapRaster(Map<String, Double> params) {
         Map<String, Object> results = new HashMap<>();
-        handleParams(params);
-
-        if (querySuccess) {
-            // choose the right picture to cover the request region
-            getRenderGrid();
+        Query query = handleParams(params);
+
+        if (query == null) {
+            results.put("render_grid", null);
+            results.put("raster_ul_lon", 0.0);
+            results.put("raster_ul_lat", 0.0);
+            results.put("raster_lr_lon", 0.0);
+            results.put("raster_lr_lat", 0.0);
+            results.put("depth", 0);
+            results.put("query_success", false);
+            return results;
         }
 
-        results.put("render_grid", renderGrid);
-        results.put("raster_ul_lon", rasterUlLon);
-        results.put("raster_ul_lat", rasterUlLat);
-        results.put("raster_lr_lon", rasterLrLon);
-        results.put("raster_lr_lat", rasterLrLat);
-        results.put("depth", depth);
-        results.put("query_success", querySuccess);
+        // choose the right picture to cover the request region
+        getRenderGrid(query, results);
+        results.put("depth", query.depth);
+        results.put("query_success", true);
 
         return results;
     }
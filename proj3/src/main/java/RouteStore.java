@@ -0,0 +1,214 @@
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * The routes of the server's users, each kept under a random route token that the user's
+ * client sends back with its raster requests, so that every user sees their own route.
+ * <p>
+ * Each route weighs one plus its number of vertices. When the routes would weigh more than
+ * the budget, the least recently used ones are dropped, and a route that has not been used
+ * for the time to live is dropped as well. The lock is only held to look up and link
+ * routes, never while routing or drawing, so users do not wait for each other. Every stored
+ * route gets a new version, and the versions of dropped routes are passed to a listener
+ * outside the lock, so that the rasters that drew them can be dropped too.
+ */
+public class RouteStore {
+    /**
+     * A stored route: its version, its vertices, and the bounding box of its vertices.
+     */
+    static final class Route {
+        final long version;
+        final List<Long> vertices;
+        /* {minLon, minLat, maxLon, maxLat}, or null for an empty route. */
+        final double[] bounds;
+        private long lastUsed;
+
+        private Route(long version, List<Long> vertices, double[] bounds) {
+            this.version = version;
+            this.vertices = vertices;
+            this.bounds = bounds;
+        }
+    }
+
+    private static final int TOKEN_BYTES = 16;
+
+    private final long maxWeight;
+    private final long timeToLive;
+    private final LongSupplier clock;
+    private final LongConsumer onDrop;
+    private final SecureRandom random = new SecureRandom();
+    private final LinkedHashMap<String, Route> routes = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long nextVersion;
+    private long stored, expired, evictions;
+
+    /**
+     * Create an empty store.
+     *
+     * @param maxWeight    The largest total weight of the routes.
+     * @param timeToLive   How long a route is kept after it was last used, in the units of
+     *                     clock.
+     * @param clock        The current time.
+     * @param firstVersion The version of the first stored route. Later routes get the
+     *                     following versions.
+     * @param onDrop       Called with the version of every route that is replaced, cleared,
+     *                     expired or evicted, from the thread that dropped it.
+     */
+    RouteStore(long maxWeight, long timeToLive, LongSupplier clock, long firstVersion,
+               LongConsumer onDrop) {
+        this.maxWeight = maxWeight;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.nextVersion = firstVersion;
+        this.onDrop = onDrop;
+    }
+
+    /**
+     * Store a route under a token. A route stored under an existing token replaces the route
+     * of that token; otherwise it gets a new token, so clients cannot pick each other's.
+     *
+     * @param token    The token of the user's current route, or null.
+     * @param vertices The vertices of the new route.
+     * @param bounds   The bounding box of the vertices as {minLon, minLat, maxLon, maxLat},
+     *                 or null if there are none.
+     * @return The token of the new route.
+     */
+    String put(String token, List<Long> vertices, double[] bounds) {
+        List<Long> dropped = new ArrayList<>();
+        synchronized (this) {
+            long now = clock.getAsLong();
+            expire(now, dropped);
+            if (token == null || !routes.containsKey(token)) {
+                token = newToken();
+            }
+            Route route = new Route(nextVersion++,
+                Collections.unmodifiableList(new ArrayList<>(vertices)), bounds);
+            route.lastUsed = now;
+            Route old = routes.put(token, route);
+            if (old != null) {
+                weight -= weightOf(old);
+                dropped.add(old.version);
+            }
+            weight += weightOf(route);
+            stored++;
+            Iterator<Route> lru = routes.values().iterator();
+            while (weight > maxWeight && lru.hasNext()) {
+                Route evicted = lru.next();
+                if (evicted == route) {
+                    continue;
+                }
+                lru.remove();
+                weight -= weightOf(evicted);
+                dropped.add(evicted.version);
+                evictions++;
+            }
+        }
+        drop(dropped);
+        return token;
+    }
+
+    /**
+     * Returns the route of a token, and counts it as used.
+     *
+     * @param token The token, or null.
+     * @return The route, or null if the token is null, unknown or expired.
+     */
+    Route get(String token) {
+        if (token == null) {
+            return null;
+        }
+        List<Long> dropped = new ArrayList<>();
+        Route route;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            expire(now, dropped);
+            route = routes.get(token);
+            if (route != null) {
+                route.lastUsed = now;
+            }
+        }
+        drop(dropped);
+        return route;
+    }
+
+    /**
+     * Drop the route of a token, if there is one.
+     *
+     * @param token The token, or null.
+     */
+    void remove(String token) {
+        if (token == null) {
+            return;
+        }
+        Route route;
+        synchronized (this) {
+            route = routes.remove(token);
+            if (route != null) {
+                weight -= weightOf(route);
+            }
+        }
+        if (route != null) {
+            onDrop.accept(route.version);
+        }
+    }
+
+    /**
+     * Unlink the routes that were last used a time to live ago. They are the least recently
+     * used ones, so they are found at the start of the access order.
+     */
+    private void expire(long now, List<Long> dropped) {
+        Iterator<Route> lru = routes.values().iterator();
+        while (lru.hasNext()) {
+            Route route = lru.next();
+            if (now - route.lastUsed < timeToLive) {
+                break;
+            }
+            lru.remove();
+            weight -= weightOf(route);
+            dropped.add(route.version);
+            expired++;
+        }
+    }
+
+    private void drop(List<Long> dropped) {
+        for (long version : dropped) {
+            onDrop.accept(version);
+        }
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        String token;
+        do {
+            random.nextBytes(bytes);
+            token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        } while (routes.containsKey(token));
+        return token;
+    }
+
+    private static long weightOf(Route route) {
+        return 1 + route.vertices.size();
+    }
+
+    /**
+     * Returns the counters of this store: "routes", "weight", "stored", "expired" and
+     * "evictions".
+     */
+    synchronized Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("routes", (long) routes.size());
+        stats.put("weight", weight);
+        stats.put("stored", stored);
+        stats.put("expired", expired);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+}
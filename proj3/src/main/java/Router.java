@@ -1,14 +1,7 @@
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.PriorityQueue;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,6 +14,11 @@ import java.util.regex.Pattern;
  * down to the priority you use to order your vertices.
  */
 public class Router {
+    /**
+     * The default strategy, A* with the great-circle heuristic, for the last graph routed on.
+     */
+    private static volatile AStarRouting defaultStrategy;
+
     /**
      * Return a List of longs representing the shortest path from the node
      * closest to a start location and the node closest to the destination
@@ -33,131 +31,138 @@ public class Router {
      * @param destlat The latitude of the destination location.
      * @return A list of node id's in the order visited on the shortest path.
      */
-
-    private static class SearchNode {
-        final long id;
-        final double priority;
-
-        SearchNode(long id, double priority) {
-            this.id = id;
-            this.priority = priority;
-        }
-    }
-
     public static List<Long> shortestPath(GraphDB g, double stlon, double stlat,
                                           double destlon, double destlat) {
+        return shortestPath(g, defaultStrategy(g.compact()), stlon, stlat, destlon, destlat);
+    }
 
-        long startNodeId = g.closest(stlon, stlat);
-        long endNodeId = g.closest(destlon, destlat);
-
-
-        final Map<Long, Double> dstToStart = new HashMap<>();
-        final Map<Long, Long> edgeTo = new HashMap<>();
-        final Set<Long> markedNodes = new HashSet<>();
-
-        PriorityQueue<SearchNode> priorityQueue = new PriorityQueue<>(
-            Comparator.comparingDouble(node -> node.priority));
-        List<Long> path = new LinkedList<>();
+    /**
+     * Return the shortest path between the nodes closest to two locations, found by the
+     * given routing strategy.
+     *
+     * @param g        The graph to use.
+     * @param strategy A routing strategy over g's compact layout.
+     * @param stlon    The longitude of the start location.
+     * @param stlat    The latitude of the start location.
+     * @param destlon  The longitude of the destination location.
+     * @param destlat  The latitude of the destination location.
+     * @return A list of node id's in the order visited on the shortest path.
+     */
+    public static List<Long> shortestPath(GraphDB g, RoutingStrategy strategy, double stlon,
+                                          double stlat, double destlon, double destlat) {
+        CompactGraph c = g.compact();
+        return strategy.shortestPath(c.index(g.closest(stlon, stlat)),
+            c.index(g.closest(destlon, destlat)));
+    }
 
-        priorityQueue.add(new SearchNode(startNodeId, 0.0));
-        dstToStart.put(startNodeId, 0.0);
-        while (!priorityQueue.isEmpty()) {
-            long v = priorityQueue.remove().id;
-            if (markedNodes.contains(v)) {
-                continue;
-            }
-            markedNodes.add(v);
-            if (v == endNodeId) {
-                path.add(endNodeId);
-                long nodeId = endNodeId;
-                while (nodeId != startNodeId) {
-                    nodeId = edgeTo.get(nodeId);
-                    path.add(nodeId);
-                }
-                Collections.reverse(path);
-                return path;
-            }
-            for (Long w : g.adjacent(v)) {
-                if (markedNodes.contains(w)) {
-                    continue;
-                }
-                double startTow = dstToStart.getOrDefault(w, Double.MAX_VALUE);
-                double startTovTow = dstToStart.get(v) + g.distance(v, w);
-                if (startTovTow < startTow) {
-                    edgeTo.put(w, v);
-                    dstToStart.put(w, startTovTow);
-                    double heuristic = g.distance(w, endNodeId);
-                    priorityQueue.add(new SearchNode(w, startTovTow + heuristic));
-                }
-            }
+    /**
+     * Returns A* with the great-circle heuristic over the given graph.
+     */
+    static RoutingStrategy defaultStrategy(CompactGraph c) {
+        AStarRouting strategy = defaultStrategy;
+        if (strategy == null || strategy.graph() != c) {
+            strategy = new AStarRouting(c, c.lengths, Heuristic.greatCircle(c));
+            defaultStrategy = strategy;
         }
-        return path;  // path doesn't exist, return an empty list.
+        return strategy;
     }
 
     /**
      * Create the list of directions corresponding to a route on the graph.
+     * Walks the route once on the compact layout, which knows the way of every edge and its
+     * length, and builds each direction directly.
      *
      * @param g     The graph to use.
      * @param route The route to translate into directions. Each element
      *              corresponds to a node from the graph in the route.
      * @return A list of NavigationDirection objects corresponding to the input
      * route.
+     * @throws IllegalArgumentException If the route has a node that is not in the graph, or
+     *                                  two consecutive nodes that are not adjacent.
      */
     public static List<NavigationDirection> routeDirections(GraphDB g, List<Long> route) {
-        List<NavigationDirection> navigationDirections = new LinkedList<>();
         if (route.size() <= 1) {
             return null;
         }
+        CompactGraph c = g.compact();
+        List<NavigationDirection> navigationDirections = new ArrayList<>();
         Iterator<Long> iterator = route.iterator();
-        long start = iterator.next();
-        GraphDB.Way curWay = g.getNode(start).edges.get(route.get(1));
-        String direction = NavigationDirection.DIRECTIONS[NavigationDirection.START];
+        int cur = vertex(c, iterator.next());
+        int prev = cur;
+        int curWay = -1;
+        int direction = NavigationDirection.START;
         double distance = 0;
-        long cur = start;
-        long prev = start;
         while (iterator.hasNext()) {
-            long next = iterator.next();
-            GraphDB.Way nextWay = g.getNode(cur).edges.get(next);
-            if (!curWay.name.equals(nextWay.name)) {
-                navigationDirections.add(NavigationDirection.fromString(direction + " on "
-                    + curWay.name + " and continue for " + distance + " " + "miles."
-                ));
-
-                double relativeBearing = g.bearing(cur, next) - g.bearing(prev, cur);
-                if (relativeBearing > 180) {
-                    relativeBearing -= 360;
-                } else if (relativeBearing < -180) {
-                    relativeBearing += 360;
-                }
-                if (relativeBearing > -15 && relativeBearing <= 15) {
-                    direction = NavigationDirection.DIRECTIONS[NavigationDirection.STRAIGHT];
-                } else if (relativeBearing > -30 && relativeBearing <= -15) {
-                    direction = NavigationDirection.DIRECTIONS[NavigationDirection.SLIGHT_LEFT];
-                } else if (relativeBearing > 15 && relativeBearing <= 30) {
-                    direction = NavigationDirection.DIRECTIONS[NavigationDirection.SLIGHT_RIGHT];
-                } else if (relativeBearing > -100 && relativeBearing <= -30) {
-                    direction = NavigationDirection.DIRECTIONS[NavigationDirection.LEFT];
-                } else if (relativeBearing > 30 && relativeBearing <= 100) {
-                    direction = NavigationDirection.DIRECTIONS[NavigationDirection.RIGHT];
-                } else if (relativeBearing <= -100) {
-                    direction = NavigationDirection.DIRECTIONS[NavigationDirection.SHARP_LEFT];
-                } else if (relativeBearing > 100) {
-                    direction = NavigationDirection.DIRECTIONS[NavigationDirection.SHARP_RIGHT];
-                }
+            int next = vertex(c, iterator.next());
+            int e = c.edge(cur, next);
+            if (e < 0) {
+                throw new IllegalArgumentException("The route jumps between nodes "
+                    + c.ids[cur] + " and " + c.ids[next] + ", which are not adjacent.");
+            }
+            int nextWay = c.edgeWays[e];
+            if (curWay < 0) {
+                curWay = nextWay;
+            } else if (nextWay != curWay
+                && !c.ways[curWay].name.equals(c.ways[nextWay].name)) {
+                navigationDirections.add(new NavigationDirection(direction,
+                    c.ways[curWay].name, distance));
+                direction = turn(bearing(c, cur, next) - bearing(c, prev, cur), direction);
                 distance = 0;
                 curWay = nextWay;
             }
-
-            distance += g.distance(cur, next);
+            distance += c.lengths[e];
             prev = cur;
             cur = next;
         }
+        navigationDirections.add(new NavigationDirection(direction, c.ways[curWay].name,
+            distance));
+        return navigationDirections;
+    }
+
+    /**
+     * Returns the index of the vertex with the given id, for routeDirections.
+     */
+    private static int vertex(CompactGraph c, long id) {
+        int v = c.index(id);
+        if (v < 0) {
+            throw new IllegalArgumentException("Node " + id + " of the route is not in the"
+                + " graph.");
+        }
+        return v;
+    }
 
-        navigationDirections.add(NavigationDirection.fromString(direction + " on "
-            + curWay.name + " and continue for " + distance + " " + "miles."
-        ));
+    private static double bearing(CompactGraph c, int v, int w) {
+        return GraphDB.bearing(c.lons[v], c.lats[v], c.lons[w], c.lats[w]);
+    }
 
-        return navigationDirections;
+    /**
+     * Returns the direction of a turn.
+     *
+     * @param relativeBearing The bearing of the new way minus that of the old one, in degrees.
+     * @param otherwise       The direction to return if the bearing is not a number.
+     */
+    private static int turn(double relativeBearing, int otherwise) {
+        if (relativeBearing > 180) {
+            relativeBearing -= 360;
+        } else if (relativeBearing < -180) {
+            relativeBearing += 360;
+        }
+        if (relativeBearing > -15 && relativeBearing <= 15) {
+            return NavigationDirection.STRAIGHT;
+        } else if (relativeBearing > -30 && relativeBearing <= -15) {
+            return NavigationDirection.SLIGHT_LEFT;
+        } else if (relativeBearing > 15 && relativeBearing <= 30) {
+            return NavigationDirection.SLIGHT_RIGHT;
+        } else if (relativeBearing > -100 && relativeBearing <= -30) {
+            return NavigationDirection.LEFT;
+        } else if (relativeBearing > 30 && relativeBearing <= 100) {
+            return NavigationDirection.RIGHT;
+        } else if (relativeBearing <= -100) {
+            return NavigationDirection.SHARP_LEFT;
+        } else if (relativeBearing > 100) {
+            return NavigationDirection.SHARP_RIGHT;
+        }
+        return otherwise;
     }
 
     /**
@@ -193,6 +198,12 @@ public class Router {
          */
         public static final String UNKNOWN_ROAD = "unknown road";
 
+        /**
+         * The string representation of a direction, as parsed by fromString.
+         */
+        private static final Pattern PATTERN = Pattern.compile(
+            "([a-zA-Z\\s]+) on ([\\w\\s]*) and continue for ([0-9.]+) miles\\.");
+
         /* Static initializer. */
         static {
             DIRECTIONS[START] = "Start";
@@ -227,9 +238,78 @@ public class Router {
             this.distance = 0.0;
         }
 
+        /**
+         * Create a NavigationDirection from its parts.
+         *
+         * @param direction One of the direction constants.
+         * @param way       The name of the way.
+         * @param distance  The distance along the way in miles.
+         */
+        NavigationDirection(int direction, String way, double distance) {
+            this.direction = direction;
+            this.way = way;
+            this.distance = distance;
+        }
+
         public String toString() {
-            return String.format("%s on %s and continue for %.3f miles.",
-                DIRECTIONS[direction], way, distance);
+            StringBuilder sb = new StringBuilder();
+            appendTo(sb);
+            return sb.toString();
+        }
+
+        /**
+         * Append the string representation of this direction, the same as toString.
+         */
+        void appendTo(StringBuilder sb) {
+            sb.append(DIRECTIONS[direction]).append(" on ").append(way)
+                .append(" and continue for ");
+            appendThousandths(sb, distance);
+            sb.append(" miles.");
+        }
+
+        /**
+         * Append a number with three decimals as String.format("%.3f") does, which rounds
+         * half up from the shortest decimal representation of the number.
+         */
+        static void appendThousandths(StringBuilder sb, double value) {
+            String s = Double.toString(value);
+            /* Double.toString writes numbers from 10^-3 to 10^7 without an exponent. */
+            if (!(value >= 0 && value < 1e7) || s.indexOf('E') >= 0 || s.charAt(0) == '-') {
+                sb.append(String.format("%.3f", value));
+                return;
+            }
+            long thousandths = 0;
+            int decimals = -1;
+            boolean roundUp = false;
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                if (ch == '.') {
+                    decimals = 0;
+                } else if (decimals < 3) {
+                    thousandths = 10 * thousandths + (ch - '0');
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else {
+                    roundUp = ch >= '5';
+                    break;
+                }
+            }
+            for (; decimals < 3; decimals++) {
+                thousandths *= 10;
+            }
+            if (roundUp) {
+                thousandths++;
+            }
+            long fraction = thousandths % 1000;
+            sb.append(thousandths / 1000).append('.');
+            if (fraction < 100) {
+                sb.append('0');
+            }
+            if (fraction < 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
         }
 
         /**
@@ -240,9 +320,7 @@ public class Router {
          * @return A NavigationDirection object representing the input string.
          */
         public static NavigationDirection fromString(String dirAsString) {
-            String regex = "([a-zA-Z\\s]+) on ([\\w\\s]*) and continue for ([0-9.]+) miles\\.";
-            Pattern p = Pattern.compile(regex);
-            Matcher m = p.matcher(dirAsString);
+            Matcher m = PATTERN.matcher(dirAsString);
             NavigationDirection nd = new NavigationDirection();
             if (m.matches()) {
                 String direction = m.group(1);
@@ -0,0 +1,125 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class provides a main method for comparing the routing strategies against plain A*.
+ * It reports the preprocessing time of the landmarks and of the contraction hierarchy, the
+ * size of the saved hierarchy and the heap its arrays hold, query latency percentiles and
+ * settled vertex counts for every strategy, and checks that all of them return paths of the
+ * same cost as A*. The optional second argument "time" routes by travel time instead of
+ * distance.
+ */
+public class RoutingLauncher {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final int NUM_QUERIES = 1000;
+    private static final int NUM_LANDMARKS = 16;
+    private static final long SEED = 61;
+
+    public static void main(String[] args) throws IOException {
+        String dbPath = args.length > 0 ? args[0] : OSM_DB_PATH;
+        GraphDB g = new GraphDB(dbPath);
+        g.freeze();
+        CompactGraph c = g.compact();
+        boolean byTime = args.length > 1 && args[1].equals("time");
+        double[] weights = byTime ? c.times : c.lengths;
+        Heuristic heuristic = byTime ? Heuristic.travelTime(c) : Heuristic.greatCircle(c);
+        System.out.println("Graph: " + c.size() + " vertices, " + c.targets.length / 2
+            + " edges, routing by " + (byTime ? "travel time." : "distance."));
+
+        long start = System.nanoTime();
+        Landmarks landmarks = new Landmarks(c, weights, NUM_LANDMARKS);
+        System.out.printf("Landmarks: %d in %.2f s, %.2f MB of heap.%n", NUM_LANDMARKS,
+            (System.nanoTime() - start) / 1e9, 8.0 * NUM_LANDMARKS * c.size() / 1e6);
+
+        start = System.nanoTime();
+        ContractionHierarchy ch = ContractionHierarchy.build(c, weights);
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        File file = File.createTempFile("bearmaps", ".ch");
+        file.deleteOnExit();
+        ch.save(file);
+        start = System.nanoTime();
+        ch = ContractionHierarchy.load(c, weights, file);
+        double loadMillis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("Contraction hierarchy: %.2f s, %d shortcuts, %.2f MB on disk, "
+            + "%.2f MB of heap, loaded in %.1f ms.%n", buildSeconds, ch.shortcutCount(),
+            file.length() / 1e6, ch.sizeInBytes() / 1e6, loadMillis);
+
+        Map<String, RoutingStrategy> strategies = new LinkedHashMap<>();
+        strategies.put("A*", new AStarRouting(c, weights, heuristic));
+        strategies.put("Bidirectional A*",
+            new BidirectionalAStarRouting(c, weights, heuristic));
+        strategies.put("ALT", new AStarRouting(c, weights, landmarks));
+        strategies.put("Bidirectional ALT",
+            new BidirectionalAStarRouting(c, weights, landmarks));
+        strategies.put("CH", ch);
+
+        Random random = new Random(SEED);
+        int[][] queries = new int[NUM_QUERIES][2];
+        for (int[] q : queries) {
+            q[0] = random.nextInt(c.size());
+            q[1] = random.nextInt(c.size());
+        }
+        List<List<Long>> expected = new ArrayList<>();
+        for (int[] q : queries) {
+            expected.add(strategies.get("A*").shortestPath(q[0], q[1]));
+        }
+
+        System.out.println("Over " + NUM_QUERIES + " random vertex pairs, latency in ms:");
+        for (Map.Entry<String, RoutingStrategy> entry : strategies.entrySet()) {
+            RoutingStrategy strategy = entry.getValue();
+            double[] times = new double[NUM_QUERIES];
+            long settled = 0;
+            int sameCost = 0;
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < NUM_QUERIES; i++) {
+                    long t0 = System.nanoTime();
+                    List<Long> actual = strategy.shortestPath(queries[i][0], queries[i][1]);
+                    long t1 = System.nanoTime();
+                    /* The first round only warms up. */
+                    if (round == 1) {
+                        times[i] = (t1 - t0) / 1e6;
+                        settled += strategy.settledCount();
+                        double expectedCost = cost(c, weights, expected.get(i));
+                        if (Math.abs(expectedCost - cost(c, weights, actual)) < 1e-9) {
+                            sameCost++;
+                        }
+                    }
+                }
+            }
+            printLatencies(String.format("  %-18s", entry.getKey() + ":"), times);
+            System.out.printf("  %-18s %.1f settled vertices per query, %d of %d paths as "
+                + "cheap as A*%n", "", (double) settled / NUM_QUERIES, sameCost,
+                NUM_QUERIES);
+        }
+    }
+
+    private static double cost(CompactGraph c, double[] weights, List<Long> path) {
+        double cost = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            cost += weights[c.edge(c.index(path.get(i)), c.index(path.get(i + 1)))];
+        }
+        return cost;
+    }
+
+    private static void printLatencies(String label, double[] times) {
+        double[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double total = 0;
+        for (double t : sorted) {
+            total += t;
+        }
+        System.out.printf("%s mean %.3f, p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n", label,
+            total / sorted.length, percentile(sorted, 0.5), percentile(sorted, 0.9),
+            percentile(sorted, 0.99), sorted[sorted.length - 1]);
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
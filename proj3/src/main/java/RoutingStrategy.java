@@ -0,0 +1,23 @@
+import java.util.List;
+
+/**
+ * A way of answering shortest path queries between two vertices of a CompactGraph. A
+ * strategy may be shared between threads; the settled count is tracked per thread.
+ */
+public interface RoutingStrategy {
+    /**
+     * Returns the shortest path between two vertices.
+     *
+     * @param start The index of the start vertex.
+     * @param end   The index of the destination vertex.
+     * @return A list of node id's in the order visited on the shortest path, or an empty list
+     * if there is none.
+     */
+    List<Long> shortestPath(int start, int end);
+
+    /**
+     * Returns the number of vertices settled by the last query of the calling thread, a
+     * measure of how much of the graph the strategy had to look at.
+     */
+    int settledCount();
+}
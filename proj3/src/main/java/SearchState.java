@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The per-vertex bookkeeping of a shortest path search over a CompactGraph: tentative
+ * distances, parents, settled flags and the priority queue.
+ * <p>
+ * A SearchState is meant to be kept per thread and reused by every search that thread runs.
+ * Instead of clearing its arrays between searches, every entry is stamped with the epoch of
+ * the search that wrote it, and entries with an older stamp read as unreached. Starting a
+ * new search is therefore constant time and does not allocate, unless the graph has grown.
+ */
+public class SearchState {
+    private int epoch;
+    private int[] reachedEpoch = new int[0];
+    private int[] settledEpoch = new int[0];
+    private double[] dist = new double[0];
+    private int[] parent = new int[0];
+    private int settledCount;
+
+    /**
+     * The priority queue of the current search.
+     */
+    final IndexedMinHeap heap = new IndexedMinHeap();
+
+    /**
+     * Start a new search over a graph with n vertices.
+     *
+     * @param n The number of vertices in the graph.
+     */
+    void reset(int n) {
+        if (reachedEpoch.length < n) {
+            reachedEpoch = new int[n];
+            settledEpoch = new int[n];
+            dist = new double[n];
+            parent = new int[n];
+            epoch = 0;
+        }
+        epoch++;
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(reachedEpoch, 0);
+            Arrays.fill(settledEpoch, 0);
+            epoch = 1;
+        }
+        settledCount = 0;
+        heap.reset(n);
+    }
+
+    /**
+     * Returns whether the current search has found any path to v.
+     */
+    boolean reached(int v) {
+        return reachedEpoch[v] == epoch;
+    }
+
+    /**
+     * Returns the length of the best path to v found so far, or infinity if there is none.
+     */
+    double dist(int v) {
+        return reachedEpoch[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the vertex before v on the best path found so far.
+     */
+    int parent(int v) {
+        return parent[v];
+    }
+
+    /**
+     * Record a path of length d to v whose last edge comes from p.
+     */
+    void reach(int v, double d, int p) {
+        reachedEpoch[v] = epoch;
+        dist[v] = d;
+        parent[v] = p;
+    }
+
+    /**
+     * Returns whether v has been settled, i.e. its distance is final.
+     */
+    boolean settled(int v) {
+        return settledEpoch[v] == epoch;
+    }
+
+    /**
+     * Mark v as settled.
+     */
+    void settle(int v) {
+        settledEpoch[v] = epoch;
+        settledCount++;
+    }
+
+    /**
+     * Returns the number of vertices settled by the current search.
+     */
+    int settledCount() {
+        return settledCount;
+    }
+
+    /**
+     * Returns the ids of the vertices on the path to end, following parents back to the
+     * vertex that is its own parent. The list is the only object this allocates.
+     *
+     * @param c   The graph that was searched.
+     * @param end The last vertex of the path.
+     * @return The ids of the vertices of the path, in order.
+     */
+    List<Long> path(CompactGraph c, int end) {
+        int length = 1;
+        for (int v = end; parent[v] != v; v = parent[v]) {
+            length++;
+        }
+        List<Long> path = new ArrayList<>(length);
+        int v = end;
+        for (int i = 0; i < length; i++) {
+            path.add(c.ids[v]);
+            v = parent[v];
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
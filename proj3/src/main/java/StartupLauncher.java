@@ -0,0 +1,92 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class provides a main method for measuring time to first request: the time from the
+ * start of the JVM until the graph is loaded and a first route, closest-vertex and
+ * autocomplete request have been answered, once parsing the OSM XML and once loading a graph
+ * snapshot. Each measurement runs in a fresh JVM, so class loading and JIT warm-up count
+ * like they do when MapServer starts.
+ */
+public class StartupLauncher {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final String SNAPSHOT_PATH = "../library-sp18/data/berkeley-2018.graph";
+    private static final int NUM_RUNS = 5;
+
+    /**
+     * With no arguments, time both ways of starting in child JVMs. With "xml" or "snapshot"
+     * as the first argument, start once that way and print the times in milliseconds.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0) {
+            start(args[0], args.length > 1 ? args[1] : OSM_DB_PATH,
+                args.length > 2 ? args[2] : SNAPSHOT_PATH);
+            return;
+        }
+        /* Make sure a current snapshot exists before timing the snapshot path. */
+        GraphSnapshot.loadOrBuild(OSM_DB_PATH, new File(SNAPSHOT_PATH));
+        for (String mode : new String[]{"xml", "snapshot"}) {
+            double[] loaded = new double[NUM_RUNS];
+            double[] answered = new double[NUM_RUNS];
+            for (int i = 0; i < NUM_RUNS; i++) {
+                String[] times = runChild(mode).split(" ");
+                loaded[i] = Double.parseDouble(times[0]);
+                answered[i] = Double.parseDouble(times[1]);
+            }
+            Arrays.sort(loaded);
+            Arrays.sort(answered);
+            System.out.printf("%-8s graph loaded %7.1f ms, first request answered %7.1f ms "
+                + "(median of %d)%n", mode + ":", loaded[NUM_RUNS / 2],
+                answered[NUM_RUNS / 2], NUM_RUNS);
+        }
+    }
+
+    private static void start(String mode, String dbPath, String snapshotPath) {
+        GraphDB graph;
+        if (mode.equals("snapshot")) {
+            graph = GraphSnapshot.loadOrBuild(dbPath, new File(snapshotPath));
+        } else {
+            graph = new GraphDB(dbPath);
+            graph.freeze();
+        }
+        double loaded = sinceJvmStart();
+
+        double lonSpan = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+        double latSpan = MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT;
+        List<Long> route = Router.shortestPath(graph,
+            MapServer.ROOT_ULLON + lonSpan / 4, MapServer.ROOT_LRLAT + latSpan / 4,
+            MapServer.ROOT_ULLON + 3 * lonSpan / 4, MapServer.ROOT_LRLAT + 3 * latSpan / 4);
+        Router.routeDirections(graph, route);
+        graph.closest(MapServer.ROOT_ULLON + lonSpan / 2, MapServer.ROOT_LRLAT + latSpan / 2);
+        graph.getLocationsByPrefix("t");
+        double answered = sinceJvmStart();
+        System.out.println(loaded + " " + answered);
+    }
+
+    private static double sinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    private static String runChild(String mode) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+            + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            StartupLauncher.class.getName(), mode).redirectErrorStream(true).start();
+        String last = null;
+        try (BufferedReader out = new BufferedReader(
+            new InputStreamReader(process.getInputStream()))) {
+            for (String line = out.readLine(); line != null; line = out.readLine()) {
+                last = line;
+            }
+        }
+        if (process.waitFor() != 0 || last == null) {
+            throw new IOException("Starting with " + mode + " failed.");
+        }
+        return last;
+    }
+}
@@ -0,0 +1,181 @@
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded in-memory cache of decoded map tiles, keyed by the tile file names that
+ * Rasterer puts in the render grid, e.g. "d3_x2_y5.png".
+ * <p>
+ * Tiles are decoded once into TYPE_INT_RGB images, the type of the image MapServer draws
+ * them onto, so a cached tile is copied without any conversion. When the decoded tiles would
+ * take more than the byte budget, the least recently used ones are evicted. The cache may be
+ * used from several threads; decoding happens outside the lock, so two threads missing the
+ * same tile at once may both decode it.
+ * <p>
+ * Tiles deeper than the deepest ones in the root folder may be got from a generator instead,
+ * such as a VectorTileRenderer, and are then cached like the others.
+ */
+public class TileCache {
+    private final String root;
+    private final long maxBytes;
+    private final int maxDepth;
+    private final Function<String, BufferedImage> deeper;
+    private final LinkedHashMap<String, BufferedImage> tiles =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits, misses, evictions;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param root     The folder the tile images are in, ending with a separator.
+     * @param maxBytes The largest number of bytes the decoded tiles may take.
+     */
+    TileCache(String root, long maxBytes) {
+        this(root, maxBytes, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Create an empty cache that gets the tiles deeper than maxDepth from a generator.
+     *
+     * @param root     The folder the tile images are in, ending with a separator.
+     * @param maxBytes The largest number of bytes the decoded tiles may take.
+     * @param maxDepth The depth of the deepest tiles in the root folder.
+     * @param deeper   Returns the TYPE_INT_RGB tile of a file name deeper than maxDepth, or
+     *                 null if it has none.
+     */
+    TileCache(String root, long maxBytes, int maxDepth,
+              Function<String, BufferedImage> deeper) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        this.maxDepth = maxDepth;
+        this.deeper = deeper;
+    }
+
+    /**
+     * Returns the decoded tile with the given file name, reading it from disk on a miss.
+     *
+     * @param name The file name of the tile, relative to the root folder.
+     * @return The tile, or null if it could not be read.
+     */
+    BufferedImage get(String name) {
+        synchronized (this) {
+            BufferedImage tile = tiles.get(name);
+            if (tile != null) {
+                hits++;
+                return tile;
+            }
+            misses++;
+        }
+        BufferedImage tile = deeper != null && depth(name) > maxDepth ? deeper.apply(name)
+            : readTile(new File(root + name));
+        if (tile != null) {
+            put(name, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Returns the depth of a tile file name such as "d3_x2_y5.png", or -1 if it has none.
+     */
+    private static int depth(String name) {
+        int end = name.indexOf('_');
+        if (!name.startsWith("d") || end < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(1, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Load every tile of depth 0 up to maxDepth, shallowest first, until the cache is full.
+     *
+     * @param maxDepth The deepest level to load.
+     * @return The number of tiles loaded.
+     */
+    int warmUp(int maxDepth) {
+        int loaded = 0;
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            int n = 1 << depth;
+            for (int y = 0; y < n; y++) {
+                for (int x = 0; x < n; x++) {
+                    String name = "d" + depth + "_x" + x + "_y" + y + ".png";
+                    BufferedImage tile = readTile(new File(root + name));
+                    if (tile == null) {
+                        continue;
+                    }
+                    synchronized (this) {
+                        if (bytes + sizeOf(tile) > maxBytes) {
+                            return loaded;
+                        }
+                    }
+                    put(name, tile);
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private synchronized void put(String name, BufferedImage tile) {
+        BufferedImage old = tiles.put(name, tile);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += sizeOf(tile);
+        Iterator<BufferedImage> lru = tiles.values().iterator();
+        while (bytes > maxBytes && lru.hasNext()) {
+            BufferedImage evicted = lru.next();
+            lru.remove();
+            bytes -= sizeOf(evicted);
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns the tile in a PNG file as a TYPE_INT_RGB image, or null if it could not be read.
+     */
+    static BufferedImage readTile(File file) {
+        try {
+            BufferedImage decoded = ImageIO.read(file);
+            if (decoded == null || decoded.getType() == BufferedImage.TYPE_INT_RGB) {
+                return decoded;
+            }
+            BufferedImage tile = new BufferedImage(decoded.getWidth(), decoded.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+            Graphics graphic = tile.getGraphics();
+            graphic.drawImage(decoded, 0, 0, null);
+            graphic.dispose();
+            return tile;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static long sizeOf(BufferedImage tile) {
+        return 4L * tile.getWidth() * tile.getHeight();
+    }
+
+    /**
+     * Returns the counters of this cache: "tiles", "bytes", "hits", "misses" and "evictions".
+     */
+    synchronized Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("tiles", (long) tiles.size());
+        stats.put("bytes", bytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+}
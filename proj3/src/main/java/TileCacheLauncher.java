@@ -0,0 +1,112 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class provides a main method for measuring the tile cache. It replays a random walk of
+ * pans and zooms over the map, rasters every view like the /raster endpoint does, and reports
+ * latency percentiles of gathering the tiles and of the whole raster (tiles and PNG encoding),
+ * once reading every tile from disk and once through a warmed-up TileCache.
+ */
+public class TileCacheLauncher {
+    private static final String IMG_ROOT = "../library-sp18/data/proj3_imgs/";
+    private static final int NUM_VIEWS = 500;
+    private static final double WIDTH = 1000, HEIGHT = 800;
+    private static final long CACHE_BYTES = 256L << 20;
+    private static final int WARM_UP_DEPTH = 3;
+    private static final int PNG_COMPRESSION_LEVEL = 1;
+    private static final long SEED = 61;
+
+    public static void main(String[] args) throws IOException {
+        String imgRoot = args.length > 0 ? args[0] : IMG_ROOT;
+        List<Map<String, Object>> views = replay(new Rasterer());
+
+        /* A cache without any room reads every tile from disk. */
+        replay("No cache:", new TileCache(imgRoot, 0), views);
+        TileCache cache = new TileCache(imgRoot, CACHE_BYTES);
+        cache.warmUp(WARM_UP_DEPTH);
+        replay("TileCache:", cache, views);
+        System.out.println("  " + cache.stats());
+    }
+
+    /**
+     * Returns the rastered views of a random walk that pans by up to half a view and zooms in
+     * or out by a factor of two.
+     */
+    private static List<Map<String, Object>> replay(Rasterer rasterer) {
+        Random random = new Random(SEED);
+        double lonSpan = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+        double latSpan = lonSpan * HEIGHT / WIDTH;
+        double lon = MapServer.ROOT_ULLON + lonSpan / 2;
+        double lat = MapServer.ROOT_LRLAT + (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT) / 2;
+        List<Map<String, Object>> views = new ArrayList<>();
+        while (views.size() < NUM_VIEWS) {
+            double move = random.nextDouble();
+            if (move < 0.15 && lonSpan > 1e-4) {
+                lonSpan /= 2;
+                latSpan /= 2;
+            } else if (move < 0.3 && lonSpan < 0.1) {
+                lonSpan *= 2;
+                latSpan *= 2;
+            } else {
+                lon += (random.nextDouble() - 0.5) * lonSpan;
+                lat += (random.nextDouble() - 0.5) * latSpan;
+                lon = Math.max(MapServer.ROOT_ULLON, Math.min(MapServer.ROOT_LRLON, lon));
+                lat = Math.max(MapServer.ROOT_LRLAT, Math.min(MapServer.ROOT_ULLAT, lat));
+            }
+            Map<String, Double> params = new HashMap<>();
+            params.put("ullon", lon - lonSpan / 2);
+            params.put("lrlon", lon + lonSpan / 2);
+            params.put("ullat", lat + latSpan / 2);
+            params.put("lrlat", lat - latSpan / 2);
+            params.put("w", WIDTH);
+            params.put("h", HEIGHT);
+            Map<String, Object> view = rasterer.getMapRaster(params);
+            if ((boolean) view.get("query_success")) {
+                views.add(view);
+            }
+        }
+        return views;
+    }
+
+    private static void replay(String label, TileCache cache, List<Map<String, Object>> views)
+        throws IOException {
+        double[] tileTimes = new double[views.size()];
+        double[] totalTimes = new double[views.size()];
+        for (int i = 0; i < views.size(); i++) {
+            String[][] renderGrid = (String[][]) views.get(i).get("render_grid");
+            long t0 = System.nanoTime();
+            BufferedImage img = RasterRenderer.composite(renderGrid, cache::get);
+            long t1 = System.nanoTime();
+            PngEncoder.write(img, PNG_COMPRESSION_LEVEL, new ByteArrayOutputStream());
+            long t2 = System.nanoTime();
+            tileTimes[i] = (t1 - t0) / 1e6;
+            totalTimes[i] = (t2 - t0) / 1e6;
+        }
+        System.out.println(label);
+        printLatencies("  tiles (ms):", tileTimes);
+        printLatencies("  total (ms):", totalTimes);
+    }
+
+    private static void printLatencies(String label, double[] times) {
+        double[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double total = 0;
+        for (double t : sorted) {
+            total += t;
+        }
+        System.out.printf("%s mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n", label,
+            total / sorted.length, percentile(sorted, 0.5), percentile(sorted, 0.9),
+            percentile(sorted, 0.99), sorted[sorted.length - 1]);
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A trace of requests to MapServer, to replay with LoadGenerator.
+ * <p>
+ * A trace file has one request per line: the time it was sent, in milliseconds from the start
+ * of the trace, and its path and query, such as
+ * <pre>
+ * 1520 /raster?ullon=-122.27&amp;ullat=37.87&amp;lrlon=-122.25&amp;lrlat=37.86&amp;w=1024&amp;h=768
+ * </pre>
+ * Lines starting with # are comments. Traces are either recorded from a running MapServer
+ * by a Recorder, or synthesized from sessions of users who pan and zoom the map, type
+ * searches and ask for routes.
+ */
+public class TrafficTrace {
+    /**
+     * The mean pause of a synthetic user between actions, in milliseconds.
+     */
+    private static final double THINK_TIME_MS = 1000;
+    /**
+     * The pause between two keystrokes of a synthetic search, in milliseconds.
+     */
+    private static final long KEYSTROKE_MS = 150;
+    /**
+     * The mean number of actions of a synthetic session.
+     */
+    private static final double ACTIONS_PER_SESSION = 20;
+    /**
+     * The deepest zoom level of synthetic views, at which a view is about as many degrees
+     * wide as the tiles of depth 7.
+     */
+    private static final int MAX_ZOOM = 7;
+    /**
+     * The window sizes of synthetic users, in pixels.
+     */
+    private static final int[][] WINDOWS = {{1024, 768}, {1280, 800}, {800, 600}};
+    private static final double ROOT_WIDTH = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+    private static final double ROOT_HEIGHT = MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT;
+
+    /**
+     * One request of a trace.
+     */
+    static final class Request {
+        /**
+         * When the request is sent, in milliseconds from the start of the trace.
+         */
+        final long offset;
+        /**
+         * The path and query of the request.
+         */
+        final String target;
+
+        Request(long offset, String target) {
+            this.offset = offset;
+            this.target = target;
+        }
+
+        /**
+         * Returns the path of the request without its query, such as /raster.
+         */
+        String endpoint() {
+            int query = target.indexOf('?');
+            return query < 0 ? target : target.substring(0, query);
+        }
+    }
+
+    final List<Request> requests;
+
+    TrafficTrace(List<Request> requests) {
+        this.requests = requests;
+    }
+
+    /**
+     * Returns the length of the trace in milliseconds, from its start to its last request.
+     */
+    long duration() {
+        return requests.isEmpty() ? 0 : requests.get(requests.size() - 1).offset;
+    }
+
+    /**
+     * Read a trace file.
+     */
+    static TrafficTrace read(Path file) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new IOException("Not a trace line: " + line);
+                }
+                try {
+                    requests.add(new Request(Long.parseLong(line.substring(0, space)),
+                        line.substring(space + 1).trim()));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Not a trace line: " + line, e);
+                }
+            }
+        }
+        requests.sort(Comparator.comparingLong(r -> r.offset));
+        return new TrafficTrace(requests);
+    }
+
+    /**
+     * Write the trace to a file, in the format read by read.
+     */
+    void write(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# BearMaps traffic trace: offset in ms, then path and query.\n");
+            for (Request request : requests) {
+                writer.write(request.offset + " " + request.target + "\n");
+            }
+        }
+    }
+
+    /**
+     * Returns a synthetic trace of users who each open the map at a random time and place,
+     * then pan and zoom it, type searches for locations and ask for routes between points
+     * in their view, pausing to think between actions.
+     *
+     * @param names    The names of locations that users search for.
+     * @param sessions The number of users.
+     * @param duration The time over which users arrive, in milliseconds.
+     * @param seed     The seed of the random choices, so that a trace can be made again.
+     */
+    static TrafficTrace synthesize(List<String> names, int sessions, long duration,
+                                   long seed) {
+        Random random = new Random(seed);
+        List<Request> requests = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            new Session(random, names, (long) (random.nextDouble() * duration)).run(requests);
+        }
+        requests.sort(Comparator.comparingLong(r -> r.offset));
+        return new TrafficTrace(requests);
+    }
+
+    /**
+     * A synthetic user, looking at a view of the map.
+     */
+    private static final class Session {
+        private final Random random;
+        private final List<String> names;
+        private final int width;
+        private final int height;
+        private long time;
+        private int zoom;
+        private double lon;
+        private double lat;
+
+        Session(Random random, List<String> names, long start) {
+            this.random = random;
+            this.names = names;
+            int[] window = WINDOWS[random.nextInt(WINDOWS.length)];
+            width = window[0];
+            height = window[1];
+            time = start;
+            zoom = 2 + random.nextInt(4);
+            lon = MapServer.ROOT_ULLON + random.nextDouble() * ROOT_WIDTH;
+            lat = MapServer.ROOT_LRLAT + random.nextDouble() * ROOT_HEIGHT;
+        }
+
+        void run(List<Request> requests) {
+            requests.add(raster());
+            /* A geometric number of actions, with mean ACTIONS_PER_SESSION. */
+            while (random.nextDouble() > 1 / ACTIONS_PER_SESSION) {
+                time += (long) (-THINK_TIME_MS * Math.log(1 - random.nextDouble()));
+                double action = random.nextDouble();
+                if (action < 0.5) {
+                    double angle = 2 * Math.PI * random.nextDouble();
+                    double distance = random.nextDouble() / 2;
+                    lon += Math.cos(angle) * distance * viewWidth();
+                    lat += Math.sin(angle) * distance * viewHeight();
+                    /* Users pan back before leaving the map. */
+                    lon = Math.min(Math.max(lon, MapServer.ROOT_ULLON), MapServer.ROOT_LRLON);
+                    lat = Math.min(Math.max(lat, MapServer.ROOT_LRLAT), MapServer.ROOT_ULLAT);
+                    requests.add(raster());
+                } else if (action < 0.7) {
+                    zoom = Math.min(zoom + 1, MAX_ZOOM);
+                    requests.add(raster());
+                } else if (action < 0.85) {
+                    zoom = Math.max(zoom - 1, 0);
+                    requests.add(raster());
+                } else if (action < 0.95) {
+                    search(requests);
+                } else {
+                    requests.add(new Request(time, "/route" + query(
+                        "start_lon", pointLon(), "start_lat", pointLat(),
+                        "end_lon", pointLon(), "end_lat", pointLat())));
+                }
+            }
+        }
+
+        /**
+         * Add the requests of typing the start of a location's name into the search box, one
+         * per keystroke, and then picking it.
+         */
+        private void search(List<Request> requests) {
+            if (names.isEmpty()) {
+                return;
+            }
+            String name = names.get(random.nextInt(names.size()));
+            int typed = 1 + random.nextInt(Math.min(name.length(), 8));
+            for (int i = 1; i <= typed; i++) {
+                requests.add(new Request(time, "/search" + query("term",
+                    name.substring(0, i))));
+                time += KEYSTROKE_MS;
+            }
+            requests.add(new Request(time, "/search" + query("term", name, "full", "true")));
+        }
+
+        /**
+         * Returns the raster request of the view. Views keep the degrees per pixel of the
+         * root tile in both directions.
+         */
+        private Request raster() {
+            return new Request(time, "/raster" + query(
+                "ullon", lon - viewWidth() / 2, "ullat", lat + viewHeight() / 2,
+                "lrlon", lon + viewWidth() / 2, "lrlat", lat - viewHeight() / 2,
+                "w", width, "h", height));
+        }
+
+        private double viewWidth() {
+            return ROOT_WIDTH * width / (MapServer.TILE_SIZE << zoom);
+        }
+
+        private double viewHeight() {
+            return ROOT_HEIGHT * height / (MapServer.TILE_SIZE << zoom);
+        }
+
+        private double pointLon() {
+            return lon + (random.nextDouble() - 0.5) * viewWidth();
+        }
+
+        private double pointLat() {
+            return lat + (random.nextDouble() - 0.5) * viewHeight();
+        }
+    }
+
+    /**
+     * Returns a query string of names and values, URL encoded.
+     */
+    private static String query(Object... namesAndValues) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (int i = 0; i < namesAndValues.length; i += 2) {
+                sb.append(i == 0 ? '?' : '&').append(namesAndValues[i]).append('=');
+                Object value = namesAndValues[i + 1];
+                sb.append(value instanceof Double
+                    ? String.format(Locale.ROOT, "%.7f", (Double) value)
+                    : URLEncoder.encode(String.valueOf(value), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the requests a MapServer receives to a trace file, with their times from the
+     * first one.
+     */
+    static final class Recorder implements Closeable {
+        private final BufferedWriter writer;
+        private long start = -1;
+
+        Recorder(Path file) throws IOException {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            writer.write("# BearMaps traffic trace: offset in ms, then path and query.\n");
+        }
+
+        /**
+         * Record a request.
+         *
+         * @param path  The path of the request.
+         * @param query The query string of the request, or null.
+         */
+        synchronized void record(String path, String query) throws IOException {
+            long now = System.currentTimeMillis();
+            if (start < 0) {
+                start = now;
+            }
+            writer.write((now - start) + " " + path + (query == null ? "" : "?" + query)
+                + "\n");
+            writer.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,615 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders map tiles deeper than the pre-rendered ones from the roads of the graph, under the
+ * same file names, e.g. "d9_x300_y421.png", so TileCache can hand it the tiles it has no
+ * file for.
+ * <p>
+ * Every edge of the compact graph is drawn as a road as wide as its highway type is in
+ * meters, and way names are written along edges that are long enough. The edges are indexed
+ * by the cells of the tiles of INDEX_DEPTH, each listing the edges whose road reaches into
+ * it, so a deeper tile, which lies inside one cell, only looks at the edges of that cell.
+ * <p>
+ * Tiles are rendered on a pool of workers, and a request for a tile that is already being
+ * rendered waits for that rendering instead of starting another. Rendered tiles are kept as
+ * PNGs in a folder on disk of at most a number of bytes, evicting the least recently used
+ * ones; TileCache keeps the decoded tiles in memory on top of that.
+ */
+public class VectorTileRenderer {
+    /**
+     * The depth of the cells of the edge index, and the shallowest depth rendered.
+     */
+    static final int INDEX_DEPTH = 7;
+    private static final int PNG_COMPRESSION_LEVEL = 6;
+    private static final double METERS_PER_MILE = 1609.344;
+    private static final Color BACKGROUND = new Color(233, 227, 212);
+    private static final Color CASING = new Color(160, 150, 130);
+    private static final Color LABEL = new Color(50, 50, 50);
+    private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 13);
+    /**
+     * The space between a label and the ends of the part of its edge in the tile, in pixels.
+     */
+    private static final int LABEL_PADDING = 8;
+    /**
+     * The width of the casing on either side of a road, in pixels.
+     */
+    private static final float CASING_PX = 1;
+    /**
+     * Roads reach this many meters further than half their width, for the casing.
+     */
+    private static final double MARGIN_METERS = 1;
+    /**
+     * The highway types, from the most major to the most minor, with the width of their
+     * roads in meters and their colors. Other types are drawn last, as DEFAULT_ROAD.
+     */
+    private static final String[] ROAD_TYPES = {
+        "motorway", "trunk", "primary", "secondary", "tertiary", "motorway_link",
+        "trunk_link", "primary_link", "secondary_link", "tertiary_link", "unclassified",
+        "residential", "living_street"
+    };
+    private static final double[] ROAD_METERS = {14, 12, 10, 9, 8, 6, 6, 5, 5, 5, 6, 6, 5, 5};
+    private static final Color[] ROAD_COLORS = {
+        new Color(232, 146, 162), new Color(249, 178, 156), new Color(252, 214, 164),
+        new Color(246, 250, 187), Color.WHITE, new Color(232, 146, 162),
+        new Color(249, 178, 156), new Color(252, 214, 164), new Color(246, 250, 187),
+        Color.WHITE, Color.WHITE, Color.WHITE, new Color(240, 240, 240), Color.WHITE
+    };
+    private static final int DEFAULT_ROAD = ROAD_TYPES.length;
+    private static final Map<String, Integer> ROAD_RANKS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < ROAD_TYPES.length; i++) {
+            ROAD_RANKS.put(ROAD_TYPES[i], i);
+        }
+    }
+
+    private static final double ROOT_WIDTH = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+    private static final double ROOT_HEIGHT = MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT;
+    private static final int CELLS = 1 << INDEX_DEPTH;
+
+    private final CompactGraph graph;
+    /**
+     * Meters per degree of longitude and of latitude, in the middle of the map.
+     */
+    private final double lonMeters, latMeters;
+    /**
+     * Every edge to draw, once, in drawing order: the most minor roads first. Edge i goes
+     * from vertex sources[i] along edge edges[i] of the compact graph, has road rank
+     * ranks[i], and its road lies within {minLon, minLat, maxLon, maxLat} bounds[i].
+     */
+    private final int[] sources, edges, ranks;
+    private final double[][] bounds;
+    /**
+     * The edge index: cell y * CELLS + x of the tiles of INDEX_DEPTH holds the edges
+     * cellEdges[cellOffsets[cell]] to cellEdges[cellOffsets[cell + 1] - 1], in drawing order.
+     */
+    private final int[] cellOffsets, cellEdges;
+
+    private final File folder;
+    private final long maxDiskBytes;
+    private final ExecutorService workers;
+    private final Map<String, CompletableFuture<BufferedImage>> rendering =
+        new ConcurrentHashMap<>();
+    /**
+     * The sizes of the tiles in the folder, in least recently used order.
+     */
+    private final LinkedHashMap<String, Long> onDisk = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+    private long hits, misses, collapsed, evictions;
+
+    /**
+     * Create a renderer for the roads of a graph.
+     *
+     * @param graph        The graph to draw.
+     * @param folder       The folder to keep rendered tiles in. Tiles in it from before
+     *                     validAfter are deleted.
+     * @param maxDiskBytes The most bytes the tiles in the folder may take.
+     * @param validAfter   When the data of the graph last changed, in milliseconds since the
+     *                     epoch.
+     * @param threads      The number of workers that render tiles.
+     */
+    VectorTileRenderer(CompactGraph graph, File folder, long maxDiskBytes, long validAfter,
+                       int threads) {
+        this.graph = graph;
+        this.folder = folder;
+        this.maxDiskBytes = maxDiskBytes;
+        double midLon = (MapServer.ROOT_ULLON + MapServer.ROOT_LRLON) / 2;
+        double midLat = (MapServer.ROOT_ULLAT + MapServer.ROOT_LRLAT) / 2;
+        lonMeters = METERS_PER_MILE * GraphDB.distance(MapServer.ROOT_ULLON, midLat,
+            MapServer.ROOT_LRLON, midLat) / ROOT_WIDTH;
+        latMeters = METERS_PER_MILE * GraphDB.distance(midLon, MapServer.ROOT_LRLAT, midLon,
+            MapServer.ROOT_ULLAT) / ROOT_HEIGHT;
+
+        List<int[]> drawn = new ArrayList<>();
+        for (int v = 0; v < graph.size(); v++) {
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                if (v < graph.targets[e]) {
+                    drawn.add(new int[]{v, e, rank(e)});
+                }
+            }
+        }
+        /* A stable sort, so edges of a rank keep the order of the graph. */
+        drawn.sort(Comparator.comparingInt((int[] d) -> -d[2]));
+        int n = drawn.size();
+        sources = new int[n];
+        edges = new int[n];
+        ranks = new int[n];
+        bounds = new double[n][];
+        for (int i = 0; i < n; i++) {
+            sources[i] = drawn.get(i)[0];
+            edges[i] = drawn.get(i)[1];
+            ranks[i] = drawn.get(i)[2];
+            bounds[i] = roadBounds(sources[i], graph.targets[edges[i]], ranks[i]);
+        }
+
+        cellOffsets = new int[CELLS * CELLS + 1];
+        for (int i = 0; i < n; i++) {
+            int[] cells = cellRange(bounds[i]);
+            for (int y = cells[1]; y <= cells[3]; y++) {
+                for (int x = cells[0]; x <= cells[2]; x++) {
+                    cellOffsets[y * CELLS + x + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < CELLS * CELLS; c++) {
+            cellOffsets[c + 1] += cellOffsets[c];
+        }
+        cellEdges = new int[cellOffsets[CELLS * CELLS]];
+        int[] next = Arrays.copyOf(cellOffsets, CELLS * CELLS);
+        for (int i = 0; i < n; i++) {
+            int[] cells = cellRange(bounds[i]);
+            for (int y = cells[1]; y <= cells[3]; y++) {
+                for (int x = cells[0]; x <= cells[2]; x++) {
+                    cellEdges[next[y * CELLS + x]++] = i;
+                }
+            }
+        }
+
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "vector-tile-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadFolder(validAfter);
+    }
+
+    /**
+     * Returns the rank of the highway type of an edge's way, its index in ROAD_TYPES, or
+     * DEFAULT_ROAD.
+     */
+    private int rank(int e) {
+        return ROAD_RANKS.getOrDefault(graph.ways[graph.edgeWays[e]].highway, DEFAULT_ROAD);
+    }
+
+    /**
+     * Returns the bounds of the road of the edge between v and w, as {minLon, minLat,
+     * maxLon, maxLat}.
+     */
+    private double[] roadBounds(int v, int w, int rank) {
+        double margin = ROAD_METERS[rank] / 2 + MARGIN_METERS;
+        return new double[]{
+            Math.min(graph.lons[v], graph.lons[w]) - margin / lonMeters,
+            Math.min(graph.lats[v], graph.lats[w]) - margin / latMeters,
+            Math.max(graph.lons[v], graph.lons[w]) + margin / lonMeters,
+            Math.max(graph.lats[v], graph.lats[w]) + margin / latMeters
+        };
+    }
+
+    /**
+     * Returns the cells of the edge index that bounds overlap, as {xMin, yMin, xMax, yMax}.
+     */
+    private static int[] cellRange(double[] b) {
+        return new int[]{
+            cell((b[0] - MapServer.ROOT_ULLON) / ROOT_WIDTH),
+            cell((MapServer.ROOT_ULLAT - b[3]) / ROOT_HEIGHT),
+            cell((b[2] - MapServer.ROOT_ULLON) / ROOT_WIDTH),
+            cell((MapServer.ROOT_ULLAT - b[1]) / ROOT_HEIGHT)
+        };
+    }
+
+    /**
+     * Returns the cell of a fraction of the map's width or height, clamped to the map.
+     */
+    private static int cell(double fraction) {
+        return Math.min(Math.max((int) Math.floor(fraction * CELLS), 0), CELLS - 1);
+    }
+
+    /**
+     * Returns the edges whose road reaches into a tile, in drawing order, as the vertex they
+     * are drawn from and their index in the compact graph, {v, e}.
+     *
+     * @param depth The depth of the tile, at least INDEX_DEPTH.
+     * @param x     The column of the tile.
+     * @param y     The row of the tile.
+     */
+    List<int[]> visibleEdges(int depth, int x, int y) {
+        List<int[]> visible = new ArrayList<>();
+        for (int i : visible(depth, x, y)) {
+            visible.add(new int[]{sources[i], edges[i]});
+        }
+        return visible;
+    }
+
+    private int[] visible(int depth, int x, int y) {
+        int shift = depth - INDEX_DEPTH;
+        int cell = (y >> shift) * CELLS + (x >> shift);
+        double lonSpan = ROOT_WIDTH / (1 << depth);
+        double latSpan = ROOT_HEIGHT / (1 << depth);
+        double ullon = MapServer.ROOT_ULLON + x * lonSpan;
+        double ullat = MapServer.ROOT_ULLAT - y * latSpan;
+        int[] visible = new int[cellOffsets[cell + 1] - cellOffsets[cell]];
+        int count = 0;
+        for (int j = cellOffsets[cell]; j < cellOffsets[cell + 1]; j++) {
+            double[] b = bounds[cellEdges[j]];
+            if (b[0] <= ullon + lonSpan && b[2] >= ullon && b[1] <= ullat
+                && b[3] >= ullat - latSpan) {
+                visible[count++] = cellEdges[j];
+            }
+        }
+        return Arrays.copyOf(visible, count);
+    }
+
+    /**
+     * Returns a rendered tile.
+     *
+     * @param depth The depth of the tile, at least INDEX_DEPTH.
+     * @param x     The column of the tile.
+     * @param y     The row of the tile.
+     * @return The tile, a TYPE_INT_RGB image of TILE_SIZE by TILE_SIZE pixels.
+     */
+    BufferedImage render(int depth, int x, int y) {
+        int size = MapServer.TILE_SIZE;
+        double lonSpan = ROOT_WIDTH / (1 << depth);
+        double latSpan = ROOT_HEIGHT / (1 << depth);
+        double ullon = MapServer.ROOT_ULLON + x * lonSpan;
+        double ullat = MapServer.ROOT_ULLAT - y * latSpan;
+        double pxPerLon = size / lonSpan;
+        double pxPerLat = size / latSpan;
+        double metersPerPx = lonSpan * lonMeters / size;
+
+        BufferedImage tile = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+            RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, size, size);
+
+        int[] visible = visible(depth, x, y);
+        double[][] lines = new double[visible.length][];
+        for (int j = 0; j < visible.length; j++) {
+            int v = sources[visible[j]];
+            int w = graph.targets[edges[visible[j]]];
+            lines[j] = new double[]{
+                (graph.lons[v] - ullon) * pxPerLon, (ullat - graph.lats[v]) * pxPerLat,
+                (graph.lons[w] - ullon) * pxPerLon, (ullat - graph.lats[w]) * pxPerLat
+            };
+        }
+        /* All casings first, so that roads join without their casings across them. */
+        BasicStroke[] casings = new BasicStroke[DEFAULT_ROAD + 1];
+        BasicStroke[] fills = new BasicStroke[DEFAULT_ROAD + 1];
+        for (int r = 0; r <= DEFAULT_ROAD; r++) {
+            float width = (float) Math.max(1, ROAD_METERS[r] / metersPerPx);
+            casings[r] = new BasicStroke(width + 2 * CASING_PX, BasicStroke.CAP_ROUND,
+                BasicStroke.JOIN_ROUND);
+            fills[r] = new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        }
+        Line2D.Double line = new Line2D.Double();
+        g.setColor(CASING);
+        for (int j = 0; j < visible.length; j++) {
+            line.setLine(lines[j][0], lines[j][1], lines[j][2], lines[j][3]);
+            g.setStroke(casings[ranks[visible[j]]]);
+            g.draw(line);
+        }
+        for (int j = 0; j < visible.length; j++) {
+            line.setLine(lines[j][0], lines[j][1], lines[j][2], lines[j][3]);
+            g.setStroke(fills[ranks[visible[j]]]);
+            g.setColor(ROAD_COLORS[ranks[visible[j]]]);
+            g.draw(line);
+        }
+        drawLabels(g, visible, lines);
+        g.dispose();
+        return tile;
+    }
+
+    /**
+     * Write the name of each way once, along the first of its edges, most major first, that
+     * is long enough and leaves the whole label inside the tile.
+     */
+    private void drawLabels(Graphics2D g, int[] visible, double[][] lines) {
+        int size = MapServer.TILE_SIZE;
+        g.setFont(LABEL_FONT);
+        g.setColor(LABEL);
+        FontMetrics metrics = g.getFontMetrics();
+        int height = metrics.getAscent() + metrics.getDescent();
+        Set<String> labelled = new HashSet<>();
+        for (int j = visible.length - 1; j >= 0; j--) {
+            String name = graph.ways[graph.edgeWays[edges[visible[j]]]].name;
+            if (name.isEmpty() || labelled.contains(name)) {
+                continue;
+            }
+            double[] clipped = clip(lines[j], size);
+            if (clipped == null) {
+                continue;
+            }
+            double dx = clipped[2] - clipped[0];
+            double dy = clipped[3] - clipped[1];
+            int width = metrics.stringWidth(name);
+            if (Math.hypot(dx, dy) < width + 2 * LABEL_PADDING) {
+                continue;
+            }
+            /* Keep the text upright. */
+            double angle = Math.atan2(dy, dx);
+            if (angle > Math.PI / 2) {
+                angle -= Math.PI;
+            } else if (angle < -Math.PI / 2) {
+                angle += Math.PI;
+            }
+            double cx = (clipped[0] + clipped[2]) / 2;
+            double cy = (clipped[1] + clipped[3]) / 2;
+            double cos = Math.abs(Math.cos(angle));
+            double sin = Math.abs(Math.sin(angle));
+            double halfWidth = cos * width / 2 + sin * height / 2;
+            double halfHeight = sin * width / 2 + cos * height / 2;
+            if (cx - halfWidth < 0 || cx + halfWidth > size || cy - halfHeight < 0
+                || cy + halfHeight > size) {
+                continue;
+            }
+            AffineTransform transform = g.getTransform();
+            g.translate(cx, cy);
+            g.rotate(angle);
+            g.drawString(name, -width / 2f,
+                (metrics.getAscent() - metrics.getDescent()) / 2f);
+            g.setTransform(transform);
+            labelled.add(name);
+        }
+    }
+
+    /**
+     * Returns the part of a line {x1, y1, x2, y2} inside the square from 0 to size, or null
+     * if it misses the square, by Liang-Barsky clipping.
+     */
+    static double[] clip(double[] line, double size) {
+        double dx = line[2] - line[0];
+        double dy = line[3] - line[1];
+        double t0 = 0;
+        double t1 = 1;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {line[0], size - line[0], line[1], size - line[1]};
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return null;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
+                }
+            }
+        }
+        if (t0 > t1) {
+            return null;
+        }
+        return new double[]{line[0] + t0 * dx, line[1] + t0 * dy, line[0] + t1 * dx,
+            line[1] + t1 * dy};
+    }
+
+    /**
+     * Returns a tile from the folder, or else renders it on a worker and puts it in the
+     * folder. Waits for the tile if another thread is already getting it.
+     *
+     * @param name The file name of the tile, e.g. "d9_x300_y421.png".
+     * @return The tile, a TYPE_INT_RGB image, or null if the name is not that of a tile of
+     * INDEX_DEPTH or deeper, or it could not be rendered.
+     */
+    BufferedImage get(String name) {
+        int[] tile = parse(name);
+        if (tile == null) {
+            return null;
+        }
+        CompletableFuture<BufferedImage> mine = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> pending = rendering.putIfAbsent(name, mine);
+        if (pending != null) {
+            synchronized (this) {
+                collapsed++;
+            }
+            return join(pending);
+        }
+        /* The tile is removed from rendering before it is completed, so that later requests
+         * read it from the folder rather than wait for a finished rendering. */
+        workers.execute(() -> {
+            BufferedImage image;
+            try {
+                image = load(name, tile);
+            } catch (RuntimeException e) {
+                rendering.remove(name);
+                mine.completeExceptionally(e);
+                return;
+            }
+            rendering.remove(name);
+            mine.complete(image);
+        });
+        return join(mine);
+    }
+
+    private static BufferedImage join(CompletableFuture<BufferedImage> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Returns {depth, x, y} of a tile file name of INDEX_DEPTH or deeper, or null.
+     */
+    static int[] parse(String name) {
+        if (!name.startsWith("d") || !name.endsWith(".png")) {
+            return null;
+        }
+        String[] parts = name.substring(1, name.length() - ".png".length()).split("_");
+        if (parts.length != 3 || !parts[1].startsWith("x") || !parts[2].startsWith("y")) {
+            return null;
+        }
+        try {
+            int depth = Integer.parseInt(parts[0]);
+            int x = Integer.parseInt(parts[1].substring(1));
+            int y = Integer.parseInt(parts[2].substring(1));
+            if (depth < INDEX_DEPTH || depth > 30 || x < 0 || y < 0 || x >= 1 << depth
+                || y >= 1 << depth) {
+                return null;
+            }
+            return new int[]{depth, x, y};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private BufferedImage load(String name, int[] tile) {
+        boolean stored;
+        synchronized (this) {
+            stored = onDisk.get(name) != null;
+        }
+        if (stored) {
+            BufferedImage image = TileCache.readTile(new File(folder, name));
+            if (image != null) {
+                synchronized (this) {
+                    hits++;
+                }
+                return image;
+            }
+        }
+        BufferedImage image = render(tile[0], tile[1], tile[2]);
+        synchronized (this) {
+            misses++;
+        }
+        store(name, image);
+        return image;
+    }
+
+    /**
+     * Write a tile to the folder, and delete the least recently used tiles if they take more
+     * than maxDiskBytes. The tile is written to a temporary file first and then moved into
+     * place, so a tile being written is never read half-finished.
+     */
+    private void store(String name, BufferedImage image) {
+        File file = new File(folder, name);
+        File tmp = new File(folder, name + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            PngEncoder.write(image, PNG_COMPRESSION_LEVEL, out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        for (String evicted : add(name, file.length())) {
+            new File(folder, evicted).delete();
+        }
+    }
+
+    /**
+     * Count a tile of the folder, and returns the names of the tiles to delete to make room.
+     */
+    private synchronized List<String> add(String name, long size) {
+        Long old = onDisk.put(name, size);
+        diskBytes += size - (old == null ? 0 : old);
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> lru = onDisk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && lru.hasNext()) {
+            Map.Entry<String, Long> entry = lru.next();
+            lru.remove();
+            diskBytes -= entry.getValue();
+            evictions++;
+            evicted.add(entry.getKey());
+        }
+        return evicted;
+    }
+
+    /**
+     * Create the folder if needed, delete its tiles from before validAfter and left over
+     * temporary files, and count the others, oldest first.
+     */
+    private void loadFolder(long validAfter) {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            System.out.println("Cannot create the vector tile folder " + folder);
+            return;
+        }
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            String name = file.getName();
+            if (parse(name) == null || file.lastModified() < validAfter) {
+                if (name.endsWith(".png") || name.endsWith(".png.tmp")) {
+                    file.delete();
+                }
+                continue;
+            }
+            for (String evicted : add(name, file.length())) {
+                new File(folder, evicted).delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the counters of this renderer: "tiles" and "bytes" in the folder, "hits" for
+     * tiles read from the folder, "misses" for tiles rendered, "collapsed" for requests that
+     * waited for another request's tile, and "evictions" from the folder.
+     */
+    synchronized Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("tiles", (long) onDisk.size());
+        stats.put("bytes", diskBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("collapsed", collapsed);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+}
@@ -42,7 +42,7 @@ $(function() {
     /* Starting hyper-parameters #machinelearning */
     const zoom_delta = 0.04;
     const base_move_delta = 0.03;
-    const max_level = 7;
+    const max_level = 10;
     const min_level = 2; // Level limits based on pulled data
     var wdpp = 0.00004291534423828125; // Starting wdpp for level 3
     var hdpp = 0.00003388335630702399; // Starting hdpp for level 3
@@ -102,54 +102,57 @@ $(function() {
     }
 
     function updateImg(successCallback) {
-        /* Synchronous ajax call for image update.
-           Could be async for better experience but then user spam locks up the server.
-           Uses a small setTimeout since synchronous AJAX freezes UI updates, including
-           updates which are called before ajax() is called #sigh #why #justjavascriptthings */
+        /* Asynchronous fetch of the raw PNG. The raster bounds come back as X- headers,
+           so the image is neither Base64 encoded nor wrapped in JSON. */
         $loadingStatus.show();
         getInProgress = true;
-        $.get({
-            async: true,
-            url: raster_server,
-            data: params,
-            success: function(data) {
-                console.log(data);
-                if (data.query_success) {
-                    $loadingStatus.hide();
-                    map.src = 'data:image/png;base64,' + data.b64_encoded_image_data;
-                    console.log('Updating map with image length: ' +
-                                data.b64_encoded_image_data.length);
-                    ullon_bound = data.raster_ul_lon;
-                    ullat_bound = data.raster_ul_lat;
-                    lrlon_bound = data.raster_lr_lon;
-                    lrlat_bound = data.raster_lr_lat;
-                    current_level = data.depth;
-                    img_w = data.raster_width;
-                    img_h = data.raster_height;
-                    wdpp = (lrlon_bound - ullon_bound) / img_w;
-                    hdpp = (ullat_bound - lrlat_bound) / img_h;
-                    // Compute initial transform
-                    tx = - (params.ullon - ullon_bound) * (1 / wdpp);
-                    ty = (params.ullat - ullat_bound) * (1 / hdpp);
-                    rtx = (route_params.end_lon - params.ullon) * (1 / wdpp) - dest.width / 2 - tx;
-                    rty = - (route_params.end_lat - params.ullat) * (1 / hdpp) - dest.height - ty;
-                    updateMarkers();
-                    getInProgress = false;
-                    if (successCallback) {
-                        successCallback();
-                    }
-                } else {
-                    $loadingstatus.hide();
+        fetch(raster_server + '.png?' + $.param(params)).then(function(response) {
+            if (!response.ok) {
+                throw new Error(response.statusText);
+            }
+            if (response.headers.get('X-query-success') !== 'true') {
+                /* A view off the map fails; release the lock so that zoom(), which only
+                   runs while no request is in progress, can bring the user back. */
+                getInProgress = false;
+                $loadingStatus.hide();
+                return;
+            }
+            return response.blob().then(function(png) {
+                const header = function(name) {
+                    return Number(response.headers.get('X-' + name));
+                };
+                $loadingStatus.hide();
+                if (map.src.startsWith('blob:')) {
+                    URL.revokeObjectURL(map.src);
                 }
-            },
-            error: function() {
+                map.src = URL.createObjectURL(png);
+                console.log('Updating map with image length: ' + png.size);
+                ullon_bound = header('raster-ul-lon');
+                ullat_bound = header('raster-ul-lat');
+                lrlon_bound = header('raster-lr-lon');
+                lrlat_bound = header('raster-lr-lat');
+                current_level = header('depth');
+                img_w = header('raster-width');
+                img_h = header('raster-height');
+                wdpp = (lrlon_bound - ullon_bound) / img_w;
+                hdpp = (ullat_bound - lrlat_bound) / img_h;
+                // Compute initial transform
+                tx = - (params.ullon - ullon_bound) * (1 / wdpp);
+                ty = (params.ullat - ullat_bound) * (1 / hdpp);
+                rtx = (route_params.end_lon - params.ullon) * (1 / wdpp) - dest.width / 2 - tx;
+                rty = - (route_params.end_lat - params.ullat) * (1 / hdpp) - dest.height - ty;
+                updateMarkers();
                 getInProgress = false;
-                $errorStatus.show();
-                setTimeout(function() {
-                    $errorStatus.fadeOut();
-                }, 4000);
-            },
-            dataType: 'json'
+                if (successCallback) {
+                    successCallback();
+                }
+            });
+        }).catch(function() {
+            getInProgress = false;
+            $errorStatus.show();
+            setTimeout(function() {
+                $errorStatus.fadeOut();
+            }, 4000);
         });
     }
 
@@ -170,9 +173,12 @@ $(function() {
         $.get({
             async: true,
             url: route_server,
-            data: route_params,
+            data: $.extend({}, route_params, params.route_token ?
+                { route_token: params.route_token } : {}),
             success: function(data) {
                 data = JSON.parse(data);
+                // raster requests carry the token so that they draw this user's route
+                params.route_token = data.route_token;
                 updateImg();
                 if (data.directions_success) {
                     $directionsText.html(data.directions);
@@ -407,7 +413,9 @@ $(function() {
         $.get({
             async: true,
             url: clear_route,
+            data: params.route_token ? { route_token: params.route_token } : {},
             success: function() {
+                delete params.route_token;
                 dest.style.visibility = 'hidden';
                 $directionsText.html('No routing directions to display.');
                 update();
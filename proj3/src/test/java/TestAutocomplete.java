@@ -0,0 +1,93 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the ranked completions of Autocomplete against sorting every matching name.
+ */
+public class TestAutocomplete {
+    private static final String ALPHABET = "ab c";
+
+    @Test
+    public void testAgainstSorting() {
+        Random random = new Random(61);
+        PrefixIndex<GraphDB.TrieNode> index = new PrefixIndex<>();
+        Map<String, Integer> frequencies = new HashMap<>();
+        Map<String, List<double[]>> points = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 1 + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+                name.append(random.nextInt(4) == 0 ? Character.toUpperCase(c) : c);
+            }
+            String n = name.toString();
+            double lon = random.nextDouble();
+            double lat = 38 + random.nextDouble();
+            String key = GraphDB.cleanString(n);
+            GraphDB.TrieNode node = index.get(key);
+            if (node == null) {
+                node = new GraphDB.TrieNode();
+                index.put(key, node);
+            }
+            if (!node.names.contains(n)) {
+                node.names.add(n);
+                Collections.sort(node.names);
+            }
+            node.locations.add(GraphDB.location(i, n, lat, lon));
+            frequencies.merge(n, 1, Integer::sum);
+            points.computeIfAbsent(n, x -> new ArrayList<>()).add(new double[]{lon, lat});
+        }
+        index.freeze();
+        Autocomplete autocomplete = new Autocomplete(index);
+
+        for (int q = 0; q < 300; q++) {
+            StringBuilder prefix = new StringBuilder();
+            int prefixLength = random.nextInt(3);
+            for (int j = 0; j < prefixLength; j++) {
+                prefix.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            int limit = 1 + random.nextInt(3 * Autocomplete.CACHED);
+            double lon = random.nextDouble();
+            double lat = 38 + random.nextDouble();
+            List<String> all = new ArrayList<>();
+            for (GraphDB.TrieNode node : index.valuesWithPrefix(prefix.toString())) {
+                all.addAll(node.names);
+            }
+            for (Autocomplete.Ranking ranking : Autocomplete.Ranking.values()) {
+                Map<String, Integer> positions = new HashMap<>();
+                for (String n : all) {
+                    positions.put(n, positions.size());
+                }
+                Comparator<String> order;
+                if (ranking == Autocomplete.Ranking.FREQUENCY) {
+                    order = Comparator.comparing((String n) -> -frequencies.get(n));
+                } else if (ranking == Autocomplete.Ranking.LENGTH) {
+                    order = Comparator.comparing(String::length);
+                    order = order.thenComparing(n -> -frequencies.get(n));
+                } else {
+                    order = Comparator.comparing((String n) -> {
+                        double closest = Double.POSITIVE_INFINITY;
+                        for (double[] p : points.get(n)) {
+                            closest = Math.min(closest, GraphDB.distance(lon, lat, p[0], p[1]));
+                        }
+                        return closest;
+                    });
+                }
+                List<String> expected = new ArrayList<>(all);
+                expected.sort(order.thenComparing(positions::get));
+                expected = expected.subList(0, Math.min(limit, expected.size()));
+                assertEquals(ranking + " " + prefix + " " + limit, expected,
+                    autocomplete.complete(prefix.toString(), limit, ranking, lon, lat));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the distance matrix against one A* search per pair, on the Berkeley graph.
+ */
+public class TestDistanceMatrix {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final double DELTA = 1e-9;
+    private static CompactGraph c;
+
+    @BeforeClass
+    public static void setUp() {
+        GraphDB graph = new GraphDB(OSM_DB_PATH);
+        graph.freeze();
+        c = graph.compact();
+    }
+
+    /**
+     * Returns the sum of the weights of the edges along a path of node ids.
+     */
+    private static double pathWeight(List<Long> path, double[] weights) {
+        double sum = 0;
+        for (int k = 1; k < path.size(); k++) {
+            int v = c.index(path.get(k - 1));
+            int w = c.index(path.get(k));
+            double edge = Double.POSITIVE_INFINITY;
+            for (int e = c.offsets[v]; e < c.offsets[v + 1]; e++) {
+                if (c.targets[e] == w) {
+                    edge = Math.min(edge, weights[e]);
+                }
+            }
+            sum += edge;
+        }
+        return sum;
+    }
+
+    private static int[] randomVertices(Random random, int count) {
+        int[] vertices = new int[count];
+        for (int i = 0; i < count; i++) {
+            vertices[i] = random.nextInt(c.size());
+        }
+        return vertices;
+    }
+
+    private static void checkAgainstAStar(int[] sources, int[] destinations, boolean byTime) {
+        double[] weights = byTime ? c.times : c.lengths;
+        AStarRouting astar = new AStarRouting(c, weights,
+            byTime ? Heuristic.travelTime(c) : Heuristic.greatCircle(c));
+        DistanceMatrix m = new DistanceMatrix(c, byTime, sources, destinations);
+        assertEquals(sources.length, m.rows);
+        assertEquals(destinations.length, m.columns);
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < destinations.length; j++) {
+                List<Long> path = astar.shortestPath(sources[i], destinations[j]);
+                double expected = sources[i] == destinations[j] ? 0
+                    : path.isEmpty() ? Double.POSITIVE_INFINITY : pathWeight(path, weights);
+                double actual = byTime ? m.durations[i * m.columns + j]
+                    : m.distances[i * m.columns + j];
+                assertEquals(expected, actual, DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testOneToMany() {
+        Random random = new Random(18);
+        int[] destinations = randomVertices(random, 40);
+        /* Repeated stops get the same distances. */
+        destinations[7] = destinations[3];
+        checkAgainstAStar(randomVertices(random, 1), destinations, false);
+        checkAgainstAStar(randomVertices(random, 1), destinations, true);
+    }
+
+    @Test
+    public void testManyToFew() {
+        /* More sources than destinations, which is searched from the destinations. */
+        Random random = new Random(61);
+        checkAgainstAStar(randomVertices(random, 12), randomVertices(random, 3), false);
+        checkAgainstAStar(randomVertices(random, 12), randomVertices(random, 3), true);
+    }
+
+    @Test
+    public void testDistancesAndDurationsOfTheSamePaths() {
+        Random random = new Random(2018);
+        int[] points = randomVertices(random, 8);
+        DistanceMatrix shortest = new DistanceMatrix(c, false, points, points);
+        DistanceMatrix fastest = new DistanceMatrix(c, true, points, points);
+        for (int k = 0; k < points.length * points.length; k++) {
+            assertEquals(shortest.distances[k], shortest.distances[k % points.length
+                * points.length + k / points.length], 1e-6);
+            assertTrue(shortest.distances[k] <= fastest.distances[k] + DELTA);
+            assertTrue(fastest.durations[k] <= shortest.durations[k] + DELTA);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests FuzzySearch against computing the edit distance to every prefix of every key.
+ */
+public class TestFuzzySearch {
+    private static final String ALPHABET = "abc ";
+
+    private static String randomString(Random random, int maxLength) {
+        StringBuilder s = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            s.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return s.toString();
+    }
+
+    private static int editDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    int substitute = d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                    d[i][j] = Math.min(substitute, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    @Test
+    public void testAgainstBruteForce() {
+        Random random = new Random(61);
+        PrefixIndex<Integer> index = new PrefixIndex<>();
+        for (int i = 0; i < 400; i++) {
+            index.put(randomString(random, 8), i);
+        }
+        index.freeze();
+        List<String> keys = index.keys();
+
+        for (int q = 0; q < 300; q++) {
+            String query = randomString(random, 6);
+            int maxEdits = random.nextInt(3);
+            List<String> expected = new ArrayList<>();
+            for (String key : keys) {
+                int best = Integer.MAX_VALUE;
+                for (int t = 0; t <= key.length(); t++) {
+                    best = Math.min(best, editDistance(query, key.substring(0, t)));
+                }
+                if (best <= maxEdits) {
+                    expected.add(key + "/" + best);
+                }
+            }
+            List<String> actual = new ArrayList<>();
+            for (FuzzySearch.Match match : FuzzySearch.search(index, query, maxEdits)) {
+                actual.add(index.key(match.key) + "/" + match.edits);
+            }
+            assertEquals(query + " " + maxEdits, expected, actual);
+        }
+    }
+
+    @Test
+    public void testMisspelledPrefix() {
+        PrefixIndex<Integer> index = new PrefixIndex<>();
+        index.put("telegraph cafe", 0);
+        index.put("telegraph books", 1);
+        index.put("shattuck", 2);
+        index.freeze();
+        assertEquals(0, FuzzySearch.search(index, "telgraph", 0).size());
+        List<FuzzySearch.Match> matches = FuzzySearch.search(index, "telgraph", 1);
+        assertEquals(2, matches.size());
+        assertEquals(1, matches.get(0).edits);
+        assertEquals(1, FuzzySearch.search(index, "shatuck", 1).size());
+    }
+}
@@ -1,9 +1,21 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * created by hug 4/9/2018
@@ -80,4 +92,92 @@ public class TestGraphBuildingTiny {
                 + "especially if your actual value is 46",
                 55L, graphTiny.closest(lon, lat));
     }
+
+    /** Freezing the graph into its compact layout must not change any query result. */
+    @Test
+    public void testFrozenLayout() {
+        GraphDB frozen = new GraphDB(OSM_DB_PATH_TINY);
+        frozen.freeze();
+        assertNull(frozen.getNode(63L));
+        assertEquals(7, TestGraphBuilding.countIterableItems(frozen.vertices()));
+        for (long v : graphTiny.vertices()) {
+            assertEquals(graphTiny.lon(v), frozen.lon(v), 0.0);
+            assertEquals(graphTiny.lat(v), frozen.lat(v), 0.0);
+            HashSet<Long> expected = new HashSet<>();
+            HashSet<Long> actual = new HashSet<>();
+            for (long w : graphTiny.adjacent(v)) {
+                expected.add(w);
+                assertEquals(graphTiny.way(v, w).name, frozen.way(v, w).name);
+            }
+            for (long w : frozen.adjacent(v)) {
+                actual.add(w);
+            }
+            assertEquals(expected, actual);
+        }
+        List<Long> route = Router.shortestPath(frozen, 0.4, 38.1, 0.4, 38.6);
+        assertEquals(Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6), route);
+        assertSame(frozen.way(63L, 66L), frozen.way(66L, 63L));
+    }
+
+    /** Travel times use the tagged speed, or the default speed of the highway type. */
+    @Test
+    public void testSpeeds() {
+        assertEquals(25, GraphBuildingHandler.parseSpeed("25 mph"));
+        assertEquals(31, GraphBuildingHandler.parseSpeed("50"));
+        assertEquals(0, GraphBuildingHandler.parseSpeed("signals"));
+
+        /* Every way of the tiny graph is an untagged residential street. */
+        CompactGraph c = graphTiny.compact();
+        for (int e = 0; e < c.targets.length; e++) {
+            assertEquals(c.lengths[e] / GraphBuildingHandler.defaultSpeed("residential"),
+                c.times[e], 1e-12);
+        }
+        assertEquals(GraphBuildingHandler.defaultSpeed("residential"), c.maxSpeed, 0);
+    }
+
+    /** Gzipped files are read like plain ones. */
+    @Test
+    public void testGzip() throws IOException {
+        File gz = File.createTempFile("tiny-clean", ".osm.xml.gz");
+        gz.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            Files.copy(Paths.get(OSM_DB_PATH_TINY), out);
+        }
+        GraphDB fromGzip = new GraphDB(gz.getPath());
+        for (long v : graphTiny.vertices()) {
+            assertEquals(graphTiny.lon(v), fromGzip.lon(v), 0.0);
+            assertEquals(graphTiny.lat(v), fromGzip.lat(v), 0.0);
+            assertEquals(graphTiny.adjacent(v), fromGzip.adjacent(v));
+        }
+        assertEquals(7, TestGraphBuilding.countIterableItems(fromGzip.vertices()));
+    }
+
+    /**
+     * Nodes outside valid ways become no vertices, but named ones are still locations. A node
+     * after the ways of an unsorted file is not missed.
+     */
+    @Test
+    public void testRoutableNodesOnly() throws IOException {
+        File osm = File.createTempFile("unsorted", ".osm.xml");
+        osm.deleteOnExit();
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<osm version=\"0.6\">\n"
+            + "<node id=\"1\" lat=\"38.0\" lon=\"0.1\"/>\n"
+            + "<node id=\"2\" lat=\"38.1\" lon=\"0.1\"><tag k=\"name\" v=\"Cafe\"/></node>\n"
+            + "<node id=\"3\" lat=\"38.2\" lon=\"0.1\"/>\n"
+            + "<way id=\"10\"><nd ref=\"1\"/><nd ref=\"4\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/></way>\n"
+            + "<way id=\"11\"><nd ref=\"2\"/><nd ref=\"3\"/>"
+            + "<tag k=\"building\" v=\"yes\"/></way>\n"
+            + "<node id=\"4\" lat=\"38.3\" lon=\"0.1\"/>\n"
+            + "</osm>\n";
+        Files.write(osm.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        GraphDB g = new GraphDB(osm.getPath());
+        HashSet<Long> vertices = new HashSet<>();
+        for (long v : g.vertices()) {
+            vertices.add(v);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(1L, 4L)), vertices);
+        assertEquals(1, g.getLocations("Cafe").size());
+        assertEquals(2L, g.getLocations("Cafe").get(0).get("id"));
+    }
 }
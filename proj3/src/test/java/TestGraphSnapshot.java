@@ -0,0 +1,112 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that a graph loaded from a GraphSnapshot answers like the graph parsed from XML, and
+ * that corrupted and stale snapshots are rejected.
+ */
+public class TestGraphSnapshot {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+    private static final String[] PREFIXES = {"", "t", "tel", "ca", "san p", "x"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        GraphDB parsed = new GraphDB(OSM_DB_PATH);
+        parsed.freeze();
+        File file = folder.newFile("berkeley.graph");
+        GraphSnapshot.save(parsed, new File(OSM_DB_PATH), file);
+        GraphDB loaded = GraphSnapshot.load(new File(OSM_DB_PATH), file);
+
+        CompactGraph p = parsed.compact();
+        CompactGraph l = loaded.compact();
+        assertArrayEquals(p.ids, l.ids);
+        assertArrayEquals(p.offsets, l.offsets);
+        assertArrayEquals(p.targets, l.targets);
+        assertArrayEquals(p.lengths, l.lengths, 0);
+        assertArrayEquals(p.times, l.times, 0);
+        assertEquals(p.maxSpeed, l.maxSpeed, 0);
+        for (int e = 0; e < p.targets.length; e++) {
+            assertEquals(p.ways[p.edgeWays[e]].name, l.ways[l.edgeWays[e]].name);
+        }
+
+        Random random = new Random(61);
+        for (int i = 0; i < 200; i++) {
+            double lon = MapServer.ROOT_ULLON
+                + random.nextDouble() * (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON);
+            double lat = MapServer.ROOT_LRLAT
+                + random.nextDouble() * (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT);
+            assertEquals(parsed.closest(lon, lat), loaded.closest(lon, lat));
+            assertEquals(parsed.closest(lon, lat, 5), loaded.closest(lon, lat, 5));
+        }
+        for (String prefix : PREFIXES) {
+            assertEquals(parsed.getLocationsByPrefix(prefix),
+                loaded.getLocationsByPrefix(prefix));
+            for (String name : parsed.getLocationsByPrefix(prefix)) {
+                assertEquals(parsed.getLocations(name), loaded.getLocations(name));
+            }
+        }
+    }
+
+    @Test
+    public void testCorrupted() throws IOException {
+        File source = tinySource();
+        GraphDB graph = GraphSnapshot.loadOrBuild(source.getPath(), snapshot());
+        assertTrue(snapshot().exists());
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot(), "rw")) {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 1);
+        }
+        assertRejected(source);
+
+        /* Falls back to the XML and writes a good snapshot again. */
+        GraphDB rebuilt = GraphSnapshot.loadOrBuild(source.getPath(), snapshot());
+        assertArrayEquals(graph.compact().ids, rebuilt.compact().ids);
+        GraphSnapshot.load(source, snapshot());
+    }
+
+    @Test
+    public void testStale() throws IOException {
+        File source = tinySource();
+        GraphSnapshot.loadOrBuild(source.getPath(), snapshot());
+        GraphSnapshot.load(source, snapshot());
+        assertTrue(source.setLastModified(source.lastModified() + 60000));
+        assertRejected(source);
+    }
+
+    private File tinySource() throws IOException {
+        File source = new File(folder.getRoot(), "tiny.osm.xml");
+        Files.copy(new File(OSM_DB_PATH_TINY).toPath(), source.toPath());
+        return source;
+    }
+
+    private File snapshot() {
+        return new File(folder.getRoot(), "tiny.graph");
+    }
+
+    private void assertRejected(File source) {
+        try {
+            GraphSnapshot.load(source, snapshot());
+            fail("Loaded a bad snapshot.");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks IndexedMinHeap against java.util.PriorityQueue on random operation sequences, and
+ * that a reset heap forgets the items of the previous search.
+ */
+public class TestIndexedMinHeap {
+    private static final int CAPACITY = 1000;
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(61);
+        IndexedMinHeap heap = new IndexedMinHeap();
+        for (int round = 0; round < 20; round++) {
+            heap.reset(CAPACITY);
+            double[] keys = new double[CAPACITY];
+            boolean[] removed = new boolean[CAPACITY];
+            PriorityQueue<Double> expected = new PriorityQueue<>();
+            for (int op = 0; op < 5000; op++) {
+                int v = random.nextInt(CAPACITY);
+                if (removed[v]) {
+                    continue;
+                }
+                double key = random.nextDouble() * 100;
+                if (!heap.contains(v)) {
+                    heap.insertOrDecrease(v, key);
+                    keys[v] = key;
+                    expected.add(key);
+                } else if (key < keys[v]) {
+                    heap.insertOrDecrease(v, key);
+                    expected.remove(keys[v]);
+                    keys[v] = key;
+                    expected.add(key);
+                } else {
+                    heap.insertOrDecrease(v, key);
+                    assertEquals(keys[v], heap.key(v), 0.0);
+                }
+                if (random.nextInt(3) == 0) {
+                    assertEquals(expected.poll(), heap.minKey(), 0.0);
+                    int min = heap.removeMin();
+                    removed[min] = true;
+                    assertFalse(heap.contains(min));
+                }
+                assertEquals(expected.size(), heap.size());
+            }
+        }
+    }
+
+    @Test
+    public void testReset() {
+        IndexedMinHeap heap = new IndexedMinHeap();
+        heap.reset(10);
+        heap.insertOrDecrease(3, 1.0);
+        heap.insertOrDecrease(7, 2.0);
+        heap.reset(10);
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(3));
+        heap.insertOrDecrease(7, 5.0);
+        assertEquals(5.0, heap.minKey(), 0.0);
+        assertEquals(7, heap.removeMin());
+        assertTrue(heap.isEmpty());
+    }
+}
@@ -0,0 +1,100 @@
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests isochrones on the Berkeley graph against the costs to every vertex.
+ */
+public class TestIsochrone {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final double DELTA = 1e-9;
+    private static CompactGraph c;
+    private static int[] all;
+
+    @BeforeClass
+    public static void setUp() {
+        GraphDB graph = new GraphDB(OSM_DB_PATH);
+        graph.freeze();
+        c = graph.compact();
+        all = new int[c.size()];
+        for (int v = 0; v < all.length; v++) {
+            all[v] = v;
+        }
+    }
+
+    private static void checkReached(int source, boolean byTime, double budget) {
+        DistanceMatrix toAll = new DistanceMatrix(c, byTime, new int[]{source}, all);
+        double[] expected = byTime ? toAll.durations : toAll.distances;
+        Isochrone isochrone = new Isochrone(c, byTime ? c.times : c.lengths, source, budget);
+
+        Set<Integer> reached = new HashSet<>();
+        for (int i = 0; i < isochrone.vertices.length; i++) {
+            int v = isochrone.vertices[i];
+            reached.add(v);
+            assertEquals(expected[v], isochrone.costs[i], DELTA);
+            if (i > 0) {
+                assertTrue(isochrone.costs[i - 1] <= isochrone.costs[i]);
+            }
+        }
+        int count = 0;
+        for (int v = 0; v < all.length; v++) {
+            if (expected[v] <= budget) {
+                count++;
+                assertTrue(reached.contains(v));
+            }
+        }
+        assertEquals(count, reached.size());
+        assertEquals(source, isochrone.vertices[0]);
+    }
+
+    @Test
+    public void testReachedVertices() {
+        Random random = new Random(19);
+        for (int i = 0; i < 5; i++) {
+            int source = random.nextInt(c.size());
+            checkReached(source, false, 0.5 * i);
+            checkReached(source, true, 0.01 * i);
+        }
+    }
+
+    @Test
+    public void testHullAndCells() {
+        int source = new Random(7).nextInt(c.size());
+        Isochrone isochrone = new Isochrone(c, c.lengths, source, 1.0);
+        double[][] hull = isochrone.hull();
+        assertTrue(hull.length >= 3);
+        /* Every reached vertex is on the inner side of every edge of the hull. */
+        for (int v : isochrone.vertices) {
+            for (int i = 0; i < hull.length; i++) {
+                double[] a = hull[i];
+                double[] b = hull[(i + 1) % hull.length];
+                double cross = (b[0] - a[0]) * (c.lats[v] - a[1])
+                    - (b[1] - a[1]) * (c.lons[v] - a[0]);
+                assertTrue(cross >= -1e-12);
+            }
+        }
+
+        int depth = 5;
+        Set<Long> cells = new HashSet<>();
+        for (int[] cell : isochrone.cells(depth)) {
+            cells.add((long) cell[0] << 32 | cell[1]);
+        }
+        double tileLon = (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON) / (1 << depth);
+        double tileLat = (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT) / (1 << depth);
+        Set<Long> expected = new HashSet<>();
+        for (int v : isochrone.vertices) {
+            long x = (long) Math.floor((c.lons[v] - MapServer.ROOT_ULLON) / tileLon);
+            long y = (long) Math.floor((MapServer.ROOT_ULLAT - c.lats[v]) / tileLat);
+            if (x >= 0 && x < 1 << depth && y >= 0 && y < 1 << depth) {
+                expected.add(x << 32 | y);
+            }
+        }
+        assertEquals(expected, cells);
+    }
+}
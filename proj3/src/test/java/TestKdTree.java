@@ -0,0 +1,130 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the KdTree queries against a linear scan over randomly generated points around
+ * Berkeley, including duplicated locations so that tie-breaking is exercised.
+ */
+public class TestKdTree {
+    private static final int NUM_POINTS = 5000;
+    private static final int NUM_QUERIES = 500;
+    private long[] ids;
+    private double[] lons, lats;
+    private KdTree tree;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        random = new Random(61);
+        ids = new long[NUM_POINTS];
+        lons = new double[NUM_POINTS];
+        lats = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            ids[i] = 1000L + i * 7L;
+            if (i > 0 && random.nextInt(10) == 0) {
+                int j = random.nextInt(i);
+                lons[i] = lons[j];
+                lats[i] = lats[j];
+            } else {
+                lons[i] = randomLon();
+                lats[i] = randomLat();
+            }
+        }
+        tree = new KdTree(ids, lons, lats);
+    }
+
+    private double randomLon() {
+        return MapServer.ROOT_ULLON
+            + random.nextDouble() * (MapServer.ROOT_LRLON - MapServer.ROOT_ULLON);
+    }
+
+    private double randomLat() {
+        return MapServer.ROOT_LRLAT
+            + random.nextDouble() * (MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT);
+    }
+
+    private long scanClosest(double lon, double lat) {
+        double dist = Double.MAX_VALUE;
+        long closest = 0;
+        for (int i = 0; i < NUM_POINTS; i++) {
+            double d = GraphDB.distance(lon, lat, lons[i], lats[i]);
+            if (d < dist) {
+                closest = ids[i];
+                dist = d;
+            }
+        }
+        return closest;
+    }
+
+    @Test
+    public void testNearest() {
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            double lon = randomLon();
+            double lat = randomLat();
+            assertEquals(scanClosest(lon, lat), tree.nearest(lon, lat));
+        }
+        /* Querying exactly at a duplicated point must return the first copy. */
+        for (int i = 0; i < NUM_POINTS; i += 97) {
+            assertEquals(scanClosest(lons[i], lats[i]), tree.nearest(lons[i], lats[i]));
+        }
+    }
+
+    @Test
+    public void testKNearest() {
+        for (int q = 0; q < NUM_QUERIES / 10; q++) {
+            double lon = randomLon();
+            double lat = randomLat();
+            List<Long> nearest = tree.nearest(lon, lat, 10);
+            assertEquals(10, nearest.size());
+            assertEquals(scanClosest(lon, lat), (long) nearest.get(0));
+            double prev = 0;
+            double tenth = 0;
+            for (long id : nearest) {
+                int i = (int) ((id - 1000L) / 7L);
+                double d = GraphDB.distance(lon, lat, lons[i], lats[i]);
+                assertTrue(d >= prev);
+                prev = d;
+                tenth = d;
+            }
+            int closer = 0;
+            for (int i = 0; i < NUM_POINTS; i++) {
+                if (GraphDB.distance(lon, lat, lons[i], lats[i]) < tenth) {
+                    closer++;
+                }
+            }
+            assertTrue(closer < 10);
+        }
+    }
+
+    @Test
+    public void testWithinDistance() {
+        for (int q = 0; q < NUM_QUERIES / 10; q++) {
+            double lon = randomLon();
+            double lat = randomLat();
+            double radius = random.nextDouble() * 0.5;
+            List<Long> expected = new ArrayList<>();
+            for (int i = 0; i < NUM_POINTS; i++) {
+                if (GraphDB.distance(lon, lat, lons[i], lats[i]) <= radius) {
+                    expected.add(ids[i]);
+                }
+            }
+            List<Long> actual = tree.withinDistance(lon, lat, radius);
+            assertEquals(expected.size(), actual.size());
+            assertTrue(actual.containsAll(expected));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        KdTree empty = new KdTree(new long[0], new double[0], new double[0]);
+        assertEquals(0, empty.nearest(-122.25, 37.87));
+        assertTrue(empty.nearest(-122.25, 37.87, 3).isEmpty());
+    }
+}
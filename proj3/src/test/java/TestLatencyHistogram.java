@@ -0,0 +1,112 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the quantiles and bucket counts of LatencyHistogram, and the Prometheus text written
+ * by Metrics.
+ */
+public class TestLatencyHistogram {
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 0; v < 16; v++) {
+            h.record(v);
+        }
+        assertEquals(16, h.count());
+        assertEquals(120, h.sum());
+        assertEquals(15, h.max());
+        for (long v = 0; v <= 16; v++) {
+            assertEquals(v, h.countBelow(v));
+        }
+        assertEquals(7, h.quantile(0.5));
+        assertEquals(15, h.quantile(1));
+    }
+
+    @Test
+    public void testQuantilesWithinBucketError() {
+        Random random = new Random(22);
+        LatencyHistogram h = new LatencyHistogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            /* Log-normal, like latencies, from microseconds to seconds. */
+            values[i] = (long) Math.exp(14 + 2 * random.nextGaussian());
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[]{0.01, 0.5, 0.9, 0.99, 0.999, 1}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long estimate = h.quantile(q);
+            assertTrue(q + ": " + estimate + " < " + exact, estimate >= exact);
+            assertTrue(q + ": " + estimate + " > " + exact, estimate <= exact * 1.125 + 1);
+        }
+        assertEquals(values[values.length - 1], h.max());
+        for (int p = 0; p < 40; p++) {
+            long bound = 1L << p;
+            long below = Arrays.stream(values).filter(v -> v < bound).count();
+            assertEquals(below, h.countBelow(bound));
+        }
+    }
+
+    @Test
+    public void testOutOfRangeValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(2, h.count());
+        assertEquals(LatencyHistogram.MAX_VALUE, h.max());
+        assertEquals(0, h.quantile(0.5));
+        assertEquals(LatencyHistogram.MAX_VALUE, h.quantile(1));
+    }
+
+    @Test
+    public void testConcurrentRecording() {
+        LatencyHistogram h = new LatencyHistogram();
+        IntStream.range(0, 400000).parallel().forEach(i -> h.record(i % 1000));
+        assertEquals(400000, h.count());
+        assertEquals(400L * 999 * 1000 / 2, h.sum());
+        assertEquals(400L * 512, h.countBelow(512));
+    }
+
+    @Test
+    public void testPrometheusText() {
+        Metrics metrics = new Metrics();
+        metrics.defineTimer("request_duration", "Time to handle a request.", "endpoint");
+        metrics.defineCounter("settled_nodes", "Vertices settled.", "strategy");
+        metrics.timer("request_duration", "/route").record(20000);
+        metrics.timer("request_duration", "/route").record(3000000);
+        metrics.count("settled_nodes", "astar", 5);
+        metrics.count("settled_nodes", "astar", 7);
+        metrics.addCache("tile", () -> {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("hits", 3L);
+            stats.put("bytes", 1024L);
+            return stats;
+        });
+        String text = metrics.prometheus();
+        assertTrue(text.contains("# TYPE bearmaps_request_duration_seconds histogram\n"));
+        assertTrue(text.contains(
+            "bearmaps_request_duration_seconds_bucket{endpoint=\"/route\",le=\"1.6384E-5\"} 0\n"));
+        assertTrue(text.contains(
+            "bearmaps_request_duration_seconds_bucket{endpoint=\"/route\",le=\"3.2768E-5\"} 1\n"));
+        assertTrue(text.contains(
+            "bearmaps_request_duration_seconds_bucket{endpoint=\"/route\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("bearmaps_request_duration_seconds_sum{endpoint=\"/route\"}"
+            + " 0.00302\n"));
+        assertTrue(text.contains("bearmaps_request_duration_seconds_count{endpoint=\"/route\"}"
+            + " 2\n"));
+        assertTrue(text.contains("# TYPE bearmaps_settled_nodes_total counter\n"));
+        assertTrue(text.contains("bearmaps_settled_nodes_total{strategy=\"astar\"} 12\n"));
+        assertTrue(text.contains("# TYPE bearmaps_cache_hits_total counter\n"));
+        assertTrue(text.contains("bearmaps_cache_hits_total{cache=\"tile\"} 3\n"));
+        assertTrue(text.contains("# TYPE bearmaps_cache_bytes gauge\n"));
+        assertTrue(text.contains("bearmaps_cache_bytes{cache=\"tile\"} 1024\n"));
+    }
+}
@@ -0,0 +1,38 @@
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the PNGs PngEncoder writes decode to the original pixels.
+ */
+public class TestPngEncoder {
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(61);
+        BufferedImage image = new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                /* Mix flat runs with noise, so the filter sees both. */
+                image.setRGB(x, y, x < 10 ? 0xE6E1D2 : random.nextInt());
+            }
+        }
+        for (int level = 0; level <= 9; level++) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            PngEncoder.write(image, level, os);
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(os.toByteArray()));
+            assertEquals(image.getWidth(), decoded.getWidth());
+            assertEquals(image.getHeight(), decoded.getHeight());
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(image.getRGB(x, y), decoded.getRGB(x, y));
+                }
+            }
+        }
+    }
+}
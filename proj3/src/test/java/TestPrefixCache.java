@@ -0,0 +1,100 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the eviction, miss collapsing and counters of PrefixCache.
+ */
+public class TestPrefixCache {
+    @Test
+    public void testEviction() {
+        AtomicInteger loads = new AtomicInteger();
+        /* Every result has two names, so an entry weighs 3. */
+        PrefixCache cache = new PrefixCache(7, prefix -> {
+            loads.incrementAndGet();
+            return Arrays.asList(prefix + "1", prefix + "2");
+        });
+        List<String> a = cache.get("a");
+        cache.get("b");
+        assertSame(a, cache.get("a"));
+        /* "b" is now the least recently used prefix. */
+        cache.get("c");
+        assertEquals(3, loads.get());
+        assertSame(a, cache.get("a"));
+        cache.get("b");
+        assertEquals(4, loads.get());
+
+        assertEquals(2L, (long) cache.stats().get("entries"));
+        assertEquals(6L, (long) cache.stats().get("weight"));
+        assertEquals(2L, (long) cache.stats().get("hits"));
+        assertEquals(4L, (long) cache.stats().get("misses"));
+        assertEquals(2L, (long) cache.stats().get("evictions"));
+    }
+
+    @Test
+    public void testCollapsedMisses() throws Exception {
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        PrefixCache cache = new PrefixCache(100, prefix -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return Collections.singletonList(prefix);
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> cache.get("tel")));
+        }
+        /* Wait until every thread has either started the load or is waiting for it. */
+        while (cache.stats().get("misses") + cache.stats().get("collapsed") < threads) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Future<List<String>> result : results) {
+            assertEquals(Collections.singletonList("tel"), result.get());
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(1, loads.get());
+        assertEquals(1L, (long) cache.stats().get("misses"));
+        assertEquals(threads - 1L, (long) cache.stats().get("collapsed"));
+    }
+
+    @Test
+    public void testFailedLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        PrefixCache cache = new PrefixCache(100, prefix -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException();
+            }
+            return Collections.singletonList(prefix);
+        });
+        try {
+            cache.get("x");
+            throw new AssertionError("The failed load was not rethrown.");
+        } catch (IllegalStateException e) {
+            /* Expected. */
+        }
+        /* A failed load is not cached. */
+        assertEquals(Collections.singletonList("x"), cache.get("x"));
+        assertEquals(0L, (long) cache.stats().get("hits"));
+    }
+}
@@ -0,0 +1,72 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests PrefixIndex against the TrieST it replaces.
+ */
+public class TestPrefixIndex {
+    private static final String ALPHABET = "abc z";
+
+    private static String randomKey(Random random) {
+        StringBuilder key = new StringBuilder();
+        int length = random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            key.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return key.toString();
+    }
+
+    @Test
+    public void testAgainstTrieST() {
+        Random random = new Random(61);
+        TrieST<Integer> trie = new TrieST<>();
+        PrefixIndex<Integer> index = new PrefixIndex<>();
+        for (int i = 0; i < 500; i++) {
+            String key = randomKey(random);
+            trie.put(key, i);
+            index.put(key, i);
+        }
+        for (int frozen = 0; frozen < 2; frozen++) {
+            assertEquals(trie.size(), index.size());
+            for (int i = 0; i < 500; i++) {
+                String key = randomKey(random);
+                assertEquals(trie.get(key), index.get(key));
+                List<String> expected = new ArrayList<>();
+                trie.keysWithPrefix(key).forEach(expected::add);
+                assertEquals(expected, index.keysWithPrefix(key));
+                List<Integer> values = new ArrayList<>();
+                for (String k : expected) {
+                    values.add(trie.get(k));
+                }
+                assertEquals(values, index.valuesWithPrefix(key));
+            }
+            index.freeze();
+            assertTrue(index.isFrozen());
+        }
+    }
+
+    @Test
+    public void testFrozen() {
+        PrefixIndex<String> index = new PrefixIndex<>();
+        index.put("tel", "a");
+        index.put("telegraph", "b");
+        index.freeze();
+        assertEquals("a", index.get("tel"));
+        assertNull(index.get("te"));
+        assertNull(index.get("telegraphs"));
+        assertEquals(2, index.keysWithPrefix("te").size());
+        try {
+            index.put("x", "c");
+            throw new AssertionError("Modified a frozen index.");
+        } catch (IllegalStateException e) {
+            /* Expected. */
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the LRU eviction and route invalidation of RasterCache.
+ */
+public class TestRasterCache {
+    private static RasterCache.Key key(int x, long routeVersion) {
+        return new RasterCache.Key(2, x, 0, x + 1, 1, routeVersion);
+    }
+
+    @Test
+    public void testEviction() {
+        RasterCache cache = new RasterCache(20);
+        byte[] a = new byte[8];
+        cache.put(key(0, RasterCache.NO_ROUTE), a);
+        cache.put(key(1, RasterCache.NO_ROUTE), new byte[8]);
+        assertSame(a, cache.get(key(0, RasterCache.NO_ROUTE)));
+        /* Raster 1 is now the least recently used one. */
+        cache.put(key(2, RasterCache.NO_ROUTE), new byte[8]);
+        assertNull(cache.get(key(1, RasterCache.NO_ROUTE)));
+        assertSame(a, cache.get(key(0, RasterCache.NO_ROUTE)));
+        /* Too large to ever fit. */
+        cache.put(key(3, RasterCache.NO_ROUTE), new byte[21]);
+        assertNull(cache.get(key(3, RasterCache.NO_ROUTE)));
+
+        assertEquals(2L, (long) cache.stats().get("rasters"));
+        assertEquals(16L, (long) cache.stats().get("bytes"));
+        assertEquals(2L, (long) cache.stats().get("hits"));
+        assertEquals(2L, (long) cache.stats().get("misses"));
+        assertEquals(1L, (long) cache.stats().get("evictions"));
+    }
+
+    @Test
+    public void testInvalidateRoute() {
+        RasterCache cache = new RasterCache(100);
+        byte[] plain = new byte[4];
+        cache.put(key(0, RasterCache.NO_ROUTE), plain);
+        cache.put(key(0, 1), new byte[4]);
+        cache.put(key(1, 1), new byte[4]);
+        byte[] newer = new byte[4];
+        cache.put(key(1, 2), newer);
+
+        cache.invalidateRoute(1);
+        assertSame(plain, cache.get(key(0, RasterCache.NO_ROUTE)));
+        assertNull(cache.get(key(0, 1)));
+        assertNull(cache.get(key(1, 1)));
+        assertSame(newer, cache.get(key(1, 2)));
+        assertEquals(8L, (long) cache.stats().get("bytes"));
+        assertEquals(2L, (long) cache.stats().get("invalidations"));
+    }
+}
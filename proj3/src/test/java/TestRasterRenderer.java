@@ -0,0 +1,53 @@
+import org.junit.Test;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that RasterRenderer composites a grid like drawing every tile in place does.
+ */
+public class TestRasterRenderer {
+    @Test
+    public void testComposite() {
+        Random random = new Random(61);
+        String[][] renderGrid = new String[3][4];
+        Map<String, BufferedImage> tiles = new HashMap<>();
+        for (int r = 0; r < renderGrid.length; r++) {
+            for (int c = 0; c < renderGrid[r].length; c++) {
+                renderGrid[r][c] = "d2_x" + c + "_y" + r + ".png";
+                BufferedImage tile = new BufferedImage(MapServer.TILE_SIZE,
+                    MapServer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+                for (int i = 0; i < 100; i++) {
+                    tile.setRGB(random.nextInt(MapServer.TILE_SIZE),
+                        random.nextInt(MapServer.TILE_SIZE), random.nextInt() & 0xFFFFFF);
+                }
+                tiles.put(renderGrid[r][c], tile);
+            }
+        }
+        /* A missing tile stays black. */
+        tiles.remove(renderGrid[1][2]);
+
+        BufferedImage actual = RasterRenderer.composite(renderGrid, tiles::get);
+        BufferedImage expected = new BufferedImage(4 * MapServer.TILE_SIZE,
+            3 * MapServer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics graphic = expected.getGraphics();
+        for (int r = 0; r < renderGrid.length; r++) {
+            for (int c = 0; c < renderGrid[r].length; c++) {
+                graphic.drawImage(tiles.get(renderGrid[r][c]), c * MapServer.TILE_SIZE,
+                    r * MapServer.TILE_SIZE, null);
+            }
+        }
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Fires thousands of random raster queries at one shared Rasterer from many threads and
+ * checks every result against the same query answered by a single thread.
+ */
+public class TestRastererConcurrency {
+    private static final int NUM_QUERIES = 5000;
+    private static final int NUM_THREADS = 16;
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        Random random = new Random(61);
+        List<Map<String, Double>> queries = new ArrayList<>();
+        double lonSpan = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+        double latSpan = MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            /* Boxes of every size, some partly or entirely off the map, some invalid. */
+            double width = lonSpan * Math.pow(2, -8 * random.nextDouble());
+            double height = latSpan * Math.pow(2, -8 * random.nextDouble());
+            double ullon = MapServer.ROOT_ULLON + lonSpan * (1.4 * random.nextDouble() - 0.2);
+            double ullat = MapServer.ROOT_LRLAT + latSpan * (1.4 * random.nextDouble() - 0.2);
+            Map<String, Double> params = new HashMap<>();
+            params.put("ullon", ullon);
+            params.put("ullat", ullat);
+            params.put("lrlon", ullon + (random.nextInt(20) == 0 ? -width : width));
+            params.put("lrlat", ullat - height);
+            params.put("w", 100.0 + random.nextInt(1500));
+            params.put("h", 100.0 + random.nextInt(1000));
+            queries.add(params);
+        }
+
+        Rasterer oracle = new Rasterer();
+        List<Map<String, Object>> expected = new ArrayList<>();
+        for (Map<String, Double> params : queries) {
+            expected.add(oracle.getMapRaster(params));
+        }
+
+        Rasterer shared = new Rasterer();
+        ExecutorService pool = Executors.newFixedThreadPool(NUM_THREADS);
+        List<Future<Map<String, Object>>> actual = new ArrayList<>();
+        for (Map<String, Double> params : queries) {
+            actual.add(pool.submit(() -> shared.getMapRaster(params)));
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Map<String, Object> e = expected.get(i);
+            Map<String, Object> a = actual.get(i).get();
+            assertEquals(e.keySet(), a.keySet());
+            assertArrayEquals((String[][]) e.get("render_grid"),
+                (String[][]) a.get("render_grid"));
+            for (String key : e.keySet()) {
+                if (!key.equals("render_grid")) {
+                    assertEquals("Query " + i + ", " + key, e.get(key), a.get(key));
+                }
+            }
+        }
+    }
+}
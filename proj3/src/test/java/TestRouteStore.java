@@ -0,0 +1,89 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the tokens, expiry and eviction of RouteStore.
+ */
+public class TestRouteStore {
+    private final AtomicLong now = new AtomicLong();
+    private final List<Long> dropped = new ArrayList<>();
+
+    private RouteStore store(long maxWeight, long timeToLive) {
+        return new RouteStore(maxWeight, timeToLive, now::get, 1, dropped::add);
+    }
+
+    @Test
+    public void testRoutesPerToken() {
+        RouteStore store = store(100, 1000);
+        String a = store.put(null, Arrays.asList(1L, 2L), null);
+        String b = store.put(null, Arrays.asList(3L), null);
+        assertNotEquals(a, b);
+        assertEquals(Arrays.asList(1L, 2L), store.get(a).vertices);
+        assertEquals(Arrays.asList(3L), store.get(b).vertices);
+
+        /* Replacing one user's route leaves the other's alone. */
+        assertEquals(a, store.put(a, Arrays.asList(4L), null));
+        assertEquals(Arrays.asList(4L), store.get(a).vertices);
+        assertEquals(3L, store.get(a).version);
+        assertEquals(Arrays.asList(3L), store.get(b).vertices);
+        assertEquals(Arrays.asList(1L), dropped);
+
+        store.remove(b);
+        assertNull(store.get(b));
+        assertEquals(Arrays.asList(1L, 2L), dropped);
+        assertEquals(Arrays.asList(4L), store.get(a).vertices);
+
+        /* Unknown tokens get a new one rather than the one the client chose. */
+        assertNotEquals("mine", store.put("mine", Arrays.asList(5L), null));
+        assertNull(store.get("mine"));
+        assertNull(store.get(null));
+    }
+
+    @Test
+    public void testExpiry() {
+        RouteStore store = store(100, 1000);
+        String a = store.put(null, Arrays.asList(1L), null);
+        now.set(600);
+        String b = store.put(null, Arrays.asList(2L), null);
+        now.set(900);
+        /* Using a route keeps it alive. */
+        store.get(a);
+        now.set(1700);
+        assertNull(store.get(b));
+        assertEquals(Arrays.asList(1L), store.get(a).vertices);
+        now.set(2700);
+        assertNull(store.get(a));
+        assertEquals(Arrays.asList(2L, 1L), dropped);
+        assertEquals(2L, (long) store.stats().get("expired"));
+        assertEquals(0L, (long) store.stats().get("weight"));
+    }
+
+    @Test
+    public void testEviction() {
+        /* Every route has two vertices, so it weighs 3. */
+        RouteStore store = store(7, 1000);
+        String a = store.put(null, Arrays.asList(1L, 2L), null);
+        String b = store.put(null, Arrays.asList(3L, 4L), null);
+        store.get(a);
+        /* b is now the least recently used route. */
+        String c = store.put(null, Arrays.asList(5L, 6L), null);
+        assertNull(store.get(b));
+        assertEquals(Arrays.asList(1L, 2L), store.get(a).vertices);
+        assertEquals(Arrays.asList(5L, 6L), store.get(c).vertices);
+        assertEquals(Arrays.asList(2L), dropped);
+
+        /* A route heavier than the budget is still kept, as the only one. */
+        String d = store.put(null, Arrays.asList(7L, 8L, 9L, 10L, 11L, 12L, 13L), null);
+        assertEquals(7, store.get(d).vertices.size());
+        assertEquals(1L, (long) store.stats().get("routes"));
+        assertEquals(3L, (long) store.stats().get("evictions"));
+    }
+}
@@ -1,10 +1,17 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Created by hug, 4/9/2018. Basic tests for A* on the tiny graph.
@@ -63,4 +70,170 @@ public class TestRouterTiny {
         expected.add(55L);
         assertEquals(expected, actual);
     }
+
+    /** The contraction hierarchy, also after a save and load, must agree with A*. */
+    @Test
+    public void testContractionHierarchy() throws Exception {
+        CompactGraph c = graphTiny.compact();
+        ContractionHierarchy ch = ContractionHierarchy.build(c, c.lengths);
+        File file = File.createTempFile("tiny", ".ch");
+        file.deleteOnExit();
+        ch.save(file);
+        ContractionHierarchy loaded = ContractionHierarchy.load(c, c.lengths, file);
+        RoutingStrategy aStar = new AStarRouting(c, c.lengths, Heuristic.greatCircle(c));
+        for (int s = 0; s < c.size(); s++) {
+            for (int t = 0; t < c.size(); t++) {
+                List<Long> expected = aStar.shortestPath(s, t);
+                assertEquals(expected, ch.shortestPath(s, t));
+                assertEquals(expected, loaded.shortestPath(s, t));
+            }
+        }
+    }
+
+    /** A saved hierarchy with a bad edge count or body is rebuilt instead of loaded. */
+    @Test
+    public void testCorruptHierarchyIsRebuilt() throws Exception {
+        CompactGraph c = graphTiny.compact();
+        File file = File.createTempFile("tiny", ".ch");
+        file.deleteOnExit();
+        ContractionHierarchy.build(c, c.lengths).save(file);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        long numEdgesAt = 20;
+        long firstTargetAt = 24 + 8L * c.size() + 4;
+        for (long[] corruption : new long[][]{{numEdgesAt, -1}, {numEdgesAt, 1 << 30},
+            {firstTargetAt, c.size()}}) {
+            ContractionHierarchy.build(c, c.lengths).save(file);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(corruption[0]);
+                raf.writeInt((int) corruption[1]);
+            }
+            try {
+                ContractionHierarchy.load(c, c.lengths, file);
+                fail("Loaded a corrupt hierarchy.");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("corrupted"));
+            }
+            ContractionHierarchy rebuilt = ContractionHierarchy.loadOrBuild(c, c.lengths, file);
+            assertEquals(new AStarRouting(c, c.lengths, Heuristic.greatCircle(c))
+                .shortestPath(0, c.size() - 1), rebuilt.shortestPath(0, c.size() - 1));
+            ContractionHierarchy.load(c, c.lengths, file);
+        }
+    }
+
+    /** Bidirectional A* and the landmark heuristic must find paths as short as A*. */
+    @Test
+    public void testRoutingStrategies() {
+        CompactGraph c = graphTiny.compact();
+        Heuristic greatCircle = Heuristic.greatCircle(c);
+        Landmarks landmarks = new Landmarks(c, c.lengths, 2);
+        RoutingStrategy aStar = new AStarRouting(c, c.lengths, greatCircle);
+        RoutingStrategy[] strategies = {
+            new BidirectionalAStarRouting(c, c.lengths, greatCircle),
+            new AStarRouting(c, c.lengths, landmarks),
+            new BidirectionalAStarRouting(c, c.lengths, landmarks)
+        };
+        for (int s = 0; s < c.size(); s++) {
+            for (int t = 0; t < c.size(); t++) {
+                double expected = length(aStar.shortestPath(s, t));
+                for (RoutingStrategy strategy : strategies) {
+                    List<Long> path = strategy.shortestPath(s, t);
+                    assertEquals(c.ids[s], (long) path.get(0));
+                    assertEquals(c.ids[t], (long) path.get(path.size() - 1));
+                    assertEquals(expected, length(path), 1e-9);
+                    assertTrue(strategy.settledCount() > 0);
+                }
+            }
+        }
+    }
+
+    /** Every strategy must find the fastest path when routing by travel time. */
+    @Test
+    public void testTravelTime() {
+        CompactGraph c = graphTiny.compact();
+        Heuristic travelTime = Heuristic.travelTime(c);
+        RoutingStrategy dijkstra = new AStarRouting(c, c.times, (v, target) -> 0);
+        RoutingStrategy[] strategies = {
+            new AStarRouting(c, c.times, travelTime),
+            new BidirectionalAStarRouting(c, c.times, travelTime),
+            new AStarRouting(c, c.times, new Landmarks(c, c.times, 2)),
+            ContractionHierarchy.build(c, c.times)
+        };
+        for (int s = 0; s < c.size(); s++) {
+            for (int t = 0; t < c.size(); t++) {
+                double expected = time(c, dijkstra.shortestPath(s, t));
+                for (RoutingStrategy strategy : strategies) {
+                    assertEquals(expected, time(c, strategy.shortestPath(s, t)), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDirections41to46() {
+        List<Long> route = Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6);
+        List<Router.NavigationDirection> actual = Router.routeDirections(graphTiny, route);
+        String[] expected = {
+            "Start on w63 and continue for 17.594 miles.",
+            "Turn left on w66 and continue for 20.750 miles.",
+            "Turn left on w46 and continue for 10.811 miles."
+        };
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual.get(i).toString());
+            Router.NavigationDirection parsed = Router.NavigationDirection.fromString(expected[i]);
+            assertEquals(parsed.direction, actual.get(i).direction);
+            assertEquals(parsed.way, actual.get(i).way);
+        }
+        assertEquals(length(route), actual.get(0).distance + actual.get(1).distance
+            + actual.get(2).distance, 1e-9);
+    }
+
+    /** Routes with a gap or an unknown node are rejected, naming the nodes. */
+    @Test
+    public void testDirectionsRejectBrokenRoutes() {
+        CompactGraph c = graphTiny.compact();
+        int v = 0;
+        int w = 1;
+        while (w == v || c.edge(v, w) >= 0) {
+            w++;
+        }
+        try {
+            Router.routeDirections(graphTiny, Arrays.asList(c.ids[v], c.ids[w]));
+            fail("Made directions for a route with a gap.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(c.ids[v] + " and " + c.ids[w]));
+        }
+        try {
+            Router.routeDirections(graphTiny, Arrays.asList(c.ids[v], -1L));
+            fail("Made directions for a route with an unknown node.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("-1"));
+        }
+    }
+
+    @Test
+    public void testDistancesFormattedLikeStringFormat() {
+        double[] distances = {0, 0.0005, 0.0015, 0.9995, 1.2345, 2.0005, 17.5939, 1e-5, 1e8};
+        for (double d : distances) {
+            StringBuilder sb = new StringBuilder();
+            Router.NavigationDirection.appendThousandths(sb, d);
+            assertEquals(String.format("%.3f", d), sb.toString());
+        }
+    }
+
+    private static double time(CompactGraph c, List<Long> path) {
+        double time = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            time += c.times[c.edge(c.index(path.get(i)), c.index(path.get(i + 1)))];
+        }
+        return time;
+    }
+
+    private static double length(List<Long> path) {
+        double length = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            length += graphTiny.distance(path.get(i), path.get(i + 1));
+        }
+        return length;
+    }
 }
@@ -0,0 +1,71 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the LRU eviction and counters of TileCache on small generated tiles.
+ */
+public class TestTileCache {
+    private static final int SIZE = 16;
+    private static final long TILE_BYTES = 4L * SIZE * SIZE;
+    private String root;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = Files.createTempDirectory("tiles").toFile();
+        dir.deleteOnExit();
+        for (String name : new String[]{"d0_x0_y0.png", "d1_x0_y0.png", "d1_x1_y0.png",
+            "d1_x0_y1.png", "d1_x1_y1.png"}) {
+            BufferedImage tile = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_3BYTE_BGR);
+            tile.setRGB(0, 0, name.hashCode() & 0xFFFFFF);
+            File file = new File(dir, name);
+            file.deleteOnExit();
+            ImageIO.write(tile, "png", file);
+        }
+        root = dir.getPath() + File.separator;
+    }
+
+    @Test
+    public void testHitsAndEvictions() {
+        TileCache cache = new TileCache(root, 2 * TILE_BYTES);
+        BufferedImage a = cache.get("d1_x0_y0.png");
+        assertEquals(BufferedImage.TYPE_INT_RGB, a.getType());
+        assertEquals("d1_x0_y0.png".hashCode() & 0xFFFFFF, a.getRGB(0, 0) & 0xFFFFFF);
+        cache.get("d1_x1_y0.png");
+        assertSame(a, cache.get("d1_x0_y0.png"));
+        /* d1_x1_y0 is now the least recently used tile. */
+        cache.get("d1_x0_y1.png");
+        assertSame(a, cache.get("d1_x0_y0.png"));
+        cache.get("d1_x1_y0.png");
+
+        assertEquals(2L, (long) cache.stats().get("tiles"));
+        assertEquals(2 * TILE_BYTES, (long) cache.stats().get("bytes"));
+        assertEquals(2L, (long) cache.stats().get("hits"));
+        assertEquals(4L, (long) cache.stats().get("misses"));
+        assertEquals(2L, (long) cache.stats().get("evictions"));
+    }
+
+    @Test
+    public void testWarmUpStopsWhenFull() {
+        TileCache cache = new TileCache(root, 3 * TILE_BYTES);
+        assertEquals(3, cache.warmUp(1));
+        cache.get("d0_x0_y0.png");
+        assertEquals(1L, (long) cache.stats().get("hits"));
+        assertEquals(0L, (long) cache.stats().get("evictions"));
+    }
+
+    @Test
+    public void testMissingTile() {
+        TileCache cache = new TileCache(root, 2 * TILE_BYTES);
+        assertNull(cache.get("d9_x0_y0.png"));
+        assertEquals(0L, (long) cache.stats().get("tiles"));
+    }
+}
@@ -0,0 +1,94 @@
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests synthesizing, writing and reading TrafficTraces, and replaying them with
+ * LoadGenerator against a stub server.
+ */
+public class TestTrafficTrace {
+    private static final List<String> NAMES = Arrays.asList("Top Dog", "Berkeley Bowl",
+        "Cheese Board Pizza");
+
+    @Test
+    public void testSynthesize() {
+        TrafficTrace trace = TrafficTrace.synthesize(NAMES, 50, 60000, 1);
+        List<String> endpoints = new ArrayList<>();
+        long last = 0;
+        for (TrafficTrace.Request r : trace.requests) {
+            assertTrue(r.offset >= last);
+            last = r.offset;
+            if (!endpoints.contains(r.endpoint())) {
+                endpoints.add(r.endpoint());
+            }
+            if (r.endpoint().equals("/search") && !r.target.contains("full=true")) {
+                String term = r.target.substring("/search?term=".length()).replace('+', ' ');
+                assertTrue(term, NAMES.stream().anyMatch(n -> n.startsWith(term)));
+            }
+        }
+        endpoints.sort(null);
+        assertEquals(Arrays.asList("/raster", "/route", "/search"), endpoints);
+
+        /* The same seed makes the same trace. */
+        TrafficTrace again = TrafficTrace.synthesize(NAMES, 50, 60000, 1);
+        assertEquals(trace.requests.size(), again.requests.size());
+        for (int i = 0; i < trace.requests.size(); i++) {
+            assertEquals(trace.requests.get(i).target, again.requests.get(i).target);
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        TrafficTrace trace = TrafficTrace.synthesize(NAMES, 5, 1000, 2);
+        File file = File.createTempFile("trace", ".txt");
+        file.deleteOnExit();
+        trace.write(file.toPath());
+        TrafficTrace read = TrafficTrace.read(file.toPath());
+        assertEquals(trace.requests.size(), read.requests.size());
+        for (int i = 0; i < trace.requests.size(); i++) {
+            assertEquals(trace.requests.get(i).offset, read.requests.get(i).offset);
+            assertEquals(trace.requests.get(i).target, read.requests.get(i).target);
+        }
+        assertEquals(trace.duration(), read.duration());
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            boolean missing = exchange.getRequestURI().getPath().equals("/missing");
+            byte[] body = "ok".getBytes();
+            exchange.sendResponseHeaders(missing ? 404 : 200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            List<TrafficTrace.Request> requests = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                requests.add(new TrafficTrace.Request(i, i % 3 == 0 ? "/missing"
+                    : "/raster?w=" + i));
+            }
+            LoadGenerator.Report report = LoadGenerator.replay("http://localhost:"
+                + server.getAddress().getPort(), new TrafficTrace(requests), 1000, 4);
+            assertEquals(20, report.latency("/raster").count());
+            assertEquals(0, report.errors("/raster").sum());
+            assertEquals(10, report.latency("/missing").count());
+            assertEquals(10, report.errors("/missing").sum());
+            /* 30 requests at 1000 a second take at least 29 ms. */
+            assertTrue(report.elapsed >= 29_000_000L);
+            assertTrue(report.toString().contains("/raster"));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the edge index, rendering and disk cache of VectorTileRenderer on the Berkeley graph.
+ */
+public class TestVectorTileRenderer {
+    private static final String OSM_DB_PATH = "../library-sp18/data/berkeley-2018.osm.xml";
+    private static final double ROOT_WIDTH = MapServer.ROOT_LRLON - MapServer.ROOT_ULLON;
+    private static final double ROOT_HEIGHT = MapServer.ROOT_ULLAT - MapServer.ROOT_LRLAT;
+    private static final int BACKGROUND = 0xE9E3D4;
+    private static CompactGraph c;
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+    private File folder;
+
+    @BeforeClass
+    public static void setUpGraph() {
+        GraphDB graph = new GraphDB(OSM_DB_PATH);
+        graph.freeze();
+        c = graph.compact();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        folder = temp.newFolder("vector-tiles");
+    }
+
+    private VectorTileRenderer renderer(long maxDiskBytes) {
+        return new VectorTileRenderer(c, folder, maxDiskBytes, 0, 2);
+    }
+
+    /**
+     * Returns the column and row of the tile of a depth that a vertex is in.
+     */
+    private static int[] tileOf(int v, int depth) {
+        return new int[]{
+            (int) ((c.lons[v] - MapServer.ROOT_ULLON) / ROOT_WIDTH * (1 << depth)),
+            (int) ((MapServer.ROOT_ULLAT - c.lats[v]) / ROOT_HEIGHT * (1 << depth))
+        };
+    }
+
+    private static String name(int depth, int[] tile) {
+        return "d" + depth + "_x" + tile[0] + "_y" + tile[1] + ".png";
+    }
+
+    @Test
+    public void testVisibleEdges() {
+        VectorTileRenderer r = renderer(1L << 30);
+        Random random = new Random(25);
+        for (int i = 0; i < 200; i++) {
+            int depth = 7 + random.nextInt(6);
+            int v = random.nextInt(c.size());
+            int[] tile = tileOf(v, depth);
+            double lonSpan = ROOT_WIDTH / (1 << depth);
+            double latSpan = ROOT_HEIGHT / (1 << depth);
+            double ullon = MapServer.ROOT_ULLON + tile[0] * lonSpan;
+            double ullat = MapServer.ROOT_ULLAT - tile[1] * latSpan;
+
+            Set<Long> visible = new HashSet<>();
+            for (int[] edge : r.visibleEdges(depth, tile[0], tile[1])) {
+                assertTrue(visible.add((long) edge[0] << 32 | edge[1]));
+                int w = c.targets[edge[1]];
+                /* Drawn edges reach into the tile, give or take the widest road. */
+                double slackLon = 0.0002;
+                double slackLat = 0.0002;
+                assertTrue(Math.max(c.lons[edge[0]], c.lons[w]) >= ullon - slackLon);
+                assertTrue(Math.min(c.lons[edge[0]], c.lons[w]) <= ullon + lonSpan + slackLon);
+                assertTrue(Math.max(c.lats[edge[0]], c.lats[w]) >= ullat - latSpan - slackLat);
+                assertTrue(Math.min(c.lats[edge[0]], c.lats[w]) <= ullat + slackLat);
+            }
+            /* Every edge with an end in the tile is drawn, once, from its smaller vertex. */
+            for (int u = 0; u < c.size(); u++) {
+                for (int e = c.offsets[u]; e < c.offsets[u + 1]; e++) {
+                    int w = c.targets[e];
+                    if (u < w && (inside(u, ullon, ullat, lonSpan, latSpan)
+                        || inside(w, ullon, ullat, lonSpan, latSpan))) {
+                        assertTrue(visible.contains((long) u << 32 | e));
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean inside(int v, double ullon, double ullat, double lonSpan,
+                                  double latSpan) {
+        return c.lons[v] >= ullon && c.lons[v] <= ullon + lonSpan && c.lats[v] <= ullat
+            && c.lats[v] >= ullat - latSpan;
+    }
+
+    @Test
+    public void testRender() {
+        VectorTileRenderer r = renderer(1L << 30);
+        int v = c.size() / 2;
+        int[] tile = tileOf(v, 10);
+        BufferedImage image = r.render(10, tile[0], tile[1]);
+        assertEquals(BufferedImage.TYPE_INT_RGB, image.getType());
+        assertEquals(MapServer.TILE_SIZE, image.getWidth());
+        assertEquals(MapServer.TILE_SIZE, image.getHeight());
+        /* A vertex lies on a road. */
+        double lonSpan = ROOT_WIDTH / (1 << 10);
+        double latSpan = ROOT_HEIGHT / (1 << 10);
+        int px = (int) ((c.lons[v] - MapServer.ROOT_ULLON - tile[0] * lonSpan) / lonSpan
+            * MapServer.TILE_SIZE);
+        int py = (int) ((MapServer.ROOT_ULLAT - tile[1] * latSpan - c.lats[v]) / latSpan
+            * MapServer.TILE_SIZE);
+        assertNotEquals(BACKGROUND, image.getRGB(px, py) & 0xFFFFFF);
+
+        /* A tile without roads is blank. */
+        int n = 1 << 10;
+        for (int x = 0; x < n; x++) {
+            if (r.visibleEdges(10, x, 0).isEmpty()) {
+                BufferedImage blank = r.render(10, x, 0);
+                for (int y = 0; y < MapServer.TILE_SIZE; y++) {
+                    for (int z = 0; z < MapServer.TILE_SIZE; z++) {
+                        assertEquals(BACKGROUND, blank.getRGB(z, y) & 0xFFFFFF);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    @Test
+    public void testClip() {
+        assertNull(VectorTileRenderer.clip(new double[]{-10, -10, -1, 5}, 256));
+        double[] clipped = VectorTileRenderer.clip(new double[]{-128, 128, 384, 128}, 256);
+        assertEquals(0, clipped[0], 1e-9);
+        assertEquals(256, clipped[2], 1e-9);
+        assertEquals(128, clipped[3], 1e-9);
+    }
+
+    @Test
+    public void testParse() {
+        assertNull(VectorTileRenderer.parse("d6_x1_y1.png"));
+        assertNull(VectorTileRenderer.parse("d8_x256_y1.png"));
+        assertNull(VectorTileRenderer.parse("d8_x1_y1.jpg"));
+        assertNull(VectorTileRenderer.parse("d8_xa_y1.png"));
+        int[] tile = VectorTileRenderer.parse("d9_x300_y421.png");
+        assertEquals(9, tile[0]);
+        assertEquals(300, tile[1]);
+        assertEquals(421, tile[2]);
+    }
+
+    @Test
+    public void testDiskCache() {
+        VectorTileRenderer r = renderer(1L << 30);
+        String name = name(9, tileOf(0, 9));
+        BufferedImage rendered = r.get(name);
+        assertNotNull(rendered);
+        assertTrue(new File(folder, name).isFile());
+        assertEquals(1L, (long) r.stats().get("misses"));
+        assertEquals(1L, (long) r.stats().get("tiles"));
+        assertEquals(new File(folder, name).length(), (long) r.stats().get("bytes"));
+
+        BufferedImage read = r.get(name);
+        assertEquals(1L, (long) r.stats().get("hits"));
+        assertSamePixels(rendered, read);
+
+        /* Tiles survive a restart, unless the data changed after they were rendered. */
+        VectorTileRenderer restarted = renderer(1L << 30);
+        assertEquals(1L, (long) restarted.stats().get("tiles"));
+        assertSamePixels(rendered, restarted.get(name));
+        assertEquals(1L, (long) restarted.stats().get("hits"));
+        VectorTileRenderer stale = new VectorTileRenderer(c, folder, 1L << 30, Long.MAX_VALUE,
+            1);
+        assertEquals(0L, (long) stale.stats().get("tiles"));
+        assertFalse(new File(folder, name).exists());
+
+        assertNull(r.get("d3_x0_y0.png"));
+    }
+
+    @Test
+    public void testDiskEviction() throws Exception {
+        List<String> names = new ArrayList<>();
+        for (int v = 0; names.size() < 3; v += 97) {
+            String name = name(12, tileOf(v, 12));
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        /* Room for the largest of the tiles, and so for one tile only. */
+        File probeFolder = temp.newFolder("probe");
+        VectorTileRenderer probe = new VectorTileRenderer(c, probeFolder, 1L << 30, 0, 1);
+        long budget = 0;
+        for (String name : names) {
+            probe.get(name);
+            budget = Math.max(budget, new File(probeFolder, name).length());
+        }
+
+        VectorTileRenderer r = renderer(budget);
+        for (String name : names) {
+            assertNotNull(r.get(name));
+        }
+        assertEquals(1L, (long) r.stats().get("tiles"));
+        assertEquals(2L, (long) r.stats().get("evictions"));
+        assertFalse(new File(folder, names.get(0)).exists());
+        assertFalse(new File(folder, names.get(1)).exists());
+        assertTrue(new File(folder, names.get(2)).exists());
+    }
+
+    @Test
+    public void testConcurrentGetsRenderOnce() throws Exception {
+        VectorTileRenderer r = renderer(1L << 30);
+        String name = name(11, tileOf(c.size() / 3, 11));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<BufferedImage>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> r.get(name)));
+            }
+            BufferedImage first = futures.get(0).get();
+            for (Future<BufferedImage> future : futures) {
+                assertSamePixels(first, future.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1L, (long) r.stats().get("misses"));
+    }
+
+    @Test
+    public void testTileCacheGetsDeepTiles() {
+        VectorTileRenderer r = renderer(1L << 30);
+        TileCache cache = new TileCache(folder.getPath() + File.separator, 1L << 30, 7,
+            r::get);
+        String name = name(8, tileOf(0, 8));
+        BufferedImage tile = cache.get(name);
+        assertNotNull(tile);
+        cache.get(name);
+        assertEquals(1L, (long) cache.stats().get("hits"));
+        assertEquals(1L, (long) r.stats().get("misses"));
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}